@@ -461,20 +461,36 @@ public class JbpmConfiguration implements Serializable {
       return objectFactory.createObject(name);
     }
 
+    /**
+     * Looks up the value of the given name. With the default object factory, strings,
+     * integers, longs and booleans are cached by the object factory, so that later lookups do
+     * not lock. Use this method for values read on hot paths, such as
+     * <code>jbpm.job.retries</code>.
+     */
+    public static Object getValue(String name) {
+      ObjectFactory objectFactory = getObjectFactory();
+      if (objectFactory instanceof ObjectFactoryImpl) {
+        return ((ObjectFactoryImpl) objectFactory).createValue(name);
+      }
+      synchronized (Configs.class) {
+        return objectFactory.createObject(name);
+      }
+    }
+
     public static String getString(String name) {
-      return (String) getObject(name);
+      return (String) getValue(name);
     }
 
     public static long getLong(String name) {
-      return ((Long) getObject(name)).longValue();
+      return ((Long) getValue(name)).longValue();
     }
 
     public static int getInt(String name) {
-      return ((Integer) getObject(name)).intValue();
+      return ((Integer) getValue(name)).intValue();
     }
 
     public static boolean getBoolean(String name) {
-      return ((Boolean) getObject(name)).booleanValue();
+      return ((Boolean) getValue(name)).booleanValue();
     }
   }
 
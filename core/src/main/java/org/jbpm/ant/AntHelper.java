@@ -30,6 +30,7 @@ import java.util.Properties;
 import org.hibernate.cfg.Configuration;
 
 import org.jbpm.JbpmConfiguration;
+import org.jbpm.db.hibernate.HibernateHelper;
 import org.jbpm.util.ClassLoaderUtil;
 
 /**
@@ -55,6 +56,7 @@ public class AntHelper {
         Properties properties = ClassLoaderUtil.getProperties(hibernateProperties);
         configuration.addProperties(properties);
       }
+      HibernateHelper.configureIdGenerators(configuration);
       configurations.put(key, configuration);
     }
     return configuration;
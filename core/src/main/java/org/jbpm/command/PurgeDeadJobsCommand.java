@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.command;
+
+import java.util.Date;
+
+import org.jbpm.JbpmContext;
+
+/**
+ * Deletes jobs that ran out of retries from the dead job table in a single statement.
+ * 
+ * @see org.jbpm.job.executor.JobExecutor#setMoveDeadJobs(boolean)
+ */
+public class PurgeDeadJobsCommand extends AbstractBaseCommand {
+
+  private static final long serialVersionUID = 1L;
+
+  private Date deadBefore;
+  private String processDefinitionName;
+
+  public PurgeDeadJobsCommand() {
+  }
+
+  public PurgeDeadJobsCommand(Date deadBefore) {
+    this.deadBefore = deadBefore;
+  }
+
+  /**
+   * @return the number of deleted jobs, as an {@link Integer}
+   */
+  public Object execute(JbpmContext jbpmContext) throws Exception {
+    Date deadBefore = this.deadBefore != null ? this.deadBefore : new Date();
+    int deadJobCount = jbpmContext.getJobSession().deleteDeadJobs(deadBefore,
+      processDefinitionName);
+    return new Integer(deadJobCount);
+  }
+
+  public Date getDeadBefore() {
+    return deadBefore;
+  }
+
+  /**
+   * Restricts the command to the jobs that ran out of retries before the given date. Unless
+   * set, all dead jobs are deleted.
+   */
+  public void setDeadBefore(Date deadBefore) {
+    this.deadBefore = deadBefore;
+  }
+
+  public String getProcessDefinitionName() {
+    return processDefinitionName;
+  }
+
+  /**
+   * Restricts the command to the jobs of the process definition with the given name.
+   */
+  public void setProcessDefinitionName(String processDefinitionName) {
+    this.processDefinitionName = processDefinitionName;
+  }
+
+  public String getAdditionalToStringInformation() {
+    return "deadBefore=" + deadBefore + ";processDefinitionName=" + processDefinitionName;
+  }
+
+  // methods for fluent programming
+
+  public PurgeDeadJobsCommand deadBefore(Date deadBefore) {
+    setDeadBefore(deadBefore);
+    return this;
+  }
+
+  public PurgeDeadJobsCommand processDefinitionName(String processDefinitionName) {
+    setProcessDefinitionName(processDefinitionName);
+    return this;
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.command;
+
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.transaction.JDBCTransactionFactory;
+
+import org.jbpm.JbpmConfiguration;
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.persistence.PersistenceService;
+import org.jbpm.persistence.db.DbPersistenceService;
+import org.jbpm.persistence.jta.JtaDbPersistenceService;
+
+/**
+ * Deletes top-level process instances that ended before a given date, together with their
+ * sub-process instances and everything they own. Process instances are deleted in chunks;
+ * each chunk runs in a jBPM context and a transaction of its own, so that a large purge
+ * neither holds locks for long nor loses the chunks already done when a later chunk fails.
+ * <p>
+ * The command must run outside a JTA transaction, for instance not through a command service
+ * bean with container managed transactions. Inside one, every chunk would join that
+ * transaction, so the command refuses to run.
+ * </p>
+ * 
+ * @see org.jbpm.db.GraphSession#deleteProcessInstances(java.util.Collection)
+ */
+public class PurgeEndedProcessInstancesCommand extends AbstractBaseCommand {
+
+  private static final long serialVersionUID = 1L;
+
+  private Date endedBefore;
+  private String processDefinitionName;
+  private int chunkSize = 100;
+
+  public PurgeEndedProcessInstancesCommand() {
+  }
+
+  public PurgeEndedProcessInstancesCommand(Date endedBefore) {
+    this.endedBefore = endedBefore;
+  }
+
+  /**
+   * @return the number of deleted process instances, including sub-process instances, as an
+   * {@link Integer}
+   */
+  public Object execute(JbpmContext jbpmContext) throws Exception {
+    Date endedBefore = this.endedBefore != null ? this.endedBefore : new Date();
+    JbpmConfiguration jbpmConfiguration = jbpmContext.getJbpmConfiguration();
+
+    int processInstanceCount = 0;
+    for (int chunkCount = chunkSize; chunkCount == chunkSize;) {
+      JbpmContext chunkContext = jbpmConfiguration.createJbpmContext();
+      // starts the chunk transaction, if the persistence service demarcates one
+      chunkContext.getSession();
+      if (!hasOwnTransaction(chunkContext)) {
+        chunkContext.close();
+        throw new JbpmException("cannot purge process instances in chunks, "
+          + "as jbpm contexts join the enclosing transaction");
+      }
+
+      try {
+        List processInstanceIds = chunkContext.getGraphSession().findEndedProcessInstanceIds(
+          endedBefore, processDefinitionName, chunkSize);
+        chunkCount = processInstanceIds.size();
+        processInstanceCount += chunkContext.getGraphSession().deleteProcessInstances(
+          processInstanceIds);
+      }
+      catch (RuntimeException e) {
+        chunkContext.setRollbackOnly();
+        throw e;
+      }
+      finally {
+        chunkContext.close();
+      }
+    }
+    return new Integer(processInstanceCount);
+  }
+
+  /**
+   * Tells whether the given context demarcates a transaction of its own, rather than joining
+   * a transaction of the caller.
+   */
+  private static boolean hasOwnTransaction(JbpmContext jbpmContext) {
+    PersistenceService persistenceService = jbpmContext.getServices().getPersistenceService();
+    if (persistenceService instanceof JtaDbPersistenceService) {
+      return ((JtaDbPersistenceService) persistenceService).isJtaTxCreated();
+    }
+    if (persistenceService instanceof DbPersistenceService) {
+      DbPersistenceService dbPersistenceService = (DbPersistenceService) persistenceService;
+      if (!dbPersistenceService.isTransactionActive()) return false;
+      // other transaction factories join a surrounding JTA transaction
+      SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) dbPersistenceService.getSessionFactory();
+      return sessionFactory.getSettings().getTransactionFactory() instanceof JDBCTransactionFactory;
+    }
+    return false;
+  }
+
+  public Date getEndedBefore() {
+    return endedBefore;
+  }
+
+  /**
+   * Restricts the command to the process instances that ended before the given date. Unless
+   * set, all ended process instances are deleted.
+   */
+  public void setEndedBefore(Date endedBefore) {
+    this.endedBefore = endedBefore;
+  }
+
+  public String getProcessDefinitionName() {
+    return processDefinitionName;
+  }
+
+  /**
+   * Restricts the command to the process instances of the process definition with the given
+   * name.
+   */
+  public void setProcessDefinitionName(String processDefinitionName) {
+    this.processDefinitionName = processDefinitionName;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Sets the number of top-level process instances deleted per transaction.
+   */
+  public void setChunkSize(int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunk size must be positive");
+    }
+    this.chunkSize = chunkSize;
+  }
+
+  public String getAdditionalToStringInformation() {
+    return "endedBefore=" + endedBefore + ";processDefinitionName=" + processDefinitionName
+      + ";chunkSize=" + chunkSize;
+  }
+
+  // methods for fluent programming
+
+  public PurgeEndedProcessInstancesCommand endedBefore(Date endedBefore) {
+    setEndedBefore(endedBefore);
+    return this;
+  }
+
+  public PurgeEndedProcessInstancesCommand processDefinitionName(String processDefinitionName) {
+    setProcessDefinitionName(processDefinitionName);
+    return this;
+  }
+
+  public PurgeEndedProcessInstancesCommand chunkSize(int chunkSize) {
+    setChunkSize(chunkSize);
+    return this;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.command;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.jbpm.JbpmConfiguration.Configs;
+import org.jbpm.JbpmContext;
+import org.jbpm.db.JobSession;
+import org.jbpm.graph.exe.Token;
+import org.jbpm.job.Job;
+import org.jbpm.msg.MessageService;
+
+/**
+ * Moves jobs that ran out of retries from the dead job table back to the job executor, oldest
+ * first, each with a fresh number of retries. Typically issued once the cause of the failures
+ * is fixed.
+ * 
+ * @see org.jbpm.job.executor.JobExecutor#setMoveDeadJobs(boolean)
+ */
+public class RequeueDeadJobsCommand extends AbstractBaseCommand {
+
+  private static final long serialVersionUID = 1L;
+
+  private String processDefinitionName;
+  private int maxJobs = 1000;
+  private int retries = -1;
+
+  public RequeueDeadJobsCommand() {
+  }
+
+  public RequeueDeadJobsCommand(String processDefinitionName) {
+    this.processDefinitionName = processDefinitionName;
+  }
+
+  /**
+   * @return the requeued jobs
+   */
+  public Object execute(JbpmContext jbpmContext) throws Exception {
+    int retries = this.retries >= 0 ? this.retries : Configs.getInt("jbpm.job.retries");
+    JobSession jobSession = jbpmContext.getJobSession();
+    MessageService messageService = jbpmContext.getServices().getMessageService();
+
+    List deadJobs = jobSession.findDeadJobs(processDefinitionName, maxJobs);
+    for (Iterator i = deadJobs.iterator(); i.hasNext();) {
+      Job job = (Job) i.next();
+      String deadLockOwner = job.toString();
+      jobSession.requeueDeadJob(job, retries);
+      messageService.send(job);
+
+      // the job got a new identifier, transfer the token lock it took when it was created
+      Token token = job.getToken();
+      if (token != null && deadLockOwner.equals(token.getLockOwner())) {
+        token.unlock(deadLockOwner);
+        token.lock(job.toString());
+      }
+    }
+    return deadJobs;
+  }
+
+  public String getProcessDefinitionName() {
+    return processDefinitionName;
+  }
+
+  /**
+   * Restricts the command to the jobs of the process definition with the given name.
+   */
+  public void setProcessDefinitionName(String processDefinitionName) {
+    this.processDefinitionName = processDefinitionName;
+  }
+
+  public int getMaxJobs() {
+    return maxJobs;
+  }
+
+  /**
+   * Sets the maximum number of jobs requeued in one transaction.
+   */
+  public void setMaxJobs(int maxJobs) {
+    this.maxJobs = maxJobs;
+  }
+
+  public int getRetries() {
+    return retries;
+  }
+
+  /**
+   * Sets the number of retries requeued jobs get. Unless set, jobs get the configured
+   * <code>jbpm.job.retries</code>.
+   */
+  public void setRetries(int retries) {
+    this.retries = retries;
+  }
+
+  public String getAdditionalToStringInformation() {
+    return "processDefinitionName=" + processDefinitionName + ";maxJobs=" + maxJobs
+      + ";retries=" + retries;
+  }
+
+  // methods for fluent programming
+
+  public RequeueDeadJobsCommand processDefinitionName(String processDefinitionName) {
+    setProcessDefinitionName(processDefinitionName);
+    return this;
+  }
+
+  public RequeueDeadJobsCommand maxJobs(int maxJobs) {
+    setMaxJobs(maxJobs);
+    return this;
+  }
+
+  public RequeueDeadJobsCommand retries(int retries) {
+    setRetries(retries);
+    return this;
+  }
+}
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +39,8 @@ public class ObjectFactoryImpl implements ObjectFactory {
 
   private final Map namedObjectInfos;
   private final Map singletons = new HashMap();
+  /** immutable values created so far, read without locking */
+  private final Map values = new ConcurrentHashMap();
   private transient final Map objects = new HashMap();
   private transient final Collection objectsUnderConstruction = new HashSet();
   private transient ClassLoader classLoader;
@@ -65,6 +68,7 @@ public class ObjectFactoryImpl implements ObjectFactory {
     synchronized (namedObjectInfos) {
       namedObjectInfos.put(name, objectInfo);
     }
+    values.remove(name);
   }
 
   private ObjectInfo getObjectInfo(String name) {
@@ -87,6 +91,23 @@ public class ObjectFactoryImpl implements ObjectFactory {
     return createObject(objectInfo);
   }
 
+  /**
+   * create a new object of the given name, like {@link #createObject(String)}. Strings,
+   * integers, longs and booleans are immutable, so the first call caches them and later calls
+   * return the cached value without locking.
+   */
+  public Object createValue(String name) {
+    Object value = values.get(name);
+    if (value != null) return value;
+
+    value = createObject(name);
+    if (value instanceof String || value instanceof Integer || value instanceof Long
+      || value instanceof Boolean) {
+      values.put(name, value);
+    }
+    return value;
+  }
+
   public boolean hasObject(String name) {
     synchronized (namedObjectInfos) {
       return namedObjectInfos.containsKey(name);
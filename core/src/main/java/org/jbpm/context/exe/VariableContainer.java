@@ -15,6 +15,9 @@ import org.jbpm.JbpmException;
 import org.jbpm.context.log.VariableDeleteLog;
 import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.graph.exe.Token;
+import org.jbpm.logging.LoggingService;
+import org.jbpm.logging.db.AsyncDbLoggingService;
+import org.jbpm.logging.db.BatchDbLoggingService;
 import org.jbpm.logging.db.DbLoggingService;
 
 public abstract class VariableContainer implements Serializable {
@@ -198,12 +201,14 @@ public abstract class VariableContainer implements Serializable {
         // unlink variable
         variableInstance.removeReferences();
         // log variable deletion
-        getToken().addLog(new VariableDeleteLog(variableInstance));
+        Token token = getToken();
+        boolean logged = token.isLogged(VariableDeleteLog.class);
+        if (logged) token.addLog(new VariableDeleteLog(variableInstance));
 
-        // if a context is present and its logging service is not connected to the database 
+        // if a context is present and no log connected to the database refers to the variable
         JbpmContext jbpmContext = JbpmContext.getCurrentJbpmContext();
         if (jbpmContext != null
-          && !(jbpmContext.getServices().getLoggingService() instanceof DbLoggingService)) {
+          && (!logged || !isDbLoggingService(jbpmContext.getServices().getLoggingService()))) {
           // delete variable instance here before all references to it are lost
           Session session = jbpmContext.getSession();
           if (session != null) session.delete(variableInstance);
@@ -212,6 +217,12 @@ public abstract class VariableContainer implements Serializable {
     }
   }
 
+  private static boolean isDbLoggingService(LoggingService loggingService) {
+    return loggingService instanceof DbLoggingService
+      || loggingService instanceof BatchDbLoggingService
+      || loggingService instanceof AsyncDbLoggingService;
+  }
+
   public ContextInstance getContextInstance() {
     Token token = getToken();
     return token != null ? token.getProcessInstance().getContextInstance() : null;
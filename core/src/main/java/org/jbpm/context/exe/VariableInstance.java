@@ -63,7 +63,9 @@ public abstract class VariableInstance implements Serializable {
     if (token != null) {
       variableInstance.token = token;
       variableInstance.processInstance = token.getProcessInstance();
-      token.addLog(new VariableCreateLog(variableInstance));
+      if (token.isLogged(VariableCreateLog.class)) {
+        token.addLog(new VariableCreateLog(variableInstance));
+      }
     }
 
     variableInstance.setValue(value);
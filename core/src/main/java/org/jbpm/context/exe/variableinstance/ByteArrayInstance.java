@@ -43,7 +43,7 @@ public class ByteArrayInstance extends VariableInstance {
   }
 
   protected void setObject(Object value) {
-    if (token != null) {
+    if (token != null && token.isLogged(ByteArrayUpdateLog.class)) {
       token.addLog(new ByteArrayUpdateLog(this, this.value, (ByteArray) value));
     }
     if (this.value != null) {
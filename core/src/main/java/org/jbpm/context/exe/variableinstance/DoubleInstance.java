@@ -39,7 +39,9 @@ public class DoubleInstance extends VariableInstance {
   }
 
   protected void setObject(Object value) {
-    if (token != null) token.addLog(new DoubleUpdateLog(this, this.value, (Double) value));
+    if (token != null && token.isLogged(DoubleUpdateLog.class)) {
+      token.addLog(new DoubleUpdateLog(this, this.value, (Double) value));
+    }
     this.value = (Double) value;
   }
 }
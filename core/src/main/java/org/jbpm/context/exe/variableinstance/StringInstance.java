@@ -39,7 +39,9 @@ public class StringInstance extends VariableInstance {
   }
 
   protected void setObject(Object value) {
-    if (token != null) token.addLog(new StringUpdateLog(this, this.value, (String) value));
+    if (token != null && token.isLogged(StringUpdateLog.class)) {
+      token.addLog(new StringUpdateLog(this, this.value, (String) value));
+    }
     this.value = (String) value;
   }
 }
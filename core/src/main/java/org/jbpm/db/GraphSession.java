@@ -24,29 +24,41 @@ package org.jbpm.db;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.ObjectNotFoundException;
+import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
 
 import org.jbpm.JbpmContext;
 import org.jbpm.JbpmException;
+import org.jbpm.bytes.ByteArray;
 import org.jbpm.graph.def.ProcessDefinition;
 import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.graph.exe.Token;
 import org.jbpm.graph.node.ProcessState;
 import org.jbpm.persistence.JbpmPersistenceException;
+import org.jbpm.taskmgmt.exe.TaskInstance;
 
 /**
  * graph-related database operations.
  */
 public class GraphSession {
 
+  /** maximum number of identifiers bound to a single parameter list */
+  private static final int MAX_PARAMETER_LIST_SIZE = 500;
+
   private final Session session;
   /** @deprecated */
   private final JbpmSession jbpmSession;
@@ -437,6 +449,9 @@ public class GraphSession {
     session.getNamedQuery("GraphSession.deleteJobsForProcessInstance")
       .setEntity("processInstance", processInstance)
       .executeUpdate();
+    session.getNamedQuery("GraphSession.deleteDeadJobsForProcessInstance")
+      .setEntity("processInstance", processInstance)
+      .executeUpdate();
   }
 
   private void deleteLogs(ProcessInstance processInstance) {
@@ -473,6 +488,194 @@ public class GraphSession {
     }
   }
 
+  /**
+   * Deletes the given process instances along with their sub-process instances, tokens,
+   * variables, logs, tasks and jobs. Unlike {@link #deleteProcessInstance(ProcessInstance)},
+   * this method does not load the process instances or anything they own. It issues one bulk
+   * statement per table and batch of identifiers, in dependency order.
+   * <p>
+   * Bulk statements bypass the session. Objects of the deleted process instances that are
+   * loaded in the session already become stale and must not be used afterwards.
+   * </p>
+   * 
+   * @param processInstanceIds identifiers of the process instances, as {@link Long}s
+   * @return the number of deleted process instances, including sub-process instances
+   */
+  public int deleteProcessInstances(Collection processInstanceIds) {
+    if (processInstanceIds.isEmpty()) return 0;
+    try {
+      // statements below do not see pending changes
+      session.flush();
+
+      // collect the sub-process instances, level by level
+      Set allProcessInstanceIds = new LinkedHashSet(processInstanceIds);
+      for (Collection levelIds = processInstanceIds; !levelIds.isEmpty();) {
+        levelIds = listIds("GraphSession.findSubProcessInstanceIds", "processInstanceIds",
+          levelIds);
+        levelIds.removeAll(allProcessInstanceIds);
+        allProcessInstanceIds.addAll(levelIds);
+      }
+
+      // collect what the process instances own
+      List tokenIds = listIds("GraphSession.findTokenIds", "processInstanceIds",
+        allProcessInstanceIds);
+      List taskInstanceIds = listIds("GraphSession.findTaskInstanceIds",
+        "processInstanceIds", allProcessInstanceIds);
+      List moduleInstanceIds = listIds("GraphSession.findModuleInstanceIds",
+        "processInstanceIds", allProcessInstanceIds);
+      List swimlaneInstanceIds = listIds("GraphSession.findSwimlaneInstanceIds",
+        "moduleInstanceIds", moduleInstanceIds);
+      List tokenVariableMapIds = listIds("GraphSession.findTokenVariableMapIds", "tokenIds",
+        tokenIds);
+
+      Set variableInstanceIds = new HashSet();
+      variableInstanceIds.addAll(listIds("GraphSession.findVariableInstanceIdsByProcessInstances",
+        "processInstanceIds", allProcessInstanceIds));
+      variableInstanceIds.addAll(listIds("GraphSession.findVariableInstanceIdsByTokenVariableMaps",
+        "tokenVariableMapIds", tokenVariableMapIds));
+      variableInstanceIds.addAll(listIds("GraphSession.findVariableInstanceIdsByTaskInstances",
+        "taskInstanceIds", taskInstanceIds));
+
+      Set pooledActorIds = new HashSet();
+      pooledActorIds.addAll(listIds("GraphSession.findPooledActorIdsByTaskInstances",
+        "taskInstanceIds", taskInstanceIds));
+      pooledActorIds.addAll(listIds("GraphSession.findPooledActorIdsBySwimlaneInstances",
+        "swimlaneInstanceIds", swimlaneInstanceIds));
+
+      // byte arrays may be shared by variable instances and their update logs
+      Set byteArrayIds = new HashSet();
+      byteArrayIds.addAll(listIds("GraphSession.findByteArrayIdsByVariableInstances",
+        "variableInstanceIds", variableInstanceIds));
+      byteArrayIds.addAll(listIds("GraphSession.findOldByteArrayIdsByTokens", "tokenIds",
+        tokenIds));
+      byteArrayIds.addAll(listIds("GraphSession.findNewByteArrayIdsByTokens", "tokenIds",
+        tokenIds));
+
+      // delete referring rows before referred rows
+      executeUpdate("GraphSession.deleteJobsForProcessInstances", "processInstanceIds",
+        allProcessInstanceIds);
+      executeUpdate("GraphSession.deleteDeadJobsForProcessInstances", "processInstanceIds",
+        allProcessInstanceIds);
+      executeUpdate("GraphSession.detachLogsForTokens", "tokenIds", tokenIds);
+      executeUpdate("GraphSession.deleteLogsForTokens", "tokenIds", tokenIds);
+      executeUpdate("GraphSession.deleteCommentsForTokens", "tokenIds", tokenIds);
+      executeUpdate("GraphSession.deleteCommentsForTaskInstances", "taskInstanceIds",
+        taskInstanceIds);
+      executeCollectionUpdate(TaskInstance.class.getName() + ".pooledActors", taskInstanceIds);
+      executeUpdate("GraphSession.deleteVariableInstances", "variableInstanceIds",
+        variableInstanceIds);
+      executeCollectionUpdate(ByteArray.class.getName() + ".byteBlocks", byteArrayIds);
+      executeUpdate("GraphSession.deleteByteArrays", "byteArrayIds", byteArrayIds);
+      executeUpdate("GraphSession.deleteTokenVariableMaps", "tokenVariableMapIds",
+        tokenVariableMapIds);
+      executeUpdate("GraphSession.deleteTaskInstances", "taskInstanceIds", taskInstanceIds);
+      executeUpdate("GraphSession.deletePooledActors", "pooledActorIds", pooledActorIds);
+      executeUpdate("GraphSession.deleteSwimlaneInstances", "swimlaneInstanceIds",
+        swimlaneInstanceIds);
+      executeUpdate("GraphSession.deleteModuleInstances", "moduleInstanceIds",
+        moduleInstanceIds);
+      executeUpdate("GraphSession.deleteRuntimeActions", "processInstanceIds",
+        allProcessInstanceIds);
+      executeUpdate("GraphSession.detachTokens", "processInstanceIds", allProcessInstanceIds);
+      executeUpdate("GraphSession.detachSuperProcessTokens", "processInstanceIds",
+        allProcessInstanceIds);
+      executeUpdate("GraphSession.detachProcessInstances", "processInstanceIds",
+        allProcessInstanceIds);
+      executeUpdate("GraphSession.deleteTokens", "processInstanceIds", allProcessInstanceIds);
+      return executeUpdate("GraphSession.deleteProcessInstances", "processInstanceIds",
+        allProcessInstanceIds);
+    }
+    catch (HibernateException e) {
+      handle(e);
+      throw new JbpmPersistenceException("could not delete process instances "
+        + processInstanceIds, e);
+    }
+  }
+
+  /**
+   * Finds the identifiers of top-level process instances that ended before the given date,
+   * oldest first.
+   * 
+   * @param processDefinitionName restricts the search to the process definition with this
+   * name, or <code>null</code> for all process definitions
+   * @return identifiers of at most <code>maxResults</code> process instances
+   */
+  public List findEndedProcessInstanceIds(Date endedBefore, String processDefinitionName,
+    int maxResults) {
+    try {
+      Query query;
+      if (processDefinitionName == null) {
+        query = session.getNamedQuery("GraphSession.findEndedProcessInstanceIds");
+      }
+      else {
+        query = session.getNamedQuery("GraphSession.findEndedProcessInstanceIdsByProcessDefinition")
+          .setString("processDefinitionName", processDefinitionName);
+      }
+      return query.setTimestamp("endedBefore", endedBefore).setMaxResults(maxResults).list();
+    }
+    catch (HibernateException e) {
+      handle(e);
+      throw new JbpmPersistenceException("could not find process instances ended before "
+        + endedBefore, e);
+    }
+  }
+
+  /**
+   * Runs the given named query once per batch of identifiers, so that parameter lists stay
+   * within database limits.
+   */
+  private List listIds(String queryName, String parameterName, Collection ids) {
+    List result = new ArrayList();
+    for (Iterator i = batches(ids).iterator(); i.hasNext();) {
+      result.addAll(session.getNamedQuery(queryName)
+        .setParameterList(parameterName, (Collection) i.next())
+        .list());
+    }
+    return result;
+  }
+
+  private int executeUpdate(String queryName, String parameterName, Collection ids) {
+    int count = 0;
+    for (Iterator i = batches(ids).iterator(); i.hasNext();) {
+      count += session.getNamedQuery(queryName)
+        .setParameterList(parameterName, (Collection) i.next())
+        .executeUpdate();
+    }
+    return count;
+  }
+
+  /**
+   * Deletes the rows of a collection table, such as a many-to-many link table, which HQL
+   * cannot address, by owner identifier.
+   */
+  private void executeCollectionUpdate(String role, Collection ownerIds) {
+    SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+    AbstractCollectionPersister persister = (AbstractCollectionPersister) sessionFactory.getCollectionPersister(role);
+    String sql = "delete from " + persister.getTableName() + " where "
+      + persister.getKeyColumnNames()[0] + " in (:ownerIds)";
+    for (Iterator i = batches(ownerIds).iterator(); i.hasNext();) {
+      session.createSQLQuery(sql).setParameterList("ownerIds", (Collection) i.next())
+        .executeUpdate();
+    }
+  }
+
+  private static List batches(Collection ids) {
+    if (ids.size() <= MAX_PARAMETER_LIST_SIZE) {
+      return ids.isEmpty() ? Collections.EMPTY_LIST : Collections.singletonList(ids);
+    }
+
+    List batches = new ArrayList();
+    List batch = new ArrayList(MAX_PARAMETER_LIST_SIZE);
+    for (Iterator i = ids.iterator(); i.hasNext();) {
+      batch.add(i.next());
+      if (batch.size() == MAX_PARAMETER_LIST_SIZE || !i.hasNext()) {
+        batches.add(batch);
+        batch = new ArrayList(MAX_PARAMETER_LIST_SIZE);
+      }
+    }
+    return batches;
+  }
+
   public static class AverageNodeTimeEntry {
 
     private long nodeId;
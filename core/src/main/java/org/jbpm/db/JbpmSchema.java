@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.hibernate.HibernateException;
 import org.hibernate.cfg.Configuration;
@@ -51,6 +52,7 @@ import org.hibernate.connection.ConnectionProviderFactory;
 import org.hibernate.dialect.Dialect;
 import org.hibernate.engine.Mapping;
 import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
 import org.hibernate.mapping.Table;
 import org.hibernate.tool.hbm2ddl.ColumnMetadata;
 import org.hibernate.tool.hbm2ddl.DatabaseMetadata;
@@ -58,6 +60,8 @@ import org.hibernate.tool.hbm2ddl.TableMetadata;
 import org.hibernate.util.JDBCExceptionReporter;
 
 import org.jbpm.JbpmException;
+import org.jbpm.db.hibernate.HibernateHelper;
+import org.jbpm.db.hibernate.JobIndex;
 import org.jbpm.util.IoUtil;
 
 /**
@@ -126,8 +130,13 @@ public class JbpmSchema {
     Connection connection = null;
     try {
       connection = createConnection();
-      return configuration
-        .generateSchemaUpdateScript(getDialect(), getDatabaseMetadata(connection));
+      DatabaseMetadata databaseMetadata = getDatabaseMetadata(connection);
+      String[] updateSql = configuration
+        .generateSchemaUpdateScript(getDialect(), databaseMetadata);
+      // schema update neither fills in nor constrains columns that exist already
+      updateSql = concat(updateSql, getNullColumnBackfillSql(databaseMetadata));
+      // schema update disregards auxiliary database objects such as the job indexes
+      return concat(updateSql, getMissingJobIndexSql(databaseMetadata));
     }
     catch (SQLException e) {
       exceptions.add(e);
@@ -140,6 +149,58 @@ public class JbpmSchema {
     }
   }
 
+  /**
+   * Sets the default value in rows that hold <code>null</code> in columns mapped as not
+   * nullable with a default value. Such rows remain when a column was added as nullable, for
+   * example by an earlier schema update.
+   */
+  private String[] getNullColumnBackfillSql(DatabaseMetadata databaseMetadata)
+    throws SQLException {
+    Dialect dialect = getDialect();
+
+    List script = new ArrayList();
+    for (Iterator i = configuration.getTableMappings(); i.hasNext();) {
+      Table table = (Table) i.next();
+      TableMetadata tableInfo = getTableMetadata(databaseMetadata, table);
+      if (tableInfo == null) continue;
+
+      for (Iterator j = table.getColumnIterator(); j.hasNext();) {
+        Column column = (Column) j.next();
+        if (column.isNullable() || column.getDefaultValue() == null) continue;
+
+        ColumnMetadata columnInfo = tableInfo.getColumnMetadata(column.getName());
+        if (columnInfo == null || !"YES".equalsIgnoreCase(columnInfo.getNullable())) continue;
+
+        String columnName = column.getQuotedName(dialect);
+        script.add("update "
+          + table.getQualifiedName(dialect, getDefaultCatalog(), getDefaultSchema())
+          + " set " + columnName + " = " + column.getDefaultValue()
+          + " where " + columnName + " is null");
+      }
+    }
+    return (String[]) script.toArray(new String[script.size()]);
+  }
+
+  private String[] getMissingJobIndexSql(DatabaseMetadata databaseMetadata)
+    throws SQLException {
+    Table jobTable = getTableMapping(JobIndex.TABLE_NAME);
+    if (jobTable == null) return EMPTY_STRING_ARRAY;
+
+    TableMetadata jobTableInfo = getTableMetadata(databaseMetadata, jobTable);
+    Dialect dialect = getDialect();
+    Mapping mapping = configuration.buildMapping();
+
+    List script = new ArrayList();
+    for (int i = 0; i < JobIndex.JOB_INDEXES.length; i++) {
+      JobIndex jobIndex = JobIndex.JOB_INDEXES[i];
+      if (jobTableInfo == null || jobTableInfo.getIndexMetadata(jobIndex.getName()) == null) {
+        script.add(jobIndex
+          .sqlCreateString(dialect, mapping, getDefaultCatalog(), getDefaultSchema()));
+      }
+    }
+    return (String[]) script.toArray(new String[script.size()]);
+  }
+
   public void dropSchema() {
     try {
       execute(getDropSql());
@@ -336,6 +397,52 @@ public class JbpmSchema {
     }
   }
 
+  /**
+   * Checks the existing schema for the indexes the queries of jBPM rely on, that is, the
+   * indexes declared in the table mappings plus the composite indexes on the job table.
+   * 
+   * @return a map from index name to {@link Boolean#TRUE} if the index exists or
+   * {@link Boolean#FALSE} if it is missing, sorted by index name
+   */
+  public Map getIndexReport() {
+    Connection connection = null;
+    try {
+      connection = createConnection();
+      DatabaseMetadata databaseMetadata = getDatabaseMetadata(connection);
+      Map indexReport = new TreeMap();
+
+      for (Iterator i = configuration.getTableMappings(); i.hasNext();) {
+        Table table = (Table) i.next();
+        if (!table.isPhysicalTable()) continue;
+
+        TableMetadata tableInfo = getTableMetadata(databaseMetadata, table);
+        for (Iterator j = table.getIndexIterator(); j.hasNext();) {
+          String indexName = ((Index) j.next()).getName();
+          indexReport.put(indexName, Boolean.valueOf(tableInfo != null
+            && tableInfo.getIndexMetadata(indexName) != null));
+        }
+
+        if (JobIndex.TABLE_NAME.equals(table.getName())) {
+          for (int j = 0; j < JobIndex.JOB_INDEXES.length; j++) {
+            String indexName = JobIndex.JOB_INDEXES[j].getName();
+            indexReport.put(indexName, Boolean.valueOf(tableInfo != null
+              && tableInfo.getIndexMetadata(indexName) != null));
+          }
+        }
+      }
+      return indexReport;
+    }
+    catch (SQLException e) {
+      exceptions.add(e);
+      JDBCExceptionReporter.logExceptions(e, "could not read existing indexes");
+
+      return Collections.EMPTY_MAP;
+    }
+    finally {
+      closeConnection(connection);
+    }
+  }
+
   public boolean tableExists(String tableName) {
     Connection connection = null;
     try {
@@ -368,7 +475,7 @@ public class JbpmSchema {
     Connection connection = null;
     try {
       connection = createConnection();
-      TableMetadata tableInfo = getTableMetadata(connection, table);
+      TableMetadata tableInfo = getTableMetadata(getDatabaseMetadata(connection), table);
 
       Statement statement = connection.createStatement();
       try {
@@ -396,14 +503,20 @@ public class JbpmSchema {
   }
 
   private Table findTableMapping(String tableName) {
+    Table table = getTableMapping(tableName);
+    if (table == null) throw new JbpmException("no mapping found for table: " + tableName);
+    return table;
+  }
+
+  private Table getTableMapping(String tableName) {
     for (Iterator i = configuration.getTableMappings(); i.hasNext();) {
       Table table = (Table) i.next();
       if (tableName.equals(table.getName())) return table;
     }
-    throw new JbpmException("no mapping found for table: " + tableName);
+    return null;
   }
 
-  private TableMetadata getTableMetadata(Connection connection, Table table)
+  private TableMetadata getTableMetadata(DatabaseMetadata databaseMetadata, Table table)
     throws SQLException {
     String tableSchema = table.getSchema();
     if (tableSchema == null) tableSchema = getDefaultSchema();
@@ -411,7 +524,7 @@ public class JbpmSchema {
     String tableCatalog = table.getCatalog();
     if (tableCatalog == null) tableCatalog = getDefaultCatalog();
 
-    return getDatabaseMetadata(connection)
+    return databaseMetadata
       .getTableMetadata(table.getName(), tableSchema, tableCatalog, table.isQuoted());
   }
 
@@ -568,6 +681,7 @@ public class JbpmSchema {
       configuration.configure();
     }
 
+    HibernateHelper.configureIdGenerators(configuration);
     return new JbpmSchema(configuration);
   }
 
@@ -41,6 +41,7 @@ import org.hibernate.type.StringType;
 
 import org.jbpm.JbpmConfiguration.Configs;
 import org.jbpm.JbpmException;
+import org.jbpm.db.hibernate.HibernateHelper;
 import org.jbpm.util.ClassLoaderUtil;
 import org.jbpm.util.JndiUtil;
 
@@ -158,6 +159,7 @@ public class JbpmSessionFactory {
       configuration.addProperties(properties);
     }
 
+    HibernateHelper.configureIdGenerators(configuration);
     return configuration;
   }
 
@@ -21,22 +21,47 @@
  */
 package org.jbpm.db;
 
+import java.io.Serializable;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import org.hibernate.EntityMode;
+import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.SQLQuery;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.PersistenceContext;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
 import org.jbpm.command.ExecuteJobsCommand;
+import org.jbpm.db.hibernate.SkipLockedSupport;
 import org.jbpm.graph.def.Action;
 import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.graph.exe.Token;
+import org.jbpm.job.ExceptionTrace;
 import org.jbpm.job.Job;
+import org.jbpm.job.JobExecutorLease;
 import org.jbpm.job.Timer;
 import org.jbpm.job.executor.JobExecutor;
 import org.jbpm.persistence.JbpmPersistenceException;
@@ -57,6 +82,15 @@ public class JobSession {
 
   private final Session session;
 
+  /**
+   * candidate jobs found per job to acquire when the database cannot limit a statement that
+   * skips locked rows, enough for a few job executors acquiring at the same time
+   */
+  private static final int CANDIDATE_FACTOR = 4;
+
+  /** maps session factories to their {@link SkipLockedSupport} or {@link Boolean#FALSE} */
+  private static final Map skipLockedSupports = Collections.synchronizedMap(new WeakHashMap());
+
   public JobSession(Session session) {
     this.session = session;
   }
@@ -114,11 +148,22 @@ public class JobSession {
         .executeUpdate();
   
       // prevent further repetitions
-      List timers = session.getNamedQuery("JobSession.findRepeatingTimersByName")
+      List timerIds = session.getNamedQuery("JobSession.findRepeatingTimerIdsByName")
         .setString("name", name)
         .setParameter("token", token)
         .list();
-      preventFurtherRepetitions(timers);
+      List attachedTimerIds = cancelAttachedTimers(timerIds);
+      if (attachedTimerIds.size() < timerIds.size()) {
+        Query query;
+        if (attachedTimerIds.isEmpty()) {
+          query = session.getNamedQuery("JobSession.cancelRepeatingTimersByName");
+        }
+        else {
+          query = session.getNamedQuery("JobSession.cancelDetachedRepeatingTimersByName")
+            .setParameterList("attachedTimerIds", attachedTimerIds);
+        }
+        query.setString("name", name).setParameter("token", token).executeUpdate();
+      }
     }
     catch (HibernateException e) {
       throw new JbpmPersistenceException("could not delete timers by name '" + name + "' for "
@@ -144,6 +189,274 @@ public class JobSession {
     }
   }
   
+  /**
+   * Leaves jobs of the given process definitions or job classes out of the job queries issued
+   * by this session from now on.
+   * 
+   * @param names process definition names or job class names
+   */
+  // Job Executor
+  public void excludeJobs(Collection names) {
+    List processDefinitionNames = new ArrayList();
+    List jobTypes = new ArrayList();
+    SessionFactory sessionFactory = session.getSessionFactory();
+    for (Iterator i = names.iterator(); i.hasNext();) {
+      String name = (String) i.next();
+      ClassMetadata classMetadata = sessionFactory.getClassMetadata(name);
+      if (classMetadata instanceof SingleTableEntityPersister
+        && Job.class.isAssignableFrom(classMetadata.getMappedClass(EntityMode.POJO))) {
+        SingleTableEntityPersister persister = (SingleTableEntityPersister) classMetadata;
+        // discriminator comes as a quoted character literal
+        jobTypes.add(new Character(persister.getDiscriminatorSQLValue().charAt(1)));
+      }
+      else {
+        processDefinitionNames.add(name);
+      }
+    }
+
+    try {
+      if (!processDefinitionNames.isEmpty()) {
+        session.enableFilter("excludedProcessDefinitions")
+          .setParameterList("processDefinitionNames", processDefinitionNames);
+      }
+      if (!jobTypes.isEmpty()) {
+        session.enableFilter("excludedJobTypes").setParameterList("jobTypes", jobTypes);
+      }
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not exclude jobs of " + names, e);
+    }
+  }
+
+  /**
+   * Tells the names of the process definitions of the given jobs, without loading the process
+   * definitions into this session.
+   * 
+   * @return the process definition names, keyed by job identifier
+   */
+  // Job Executor
+  public Map findProcessDefinitionNames(Collection jobs) {
+    if (jobs.isEmpty()) return Collections.EMPTY_MAP;
+
+    List jobIds = new ArrayList(jobs.size());
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      jobIds.add(new Long(((Job) i.next()).getId()));
+    }
+    try {
+      List rows = session.getNamedQuery("JobSession.findProcessDefinitionNamesOfJobs")
+        .setParameterList("jobIds", jobIds)
+        .list();
+      Map processDefinitionNames = new HashMap();
+      for (Iterator i = rows.iterator(); i.hasNext();) {
+        Object[] row = (Object[]) i.next();
+        processDefinitionNames.put(row[0], row[1]);
+      }
+      return processDefinitionNames;
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not find process definition names of jobs", e);
+    }
+  }
+
+  /**
+   * Finds up to <code>maxResults</code> unowned jobs ready for execution, earliest due first.
+   * If the database can skip rows locked by concurrent transactions, the returned jobs are
+   * locked until the end of the current transaction, so that concurrent job executors never
+   * claim the same job. Otherwise, concurrent claims are detected by optimistic locking when
+   * the transaction commits.
+   */
+  // Job Executor
+  public List findAcquirableJobs(int maxResults) {
+    return findAcquirableJobs(maxResults, Integer.MIN_VALUE, Integer.MAX_VALUE, null, 0);
+  }
+
+  /**
+   * Finds up to <code>maxResults</code> unowned jobs ready for execution, with priorities in
+   * the given range and in the given partitions. Jobs with lower priority numbers come first;
+   * among jobs of equal priority, the earliest due come first. A job belongs to partition
+   * <em>p</em> if the identifier of its process instance modulo <code>partitionCount</code>
+   * equals <em>p</em>; jobs without a process instance belong to partition 0.
+   * 
+   * @param minPriority the lowest priority number to search, inclusive
+   * @param maxPriority the highest priority number to search, inclusive
+   * @param partitions the partitions to search, as {@link Integer} objects; if
+   * <code>null</code>, all partitions are searched
+   * @see #findAcquirableJobs(int)
+   */
+  // Job Executor
+  public List findAcquirableJobs(int maxResults, int minPriority, int maxPriority,
+    Collection partitions, int partitionCount) {
+    if (partitions != null && partitions.isEmpty()) return Collections.EMPTY_LIST;
+    try {
+      Date now = new Date();
+      SkipLockedSupport skipLocked = getSkipLockedSupport();
+      if (skipLocked == null) {
+        Query query = getJobQuery("JobSession.findAcquirableJobs",
+          "JobSession.findAcquirableJobsInPartitions", minPriority, maxPriority, partitions,
+          partitionCount);
+        return query.setTimestamp("now", now).setMaxResults(maxResults).list();
+      }
+
+      // lock acquirable jobs that concurrent transactions have not locked
+      List jobIds = lockAcquirableJobs(maxResults, minPriority, maxPriority, partitions,
+        partitionCount, now, skipLocked);
+      if (jobIds == null) {
+        // database cannot limit the locking select; concurrent job executors find the same
+        // candidates first, so find more candidates than needed and lock as many as needed
+        Query query = getJobQuery("JobSession.findAcquirableJobIds",
+          "JobSession.findAcquirableJobIdsInPartitions", minPriority, maxPriority, partitions,
+          partitionCount);
+        List candidateIds = query.setTimestamp("now", now)
+          .setMaxResults(maxResults * CANDIDATE_FACTOR)
+          .list();
+        jobIds = new ArrayList();
+        for (int i = 0, n = candidateIds.size(); i < n && jobIds.size() < maxResults;) {
+          int end = Math.min(i + maxResults - jobIds.size(), n);
+          jobIds.addAll(lockUnownedJobs(candidateIds.subList(i, end), skipLocked));
+          i = end;
+        }
+      }
+      if (jobIds.isEmpty()) return jobIds;
+
+      // load locked jobs
+      return session.createCriteria(Job.class)
+        .add(Restrictions.in("id", jobIds))
+        .addOrder(Order.asc("priority"))
+        .addOrder(Order.asc("dueDate"))
+        .list();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not find acquirable jobs", e);
+    }
+  }
+
+  private Query getJobQuery(String queryName, String partitionedQueryName, int minPriority,
+    int maxPriority, Collection partitions, int partitionCount) {
+    Query query;
+    if (partitions == null) {
+      query = session.getNamedQuery(queryName);
+    }
+    else {
+      query = session.getNamedQuery(partitionedQueryName)
+        .setInteger("partitionCount", partitionCount)
+        .setParameterList("partitions", partitions);
+    }
+    return query.setInteger("minPriority", minPriority).setInteger("maxPriority", maxPriority);
+  }
+
+  /**
+   * Selects and locks up to <code>maxResults</code> acquirable jobs in a single statement,
+   * skipping the jobs locked by concurrent transactions. The statement applies the filters
+   * enabled on this session, like the job queries do.
+   * 
+   * @return the identifiers of the locked jobs, or <code>null</code> if the database cannot
+   * limit a statement that skips locked rows
+   */
+  private List lockAcquirableJobs(int maxResults, int minPriority, int maxPriority,
+    Collection partitions, int partitionCount, Date now, SkipLockedSupport skipLocked) {
+    AbstractEntityPersister persister = (AbstractEntityPersister) session.getSessionFactory()
+      .getClassMetadata(Job.class);
+    String table = persister.getTableName();
+    String idColumn = persister.getIdentifierColumnNames()[0];
+    String priorityColumn = getQualifiedColumn(persister, "priority");
+
+    StringBuffer condition = new StringBuffer()
+      .append(getQualifiedColumn(persister, "lockOwner")).append(" is null and ")
+      .append(getQualifiedColumn(persister, "retries")).append(" > 0 and ")
+      .append(getQualifiedColumn(persister, "dueDate")).append(" <= :now and ")
+      .append(getQualifiedColumn(persister, "isSuspended")).append(" = :suspended and ")
+      .append(priorityColumn).append(" between :minPriority and :maxPriority");
+    if (partitions != null) {
+      SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+      SQLFunction mod = (SQLFunction) sessionFactory.getDialect().getFunctions().get("mod");
+      String processInstanceColumn = getQualifiedColumn(persister, "processInstance");
+      List arguments = new ArrayList();
+      arguments.add(processInstanceColumn);
+      arguments.add(Integer.toString(partitionCount));
+      condition.append(" and (")
+        .append(processInstanceColumn)
+        .append(" is null and 0 in (:partitions) or ")
+        .append(mod.render(arguments, sessionFactory))
+        .append(" in (:partitions))");
+    }
+    SessionImplementor sessionImplementor = (SessionImplementor) session;
+    condition.append(persister.filterFragment(table, sessionImplementor.getEnabledFilters()));
+
+    String order = priorityColumn + " asc, " + getQualifiedColumn(persister, "dueDate") + " asc";
+    String sql = skipLocked.getLimitedSelectString(table + '.' + idColumn, table,
+      condition.toString(), order, maxResults);
+    if (sql == null) return null;
+
+    SQLQuery query = session.createSQLQuery(sql);
+    query.addScalar(idColumn, Hibernate.LONG);
+    query.setTimestamp("now", now)
+      .setBoolean("suspended", false)
+      .setInteger("minPriority", minPriority)
+      .setInteger("maxPriority", maxPriority);
+    if (partitions != null) query.setParameterList("partitions", partitions);
+
+    // filter parameters are named after their filter, as in filterName.parameterName
+    String[] parameterNames = query.getNamedParameters();
+    for (int i = 0; i < parameterNames.length; i++) {
+      String parameterName = parameterNames[i];
+      if (parameterName.indexOf('.') == -1) continue;
+
+      Object value = sessionImplementor.getFilterParameterValue(parameterName);
+      if (value instanceof Collection) {
+        query.setParameterList(parameterName, (Collection) value);
+      }
+      else {
+        query.setParameter(parameterName, value);
+      }
+    }
+    return query.list();
+  }
+
+  private static String getQualifiedColumn(AbstractEntityPersister persister,
+    String propertyName) {
+    return persister.getTableName() + '.' + persister.getPropertyColumnNames(propertyName)[0];
+  }
+
+  private List lockUnownedJobs(List jobIds, SkipLockedSupport skipLocked) {
+    AbstractEntityPersister persister = (AbstractEntityPersister) session.getSessionFactory()
+      .getClassMetadata(Job.class);
+    String idColumn = persister.getIdentifierColumnNames()[0];
+
+    StringBuffer condition = new StringBuffer(idColumn).append(" in (");
+    for (int i = 0, n = jobIds.size(); i < n; i++) {
+      if (i > 0) condition.append(", ");
+      condition.append('?');
+    }
+    condition.append(") and ")
+      .append(persister.getPropertyColumnNames("lockOwner")[0])
+      .append(" is null");
+
+    SQLQuery query = session.createSQLQuery(skipLocked.getSelectString(idColumn,
+      persister.getTableName(), condition.toString()));
+    query.addScalar(idColumn, Hibernate.LONG);
+    for (int i = 0, n = jobIds.size(); i < n; i++) {
+      query.setLong(i, ((Long) jobIds.get(i)).longValue());
+    }
+    return query.list();
+  }
+
+  private SkipLockedSupport getSkipLockedSupport() {
+    SessionFactory sessionFactory = session.getSessionFactory();
+    Object skipLocked = skipLockedSupports.get(sessionFactory);
+    if (skipLocked == null) {
+      try {
+        Dialect dialect = ((SessionFactoryImplementor) sessionFactory).getDialect();
+        skipLocked = SkipLockedSupport.forDialect(dialect, session.connection().getMetaData());
+      }
+      catch (SQLException e) {
+        throw new JbpmPersistenceException("could not get database metadata", e);
+      }
+      if (skipLocked == null) skipLocked = Boolean.FALSE;
+      skipLockedSupports.put(sessionFactory, skipLocked);
+    }
+    return skipLocked instanceof SkipLockedSupport ? (SkipLockedSupport) skipLocked : null;
+  }
+
   // Job Executor
   public Date getNextUnownedDueJobDueDate(Date wakeUpDate) { 
     try {
@@ -156,6 +469,102 @@ public class JobSession {
     }
   }
 
+  /**
+   * Finds the identifiers and due dates of unowned jobs due before the given date, earliest
+   * first.
+   * 
+   * @return a list of two-element arrays, holding a {@link Long} identifier and a {@link Date}
+   */
+  // Job Executor
+  public List findUnownedJobDueDates(Date until, int maxResults) {
+    return findUnownedJobDueDates(until, maxResults, Integer.MIN_VALUE, Integer.MAX_VALUE, null,
+      0);
+  }
+
+  /**
+   * Finds the identifiers and due dates of unowned jobs due before the given date, with
+   * priorities in the given range and in the given partitions, earliest first.
+   * 
+   * @see #findAcquirableJobs(int, int, int, Collection, int)
+   */
+  // Job Executor
+  public List findUnownedJobDueDates(Date until, int maxResults, int minPriority,
+    int maxPriority, Collection partitions, int partitionCount) {
+    if (partitions != null && partitions.isEmpty()) return Collections.EMPTY_LIST;
+    try {
+      Query query = getJobQuery("JobSession.findUnownedJobDueDates",
+        "JobSession.findUnownedJobDueDatesInPartitions", minPriority, maxPriority, partitions,
+        partitionCount);
+      return query.setTimestamp("until", until).setMaxResults(maxResults).list();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not find jobs due before " + until, e);
+    }
+  }
+
+  /**
+   * Finds all job executor leases, whether held or not.
+   */
+  // Job Executor
+  public List findJobExecutorLeases() {
+    try {
+      return session.getNamedQuery("JobSession.findJobExecutorLeases").list();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not find job executor leases", e);
+    }
+  }
+
+  public void saveJobExecutorLease(JobExecutorLease lease) {
+    try {
+      session.save(lease);
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not save " + lease, e);
+    }
+  }
+
+  public void deleteJobExecutorLease(JobExecutorLease lease) {
+    try {
+      session.delete(lease);
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not delete " + lease, e);
+    }
+  }
+
+  /**
+   * Stores the full stack trace of the given exception, unless a trace with the same
+   * fingerprint exists.
+   * 
+   * @return <code>true</code> if the trace was stored
+   */
+  public boolean saveExceptionTrace(String fingerprint, Throwable exception) {
+    try {
+      if (session.get(ExceptionTrace.class, fingerprint) != null) return false;
+      session.save(new ExceptionTrace(fingerprint, exception));
+      return true;
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not save exception trace " + fingerprint, e);
+    }
+  }
+
+  /**
+   * Loads the stack trace stored for the given {@linkplain Job#getExceptionFingerprint()
+   * exception fingerprint}.
+   * 
+   * @return the trace, or <code>null</code> if none was stored
+   */
+  public ExceptionTrace loadExceptionTrace(String fingerprint) {
+    try {
+      return (ExceptionTrace) session.get(ExceptionTrace.class, fingerprint);
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not load exception trace " + fingerprint, e);
+    }
+  }
+
   // used by the LockMonitorThread
   public List findJobsWithOverdueLockTime(Date threshold) {
     try {
@@ -169,6 +578,190 @@ public class JobSession {
     }
   }
 
+  /**
+   * Unlocks all jobs locked before the given threshold in a single statement. Unlocking
+   * increments the version of each job, so that the transaction executing a job whose lock
+   * was taken away fails to commit.
+   * 
+   * @return the number of unlocked jobs
+   */
+  // Lock Monitor
+  public int unlockOverdueJobs(Date threshold) {
+    try {
+      return session.getNamedQuery("JobSession.unlockOverdueJobs")
+        .setTimestamp("threshold", threshold)
+        .executeUpdate();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not unlock jobs with lock time over "
+        + threshold, e);
+    }
+  }
+
+  /**
+   * Sets the lock time of the given jobs, provided they are still locked by one of the given
+   * lock owners. Renewing locks leaves the version of the jobs untouched.
+   * 
+   * @param jobIds job identifiers, as {@link Long} objects
+   * @return the number of renewed locks
+   */
+  // Lock Monitor
+  public int renewJobLocks(Collection jobIds, Collection lockOwners, Date lockTime) {
+    if (jobIds.isEmpty() || lockOwners.isEmpty()) return 0;
+    try {
+      return session.getNamedQuery("JobSession.renewJobLocks")
+        .setTimestamp("lockTime", lockTime)
+        .setParameterList("jobIds", jobIds)
+        .setParameterList("lockOwners", lockOwners)
+        .executeUpdate();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not renew locks of jobs " + jobIds, e);
+    }
+  }
+
+  /**
+   * Unlocks the given jobs, provided they are still locked by one of the given lock owners, so
+   * that they can be dispatched again right away rather than after the max lock time.
+   * 
+   * @param jobIds job identifiers, as {@link Long} objects
+   * @param lockOwners lock owner names, as {@link String} objects
+   * @return the number of unlocked jobs
+   */
+  public int releaseJobLocks(Collection jobIds, Collection lockOwners) {
+    if (jobIds.isEmpty() || lockOwners.isEmpty()) return 0;
+    try {
+      return session.getNamedQuery("JobSession.releaseJobLocks")
+        .setParameterList("jobIds", jobIds)
+        .setParameterList("lockOwners", lockOwners)
+        .executeUpdate();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not release locks of jobs " + jobIds, e);
+    }
+  }
+
+  /**
+   * Moves the given job, which ran out of retries, to the dead job table. Dead jobs no longer
+   * weigh on the job acquisition queries; {@link #requeueDeadJob(Job, int)} moves them back.
+   * The job must be attached to this session. Deleting the job from the job table checks its
+   * version, so that a job executor that lost the lock of the job fails to move it.
+   * 
+   * @return <code>true</code> if the job was moved, or <code>false</code> if the job class
+   * has no dead job mapping, in which case the job stays where it is
+   */
+  // Job Executor
+  public boolean moveToDeadJobs(Job job) {
+    String deadEntityName = getDeadEntityName(job);
+    if (deadEntityName == null) return false;
+    try {
+      session.delete(job);
+      session.flush();
+      // the dead job table records the time of death in place of the lock time
+      job.setLockOwner(null);
+      job.setLockTime(new Date());
+      session.save(deadEntityName, job);
+      return true;
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not move " + job + " to dead jobs", e);
+    }
+  }
+
+  /**
+   * Tells the entity name under which instances of the class of the given job are mapped to
+   * the dead job table. The convention is the simple class name prefixed by <code>Dead</code>,
+   * in the package of the class.
+   * 
+   * @return the dead entity name, or <code>null</code> if the class has no dead job mapping
+   */
+  private String getDeadEntityName(Job job) {
+    String className = Hibernate.getClass(job).getName();
+    int dot = className.lastIndexOf('.');
+    String deadEntityName = className.substring(0, dot + 1) + "Dead"
+      + className.substring(dot + 1);
+    return session.getSessionFactory().getClassMetadata(deadEntityName) != null ? deadEntityName
+      : null;
+  }
+
+  /**
+   * Removes the given dead job from the dead job table, leaving it ready to be saved again as
+   * a job with the given number of retries. The job keeps its last exception.
+   */
+  // Commands
+  public void requeueDeadJob(Job deadJob, int retries) {
+    try {
+      session.delete(deadJob);
+      session.flush();
+      deadJob.setRetries(retries);
+      deadJob.setLockTime(null);
+      deadJob.setDueDate(new Date());
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not requeue " + deadJob, e);
+    }
+  }
+
+  /**
+   * Finds dead jobs, oldest first.
+   * 
+   * @param processDefinitionName restricts the result to the jobs of the process definition
+   * with this name, unless <code>null</code>
+   */
+  // Commands
+  public List findDeadJobs(String processDefinitionName, int maxResults) {
+    try {
+      Query query;
+      if (processDefinitionName == null) {
+        query = session.getNamedQuery("JobSession.findDeadJobs");
+      }
+      else {
+        query = session.getNamedQuery("JobSession.findDeadJobsByProcessDefinition")
+          .setString("processDefinitionName", processDefinitionName);
+      }
+      return query.setMaxResults(maxResults).list();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not find dead jobs", e);
+    }
+  }
+
+  public int countDeadJobs() {
+    try {
+      Number deadJobCount = (Number) session.getNamedQuery("JobSession.countDeadJobs")
+        .uniqueResult();
+      return deadJobCount.intValue();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not count dead jobs", e);
+    }
+  }
+
+  /**
+   * Deletes the jobs moved to the dead job table before the given date, in a single statement.
+   * 
+   * @param processDefinitionName restricts the deletion to the jobs of the process definition
+   * with this name, unless <code>null</code>
+   * @return the number of deleted jobs
+   */
+  // Commands
+  public int deleteDeadJobs(Date deadBefore, String processDefinitionName) {
+    try {
+      Query query;
+      if (processDefinitionName == null) {
+        query = session.getNamedQuery("JobSession.deleteDeadJobs");
+      }
+      else {
+        query = session.getNamedQuery("JobSession.deleteDeadJobsByProcessDefinition")
+          .setString("processDefinitionName", processDefinitionName);
+      }
+      return query.setTimestamp("deadBefore", deadBefore).executeUpdate();
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not delete dead jobs", e);
+    }
+  }
+
   // Token
   public void suspendJobs(Token token) {
     try {
@@ -210,23 +803,53 @@ public class JobSession {
         .executeUpdate();
 
       // prevent further repetitions
-      List timers = session.getNamedQuery("JobSession.findRepeatingTimersForProcessInstance")
+      List timerIds = session.getNamedQuery("JobSession.findRepeatingTimerIdsForProcessInstance")
         .setParameter("processInstance", processInstance)
         .list();
-      preventFurtherRepetitions(timers);
+      List attachedTimerIds = cancelAttachedTimers(timerIds);
+      if (attachedTimerIds.size() < timerIds.size()) {
+        Query query;
+        if (attachedTimerIds.isEmpty()) {
+          query = session.getNamedQuery("JobSession.cancelRepeatingTimersForProcessInstance");
+        }
+        else {
+          query = session
+            .getNamedQuery("JobSession.cancelDetachedRepeatingTimersForProcessInstance")
+            .setParameterList("attachedTimerIds", attachedTimerIds);
+        }
+        query.setParameter("processInstance", processInstance).executeUpdate();
+      }
     }
     catch (HibernateException e) {
       throw new JbpmPersistenceException("could not delete jobs for " + processInstance, e);
     }
   }
 
-  private static void preventFurtherRepetitions(List timers) {
-    if (!timers.isEmpty()) {
-      for (Iterator i = timers.iterator(); i.hasNext();) {
-        Timer timer = (Timer) i.next();
+  /**
+   * Stops the given timers from repeating, as far as they are attached to this session. Bulk
+   * statements that modify timers must leave attached timers alone, because the statements would
+   * make their versions stale; timers being executed are typical examples.
+   * 
+   * @param timerIds identifiers of repeating timers
+   * @return the identifiers of the attached timers
+   */
+  private List cancelAttachedTimers(List timerIds) {
+    SessionImplementor sessionImplementor = (SessionImplementor) session;
+    EntityPersister persister = sessionImplementor.getFactory()
+      .getEntityPersister(Timer.class.getName());
+    PersistenceContext persistenceContext = sessionImplementor.getPersistenceContext();
+
+    List attachedTimerIds = new ArrayList();
+    for (Iterator i = timerIds.iterator(); i.hasNext();) {
+      Serializable timerId = (Serializable) i.next();
+      Timer timer = (Timer) persistenceContext.getEntity(new EntityKey(timerId, persister,
+        EntityMode.POJO));
+      if (timer != null) {
         timer.setRepeat(null);
+        attachedTimerIds.add(timerId);
       }
     }
+    return attachedTimerIds;
   }
 
   // Change Process Instance Command
@@ -32,7 +32,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.mapping.KeyValue;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.RootClass;
+import org.hibernate.mapping.SimpleValue;
 import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.util.PropertiesHelper;
+import org.jbpm.JbpmException;
 import org.jbpm.util.ClassLoaderUtil;
 
 public class HibernateHelper {
@@ -41,6 +49,24 @@ public class HibernateHelper {
     // prevent instantiation
   }
 
+  /**
+   * Hibernate property that selects how jBPM entities get their identifiers. The default,
+   * <code>native</code>, keeps the generator declared in the mapping files. Value
+   * <code>pooled</code> draws identifiers in blocks from a database sequence, or from a table
+   * where the database lacks sequences. Unlike identity columns, pooled identifiers are known
+   * before the insert, which leaves Hibernate free to batch inserts.
+   */
+  public static final String ID_GENERATOR = "jbpm.id_generator";
+  /** number of identifiers each round trip to the pooled sequence reserves */
+  public static final String ID_INCREMENT_SIZE = "jbpm.id_generator.increment_size";
+  /**
+   * first identifier of the pooled sequence; on existing databases, it must exceed the
+   * greatest identifier in use
+   */
+  public static final String ID_INITIAL_VALUE = "jbpm.id_generator.initial_value";
+
+  static final String ID_SEQUENCE_NAME = "JBPM_ID_SEQUENCE";
+
   /**
    * maps SessionFactory's to Configurations.<br>
    * by default, configuration lookup will be enabled
@@ -105,9 +131,53 @@ public class HibernateHelper {
       }
     }
 
+    configureIdGenerators(configuration);
     return configuration;
   }
 
+  /**
+   * Applies the identifier generator selected by the {@value #ID_GENERATOR} property to the
+   * jBPM entities mapped with the <code>native</code> generator.
+   */
+  public static void configureIdGenerators(Configuration configuration) {
+    String idGenerator = configuration.getProperty(ID_GENERATOR);
+    if (idGenerator == null || "native".equals(idGenerator)) return;
+    if (!OptimizerFactory.POOL.equals(idGenerator)) {
+      throw new JbpmException("unknown identifier generator: " + idGenerator);
+    }
+
+    Properties properties = configuration.getProperties();
+    Properties generatorProperties = new Properties();
+    generatorProperties.setProperty(SequenceStyleGenerator.SEQUENCE_PARAM, ID_SEQUENCE_NAME);
+    generatorProperties.setProperty(SequenceStyleGenerator.OPT_PARAM, OptimizerFactory.POOL);
+    generatorProperties.setProperty(SequenceStyleGenerator.INCREMENT_PARAM,
+      String.valueOf(PropertiesHelper.getInt(ID_INCREMENT_SIZE, properties, 50)));
+    generatorProperties.setProperty(SequenceStyleGenerator.INITIAL_PARAM,
+      String.valueOf(PropertiesHelper.getInt(ID_INITIAL_VALUE, properties, 1)));
+
+    for (Iterator i = configuration.getClassMappings(); i.hasNext();) {
+      PersistentClass persistentClass = (PersistentClass) i.next();
+      // subclasses share the identifier of their root class
+      if (!(persistentClass instanceof RootClass)
+        || !persistentClass.getEntityName().startsWith("org.jbpm.")) continue;
+
+      KeyValue identifier = persistentClass.getIdentifier();
+      if (identifier instanceof SimpleValue) {
+        SimpleValue simpleValue = (SimpleValue) identifier;
+        if ("native".equals(simpleValue.getIdentifierGeneratorStrategy())) {
+          simpleValue.setIdentifierGeneratorStrategy(SequenceStyleGenerator.class.getName());
+
+          Properties identifierProperties = simpleValue.getIdentifierGeneratorProperties();
+          if (identifierProperties == null) {
+            identifierProperties = new Properties();
+            simpleValue.setIdentifierGeneratorProperties(identifierProperties);
+          }
+          identifierProperties.putAll(generatorProperties);
+        }
+      }
+    }
+  }
+
   public static Configuration getConfiguration(SessionFactory sessionFactory) {
     return (Configuration) configurations.get(sessionFactory);
   }
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db.hibernate;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.dialect.SybaseDialect;
+import org.hibernate.engine.Mapping;
+import org.hibernate.mapping.AbstractAuxiliaryDatabaseObject;
+import org.hibernate.mapping.Table;
+
+/**
+ * Composite index on the job table that fits the job acquisition queries. Hibernate mappings
+ * declare single column indexes only, hence these indexes come as auxiliary database objects.
+ * On databases that support partial indexes, the index leaves out the locked jobs, which the
+ * acquisition queries skip anyway.
+ * 
+ * @see #JOB_INDEXES
+ */
+public abstract class JobIndex extends AbstractAuxiliaryDatabaseObject {
+
+  public static final String TABLE_NAME = "JBPM_JOB";
+
+  private static final long serialVersionUID = 1L;
+
+  private final String name;
+  private final String[] columnNames;
+  private final String[] partialColumnNames;
+  private final String partialCondition;
+
+  JobIndex(String name, String[] columnNames, String[] partialColumnNames,
+    String partialCondition) {
+    this.name = name;
+    this.columnNames = columnNames;
+    this.partialColumnNames = partialColumnNames;
+    this.partialCondition = partialCondition;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Tells the columns this index spans on databases that lack partial indexes.
+   */
+  public String[] getColumnNames() {
+    return columnNames;
+  }
+
+  public String sqlCreateString(Dialect dialect, Mapping mapping, String defaultCatalog,
+    String defaultSchema) {
+    StringBuffer sql = new StringBuffer("create index ").append(name)
+      .append(" on ")
+      .append(Table.qualify(defaultCatalog, defaultSchema, TABLE_NAME))
+      .append(" (");
+
+    boolean partial = supportsPartialIndexes(dialect);
+    String[] columnNames = partial ? partialColumnNames : this.columnNames;
+    for (int i = 0; i < columnNames.length; i++) {
+      if (i > 0) sql.append(", ");
+      sql.append(columnNames[i]);
+    }
+    sql.append(')');
+
+    if (partial) sql.append(" where ").append(partialCondition);
+    return sql.toString();
+  }
+
+  public String sqlDropString(Dialect dialect, String defaultCatalog, String defaultSchema) {
+    String tableName = Table.qualify(defaultCatalog, defaultSchema, TABLE_NAME);
+    if (dialect instanceof MySQLDialect) {
+      return "drop index " + name + " on " + tableName;
+    }
+    if (dialect instanceof SybaseDialect) {
+      // SQLServerDialect extends SybaseDialect
+      return "drop index " + tableName + '.' + name;
+    }
+
+    StringBuffer sql = new StringBuffer("drop index ");
+    if (dialect.supportsIfExistsBeforeTableName()) sql.append("if exists ");
+    sql.append(Table.qualify(null, defaultSchema, name));
+    if (dialect.supportsIfExistsAfterTableName()) sql.append(" if exists");
+    return sql.toString();
+  }
+
+  static boolean supportsPartialIndexes(Dialect dialect) {
+    return dialect instanceof PostgreSQLDialect;
+  }
+
+  public String toString() {
+    return "JobIndex(" + name + ')';
+  }
+
+  /**
+   * Serves the queries that acquire jobs by priority, then due date.
+   */
+  public static class Acquisition extends JobIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    public Acquisition() {
+      super("IDX_JOB_ACQUIRE", new String[] { "LOCKOWNER_", "ISSUSPENDED_", "PRIORITY_",
+        "DUEDATE_", "RETRIES_" }, new String[] { "PRIORITY_", "DUEDATE_", "RETRIES_" },
+        "LOCKOWNER_ is null");
+    }
+  }
+
+  /**
+   * Serves the queries that look for the next due jobs regardless of priority.
+   */
+  public static class DueDate extends JobIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    public DueDate() {
+      super("IDX_JOB_DUE", new String[] { "LOCKOWNER_", "ISSUSPENDED_", "DUEDATE_",
+        "RETRIES_" }, new String[] { "DUEDATE_", "RETRIES_" }, "LOCKOWNER_ is null");
+    }
+  }
+
+  /**
+   * Serves the queries that unlock jobs whose lock is overdue.
+   */
+  public static class LockTime extends JobIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    public LockTime() {
+      super("IDX_JOB_LOCKTIME", new String[] { "LOCKTIME_" }, new String[] { "LOCKTIME_" },
+        "LOCKTIME_ is not null");
+    }
+  }
+
+  /**
+   * Indexes the job acquisition queries need, as declared in the job mapping.
+   */
+  public static final JobIndex[] JOB_INDEXES = { new Acquisition(), new DueDate(),
+    new LockTime() };
+}
@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db.hibernate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle9Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.dialect.SQLServerDialect;
+
+/**
+ * Renders row locking statements that pass over rows already locked by other transactions,
+ * instead of waiting for them to be released. Concurrent job executors use these statements to
+ * claim distinct jobs without blocking one another.
+ * 
+ * @see #forDialect(Dialect, DatabaseMetaData)
+ */
+public abstract class SkipLockedSupport {
+
+  SkipLockedSupport() {
+    // prevent external subclassing
+  }
+
+  /**
+   * Renders a statement that selects the given column from the rows of <code>table</code>
+   * matching <code>condition</code>, locking the selected rows and skipping the rows locked
+   * elsewhere.
+   */
+  public abstract String getSelectString(String column, String table, String condition);
+
+  /**
+   * Renders a statement that selects the given column from at most <code>maxResults</code> rows
+   * of <code>table</code> matching <code>condition</code>, taken in the given order, locking the
+   * selected rows and skipping the rows locked elsewhere. Concurrent transactions issuing this
+   * statement select distinct rows.
+   * 
+   * @return the statement, or <code>null</code> if the database cannot limit a statement that
+   * skips locked rows
+   */
+  public abstract String getLimitedSelectString(String column, String table, String condition,
+    String order, int maxResults);
+
+  /**
+   * Determines whether the given database can skip locked rows.
+   * 
+   * @param dialect the Hibernate dialect in use
+   * @param metaData the metadata of a connection to the database, used to check the server
+   * version
+   * @return the support for the database, or <code>null</code> if the database lacks such a
+   * feature
+   */
+  public static SkipLockedSupport forDialect(Dialect dialect, DatabaseMetaData metaData) {
+    try {
+      int majorVersion = metaData.getDatabaseMajorVersion();
+      int minorVersion = metaData.getDatabaseMinorVersion();
+
+      if (dialect instanceof PostgreSQLDialect) {
+        // PostgreSQL 9.5 introduced SKIP LOCKED
+        if (majorVersion > 9 || majorVersion == 9 && minorVersion >= 5) return LIMIT_FOR_UPDATE;
+      }
+      else if (dialect instanceof MySQLDialect) {
+        // MySQL 8.0 introduced SKIP LOCKED
+        if (majorVersion >= 8) return LIMIT_FOR_UPDATE;
+      }
+      else if (dialect instanceof Oracle9Dialect) {
+        // Oracle 11g documented SKIP LOCKED
+        if (majorVersion >= 11) return FOR_UPDATE;
+      }
+      else if (dialect instanceof SQLServerDialect) {
+        // SQL Server 2000 introduced the READPAST table hint
+        if (majorVersion >= 8) return TABLE_HINT;
+      }
+    }
+    catch (SQLException e) {
+      log.debug("could not determine database version", e);
+    }
+    catch (AbstractMethodError e) {
+      // JDBC 2 driver
+      log.debug("could not determine database version", e);
+    }
+    return null;
+  }
+
+  static final SkipLockedSupport FOR_UPDATE = new SkipLockedSupport() {
+
+    public String getSelectString(String column, String table, String condition) {
+      return "select " + column + " from " + table + " where " + condition
+        + " for update skip locked";
+    }
+
+    public String getLimitedSelectString(String column, String table, String condition,
+      String order, int maxResults) {
+      // rownum restricts rows before locked ones are skipped
+      return null;
+    }
+
+    public String toString() {
+      return "for update skip locked";
+    }
+  };
+
+  static final SkipLockedSupport LIMIT_FOR_UPDATE = new SkipLockedSupport() {
+
+    public String getSelectString(String column, String table, String condition) {
+      return FOR_UPDATE.getSelectString(column, table, condition);
+    }
+
+    public String getLimitedSelectString(String column, String table, String condition,
+      String order, int maxResults) {
+      return "select " + column + " from " + table + " where " + condition + " order by "
+        + order + " limit " + maxResults + " for update skip locked";
+    }
+
+    public String toString() {
+      return "limit for update skip locked";
+    }
+  };
+
+  static final SkipLockedSupport TABLE_HINT = new SkipLockedSupport() {
+
+    public String getSelectString(String column, String table, String condition) {
+      return "select " + column + " from " + table + " with (updlock, rowlock, readpast) where "
+        + condition;
+    }
+
+    public String getLimitedSelectString(String column, String table, String condition,
+      String order, int maxResults) {
+      return "select top " + maxResults + " " + column + " from " + table
+        + " with (updlock, rowlock, readpast) where " + condition + " order by " + order;
+    }
+
+    public String toString() {
+      return "with (updlock, rowlock, readpast)";
+    }
+  };
+
+  private static final Log log = LogFactory.getLog(SkipLockedSupport.class);
+}
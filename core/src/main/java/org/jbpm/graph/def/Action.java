@@ -28,6 +28,7 @@ import org.dom4j.Element;
 import org.jbpm.JbpmConfiguration;
 import org.jbpm.graph.exe.ExecutionContext;
 import org.jbpm.instantiation.Delegation;
+import org.jbpm.job.Job;
 import org.jbpm.jpdl.el.impl.JbpmExpressionEvaluator;
 import org.jbpm.jpdl.xml.JpdlXmlReader;
 import org.jbpm.jpdl.xml.Parsable;
@@ -41,6 +42,7 @@ public class Action implements ActionHandler, Parsable {
   protected boolean isPropagationAllowed = true;
   protected boolean isAsync;
   protected boolean isAsyncExclusive;
+  protected int asyncPriority = Job.PRIORITY_NORMAL;
   protected Action referencedAction;
   protected Delegation actionDelegation;
   protected String actionExpression;
@@ -251,6 +253,17 @@ public class Action implements ActionHandler, Parsable {
     if (asyncExclusive) isAsync = true;
   }
 
+  /**
+   * priority of the jobs that execute this action asynchronously.
+   */
+  public int getAsyncPriority() {
+    return asyncPriority;
+  }
+
+  public void setAsyncPriority(int asyncPriority) {
+    this.asyncPriority = asyncPriority;
+  }
+
   public String getActionExpression() {
     return actionExpression;
   }
@@ -247,6 +247,7 @@ public abstract class GraphElement implements Identifiable, Serializable {
     job.setAction(action);
     job.setDueDate(new Date());
     job.setExclusive(action.isAsyncExclusive());
+    job.setPriority(action.getAsyncPriority());
     return job;
   }
 
@@ -42,6 +42,7 @@ import org.jbpm.graph.exe.ExecutionContext;
 import org.jbpm.graph.exe.Token;
 import org.jbpm.graph.log.NodeLog;
 import org.jbpm.job.ExecuteNodeJob;
+import org.jbpm.job.Job;
 import org.jbpm.jpdl.xml.JpdlXmlReader;
 import org.jbpm.jpdl.xml.Parsable;
 import org.jbpm.util.Clock;
@@ -95,6 +96,7 @@ public class Node extends GraphElement implements Parsable {
   protected SuperState superState;
   protected boolean isAsync;
   protected boolean isAsyncExclusive;
+  protected int asyncPriority = Job.PRIORITY_NORMAL;
 
   public NodeType getNodeType() {
     return NodeType.Node;
@@ -387,6 +389,7 @@ public class Node extends GraphElement implements Parsable {
     job.setNode(this);
     job.setDueDate(new Date());
     job.setExclusive(isAsyncExclusive);
+    job.setPriority(asyncPriority);
     return job;
   }
 
@@ -451,7 +454,9 @@ public class Node extends GraphElement implements Parsable {
   }
 
   protected void addNodeLog(Token token) {
-    token.addLog(new NodeLog(this, token.getNodeEnter(), Clock.getCurrentTime()));
+    if (token.isLogged(NodeLog.class)) {
+      token.addLog(new NodeLog(this, token.getNodeEnter(), Clock.getCurrentTime()));
+    }
   }
 
   // ///////////////////////////////////////////////////////////////////////////
@@ -538,4 +543,15 @@ public class Node extends GraphElement implements Parsable {
     this.isAsyncExclusive = isAsyncExclusive;
     if (isAsyncExclusive) isAsync = true;
   }
+
+  /**
+   * priority of the jobs that continue execution asynchronously.
+   */
+  public int getAsyncPriority() {
+    return asyncPriority;
+  }
+
+  public void setAsyncPriority(int asyncPriority) {
+    this.asyncPriority = asyncPriority;
+  }
 }
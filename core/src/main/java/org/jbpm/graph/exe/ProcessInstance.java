@@ -139,7 +139,9 @@ public class ProcessInstance implements Identifiable, Serializable {
     Services.assignId(this);
 
     // add the creation log
-    rootToken.addLog(new ProcessInstanceCreateLog());
+    if (rootToken.isLogged(ProcessInstanceCreateLog.class)) {
+      rootToken.addLog(new ProcessInstanceCreateLog());
+    }
 
     // set the variables
     addInitialContextVariables(variables);
@@ -320,7 +322,9 @@ public class ProcessInstance implements Identifiable, Serializable {
     processDefinition.fireEvent(Event.EVENTTYPE_PROCESS_END, new ExecutionContext(rootToken));
 
     // add the process instance end log
-    rootToken.addLog(new ProcessInstanceEndLog());
+    if (rootToken.isLogged(ProcessInstanceEndLog.class)) {
+      rootToken.addLog(new ProcessInstanceEndLog());
+    }
 
     // Fetch this higher, rather than doing the work twice.
     JbpmContext jbpmContext = JbpmContext.getCurrentJbpmContext();
@@ -113,7 +113,7 @@ public class Token implements Identifiable, Serializable {
     this.parent = parent;
     parent.addChild(this);
     this.isTerminationImplicit = parent.isTerminationImplicit();
-    parent.addLog(new TokenCreateLog(this));
+    if (parent.isLogged(TokenCreateLog.class)) parent.addLog(new TokenCreateLog(this));
 
     // assign an id to this token before events get fired
     Services.assignId(this);
@@ -308,7 +308,7 @@ public class Token implements Identifiable, Serializable {
 
     // only log child-token ends
     // process instance logs replace root token logs
-    if (parent != null) {
+    if (parent != null && parent.isLogged(TokenEndLog.class)) {
       parent.addLog(new TokenEndLog(this));
     }
 
@@ -381,6 +381,15 @@ public class Token implements Identifiable, Serializable {
     }
   }
 
+  /**
+   * Tells whether logs of the given type are kept. Check this method before creating a log
+   * that takes some effort to build or that is added often.
+   */
+  public boolean isLogged(Class logType) {
+    LoggingInstance loggingInstance = processInstance.getLoggingInstance();
+    return loggingInstance != null && loggingInstance.isLogged(logType);
+  }
+
   /**
    * convenience method for starting a composite log. When you add composite logs, make sure you
    * put the {@link #endCompositeLog()} in a finally block.
@@ -245,8 +245,10 @@ public class ProcessState extends Node {
 
     // override the normal log generation in super.leave() by creating the log here
     // and replacing addNodeLog() with an empty version
-    superProcessToken.addLog(new ProcessStateLog(this, superProcessToken.getNodeEnter(),
-      Clock.getCurrentTime(), subProcessInstance));
+    if (superProcessToken.isLogged(ProcessStateLog.class)) {
+      superProcessToken.addLog(new ProcessStateLog(this, superProcessToken.getNodeEnter(),
+        Clock.getCurrentTime(), subProcessInstance));
+    }
 
     // call the subProcessEndAction
     super.leave(executionContext, getDefaultLeavingTransition());
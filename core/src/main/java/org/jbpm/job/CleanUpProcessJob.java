@@ -41,6 +41,8 @@ public class CleanUpProcessJob extends Job {
 
   public CleanUpProcessJob(Token token) {
     super(token);
+    // clean-up must not hold up process execution
+    setPriority(PRIORITY_LOW);
   }
 
   public boolean execute(JbpmContext jbpmContext) throws Exception {
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.Date;
+
+import org.jbpm.job.executor.ExceptionDigest;
+
+/**
+ * Full stack trace of the first exception seen with a given
+ * {@linkplain ExceptionDigest#getFingerprint(Throwable) fingerprint}. Jobs only keep a summary
+ * of their exception along with its fingerprint, which refers to the trace if one was stored.
+ * Traces longer than the column allows, 4000 characters on most databases, are truncated.
+ * 
+ * @see org.jbpm.job.executor.JobExecutor#setStoreExceptionTraces(boolean)
+ */
+public class ExceptionTrace implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String fingerprint;
+  private String stackTrace;
+  private Date firstOccurrence;
+
+  public ExceptionTrace() {
+  }
+
+  public ExceptionTrace(String fingerprint, Throwable exception) {
+    this.fingerprint = fingerprint;
+    StringWriter out = new StringWriter();
+    exception.printStackTrace(new PrintWriter(out));
+    this.stackTrace = out.toString();
+    this.firstOccurrence = new Date();
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public String getStackTrace() {
+    return stackTrace;
+  }
+
+  public Date getFirstOccurrence() {
+    return firstOccurrence;
+  }
+
+  public String toString() {
+    return "ExceptionTrace(" + fingerprint + ')';
+  }
+}
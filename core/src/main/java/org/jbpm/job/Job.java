@@ -7,12 +7,22 @@ import org.jbpm.JbpmConfiguration.Configs;
 import org.jbpm.JbpmContext;
 import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.graph.exe.Token;
+import org.jbpm.taskmgmt.def.Task;
 import org.jbpm.taskmgmt.exe.TaskInstance;
 
 public abstract class Job implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  /*
+   * job priorities share the scale of task priorities: lower numbers denote more urgent jobs
+   */
+  public static final int PRIORITY_HIGHEST = Task.PRIORITY_HIGHEST;
+  public static final int PRIORITY_HIGH = Task.PRIORITY_HIGH;
+  public static final int PRIORITY_NORMAL = Task.PRIORITY_NORMAL;
+  public static final int PRIORITY_LOW = Task.PRIORITY_LOW;
+  public static final int PRIORITY_LOWEST = Task.PRIORITY_LOWEST;
+
   private long id;
   private int version;
 
@@ -29,7 +39,10 @@ public abstract class Job implements Serializable {
   private Date lockTime;
 
   private String exception;
+  private String exceptionFingerprint;
+  private int exceptionCount;
   private int retries = Configs.getInt("jbpm.job.retries");
+  private int priority = PRIORITY_NORMAL;
 
   private String configuration;
 
@@ -52,7 +65,10 @@ public abstract class Job implements Serializable {
        + ", lockOwner=" + lockOwner
        + ", lockTime=" + lockTime
        + ", exception=" + exception
+       + ", exceptionFingerprint=" + exceptionFingerprint
+       + ", exceptionCount=" + exceptionCount
        + ", retries=" + retries
+       + ", priority=" + priority
        + ", configuration=" + configuration;
   }
 
@@ -108,6 +124,31 @@ public abstract class Job implements Serializable {
     this.exception = exception;
   }
 
+  /**
+   * fingerprint of the last exception, which identifies the full stack trace if the job
+   * executor stored it.
+   * 
+   * @see org.jbpm.job.executor.ExceptionDigest#getFingerprint(Throwable)
+   */
+  public String getExceptionFingerprint() {
+    return exceptionFingerprint;
+  }
+
+  public void setExceptionFingerprint(String exceptionFingerprint) {
+    this.exceptionFingerprint = exceptionFingerprint;
+  }
+
+  /**
+   * how many times in a row this job failed with the same exception fingerprint.
+   */
+  public int getExceptionCount() {
+    return exceptionCount;
+  }
+
+  public void setExceptionCount(int exceptionCount) {
+    this.exceptionCount = exceptionCount;
+  }
+
   /**
    * whether this job can be executed concurrently with other jobs for the same process
    * instance.
@@ -168,6 +209,18 @@ public abstract class Job implements Serializable {
     this.isSuspended = isSuspended;
   }
 
+  /**
+   * urgency of this job relative to other jobs. Job executors acquire jobs with lower priority
+   * numbers first.
+   */
+  public int getPriority() {
+    return priority;
+  }
+
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
+
   public int getVersion() {
     return version;
   }
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Time-limited claim recorded in the database by a job executor. Job executors in a cluster
+ * use leases to announce their membership and to divide job partitions among themselves,
+ * without an external coordinator.
+ * 
+ * @see org.jbpm.job.executor.JobExecutor#setPartitionCount(int)
+ */
+public class JobExecutorLease implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** prefix of the names of membership leases */
+  public static final String MEMBER_PREFIX = "member:";
+  /** prefix of the names of partition leases */
+  public static final String PARTITION_PREFIX = "partition:";
+
+  private String name;
+  private int version;
+  private String owner;
+  private Date expiration;
+
+  public JobExecutorLease() {
+  }
+
+  public JobExecutorLease(String name) {
+    this.name = name;
+  }
+
+  public static String getMemberName(String owner) {
+    return MEMBER_PREFIX + owner;
+  }
+
+  public static String getPartitionName(int partition) {
+    return PARTITION_PREFIX + partition;
+  }
+
+  /**
+   * Tells the partition this lease refers to.
+   * 
+   * @return the partition number, or <code>-1</code> if this is not a partition lease
+   */
+  public int getPartition() {
+    if (!name.startsWith(PARTITION_PREFIX)) return -1;
+    try {
+      return Integer.parseInt(name.substring(PARTITION_PREFIX.length()));
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  public boolean isMember() {
+    return name.startsWith(MEMBER_PREFIX);
+  }
+
+  /**
+   * Tells whether this lease is held by some owner at the given time.
+   */
+  public boolean isHeld(Date time) {
+    return owner != null && expiration != null && expiration.after(time);
+  }
+
+  /**
+   * Grants this lease to the given owner until the given expiration time.
+   */
+  public void grant(String owner, Date expiration) {
+    this.owner = owner;
+    this.expiration = expiration;
+  }
+
+  /**
+   * Gives up this lease, making it available to other owners.
+   */
+  public void release() {
+    owner = null;
+    expiration = null;
+  }
+
+  public String toString() {
+    return "JobExecutorLease(" + name + (owner != null ? "," + owner : "") + ')';
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public Date getExpiration() {
+    return expiration;
+  }
+}
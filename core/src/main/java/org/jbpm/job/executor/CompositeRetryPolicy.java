@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.hibernate.Hibernate;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+
+/**
+ * Applies a different retry policy per process definition or job class. A policy registered
+ * for the name of the process definition of a job takes precedence over a policy registered for
+ * the class name of the job; jobs matching neither go to the default policy.
+ * 
+ * <pre>
+ * &lt;bean class="org.jbpm.job.executor.CompositeRetryPolicy"&gt;
+ *   &lt;property name="policies"&gt;
+ *     &lt;map&gt;
+ *       &lt;entry&gt;
+ *         &lt;key&gt;&lt;string value="order fulfillment" /&gt;&lt;/key&gt;
+ *         &lt;value&gt;&lt;bean class="org.jbpm.job.executor.ExponentialBackoffRetryPolicy" /&gt;&lt;/value&gt;
+ *       &lt;/entry&gt;
+ *     &lt;/map&gt;
+ *   &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class CompositeRetryPolicy implements RetryPolicy, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private Map policies;
+  private RetryPolicy defaultPolicy = new ExponentialBackoffRetryPolicy();
+
+  public long getRetryDelay(Job job, int failureCount) {
+    return getPolicy(job).getRetryDelay(job, failureCount);
+  }
+
+  /**
+   * Selects the policy that applies to the given job.
+   */
+  protected RetryPolicy getPolicy(Job job) {
+    if (policies != null) {
+      ProcessInstance processInstance = job.getProcessInstance();
+      if (processInstance != null) {
+        ProcessDefinition processDefinition = processInstance.getProcessDefinition();
+        RetryPolicy policy = (RetryPolicy) policies.get(processDefinition.getName());
+        if (policy != null) return policy;
+      }
+      RetryPolicy policy = (RetryPolicy) policies.get(Hibernate.getClass(job).getName());
+      if (policy != null) return policy;
+    }
+    return defaultPolicy;
+  }
+
+  /**
+   * Tells the policies by process definition name or job class name.
+   */
+  public Map getPolicies() {
+    return policies;
+  }
+
+  public void setPolicies(Map policies) {
+    this.policies = policies;
+  }
+
+  public RetryPolicy getDefaultPolicy() {
+    return defaultPolicy;
+  }
+
+  public void setDefaultPolicy(RetryPolicy defaultPolicy) {
+    if (defaultPolicy == null) throw new IllegalArgumentException("default policy is null");
+    this.defaultPolicy = defaultPolicy;
+  }
+}
@@ -21,57 +21,126 @@
  */
 package org.jbpm.job.executor;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jbpm.JbpmContext;
+import org.jbpm.db.JobSession;
+import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.job.Job;
+import org.jbpm.persistence.db.DbPersistenceService;
 
 /**
- * Acquires jobs and then dispatches them to the job executor thread pool.
- * 
+ * Acquires jobs and then dispatches them to the job executor thread pool. Each dispatcher
+ * serves one {@linkplain JobLane lane}, acquiring only jobs whose priority falls within it.
+ * <p>
+ * The dispatcher polls less often while it finds no jobs or fails to reach the database,
+ * doubling its idle interval up to the {@linkplain JobExecutor#getMaxIdleInterval() maximum}.
+ * After {@linkplain JobExecutor#getCircuitBreakerThreshold() repeated} database failures it
+ * stops polling for the maximum idle interval, then probes the database with a single
+ * acquisition.
+ * </p>
  */
 class DispatcherThread extends Thread implements Deactivable {
 
   private final JobExecutor jobExecutor;
+  private final JobLane lane;
   private volatile boolean active = true;
 
+  /** idle interval adapted to the outcome of recent acquisitions */
+  private int currentIdleInterval;
+  /** number of consecutive acquisitions that failed to reach the database */
+  private int failureCount;
+  /** exception thrown by the last acquisition, if any */
+  private RuntimeException acquisitionFailure;
+  /** jobs locked by the ongoing acquisition */
+  private final List lockedJobs = new ArrayList();
+  private final Random random = new Random();
+
   static final String DEFAULT_NAME = "Dispatcher";
+  /** maximum number of due dates loaded in the timer wheel at once */
+  static final int MAX_LOADED_TIMERS = 10000;
   private static final Log log = LogFactory.getLog(DispatcherThread.class);
 
-  DispatcherThread(JobExecutor jobExecutor) {
-    this(DEFAULT_NAME, jobExecutor);
+  DispatcherThread(JobExecutor jobExecutor, JobLane lane) {
+    this(DEFAULT_NAME, jobExecutor, lane);
   }
 
-  DispatcherThread(String name, JobExecutor jobExecutor) {
+  DispatcherThread(String name, JobExecutor jobExecutor, JobLane lane) {
     super(jobExecutor.getThreadGroup(), name);
     this.jobExecutor = jobExecutor;
+    this.lane = lane;
+  }
+
+  JobLane getLane() {
+    return lane;
   }
 
   public void run() {
     while (active) {
-      if (jobExecutor.waitForFreeExecutorThread()) {
-        // acquire job; on exception, call returns null
-        Job job = acquireJob();
-        // submit job
-        if (job != null) {
-          submitJob(job);
-          continue ;
+      // reserve room for jobs
+      int permits = lane.acquireDispatchPermits(jobExecutor.getAcquisitionBatchSize());
+      if (permits > 0) {
+        // take jobs created locally first, then acquire jobs
+        // on exception, calls return empty list
+        acquisitionFailure = null;
+        List jobGroups = loadLocalJobs(permits);
+        if (jobGroups.isEmpty()) jobGroups = acquireJobs(permits);
+        // give back room reserved for jobs not found
+        lane.releaseDispatchPermits(permits - jobGroups.size());
+        adaptIdleInterval(!jobGroups.isEmpty(), acquisitionFailure);
+        // submit jobs
+        if (!jobGroups.isEmpty()) {
+          for (Iterator i = jobGroups.iterator(); i.hasNext();) {
+            jobExecutor.holdJobs((List) i.next());
+          }
+          submitJobs(jobGroups);
+          continue;
         }
       }
 
       // if still active, wait or sleep
       if (active) {
         try {
-          int currentIdleInterval = jobExecutor.getIdleInterval();
-          // wait for next due job
-          Date nextDueDate = getNextDueDateWithinIdleInterval(currentIdleInterval);
-          long waitPeriod = getWaitPeriod(currentIdleInterval, nextDueDate);
+          // leave the database alone while it is down
+          if (isCircuitOpen()) {
+            waitForRecovery();
+            continue;
+          }
+
+          int currentIdleInterval = getCurrentIdleInterval();
+          long waitPeriod;
+          if (acquisitionFailure != null) {
+            // spread retries of dispatchers that failed together
+            waitPeriod = getJitteredPeriod(currentIdleInterval);
+          }
+          else {
+            // wait for next due timer
+            TimerWheel timerWheel = lane.getTimerWheel();
+            if (timerWheel != null) {
+              waitForDueJobs(timerWheel);
+              continue;
+            }
+
+            // wait for next due job
+            Date nextDueDate = getNextDueDateWithinIdleInterval(currentIdleInterval);
+            waitPeriod = Math.min(getWaitPeriod(currentIdleInterval, nextDueDate),
+              jobExecutor.getThrottleRefillDelay());
+          }
           if (waitPeriod > 0) {
             synchronized (jobExecutor) {
-              if (active) {
+              // local jobs committed since the last check will not notify again
+              if (active && !lane.hasLocalJobs()) {
                 jobExecutor.wait(waitPeriod);
               }
             }
@@ -87,36 +156,39 @@ class DispatcherThread extends Thread implements Deactivable {
     log.info(getName() + " leaves cyberspace");
   }
 
-  private Job acquireJob() {
-    Job job = null;
+  /**
+   * Acquires up to the given number of jobs, plus other exclusive jobs of the same process
+   * instances.
+   * 
+   * @return the acquired jobs, grouped as lists of jobs to be executed by the same thread
+   */
+  private List acquireJobs(int maxJobs) {
+    List jobGroups = Collections.EMPTY_LIST;
     boolean debug = log.isDebugEnabled();
+    long startTime;
     // acquire job executor's monitor before creating context and allocating resources
     synchronized (jobExecutor) {
+      startTime = System.currentTimeMillis();
       JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
       try {
-        // look for available job
-        Job firstJob = jbpmContext.getJobSession().getFirstAcquirableJob(null);
-        // is there a job?
-        if (firstJob != null) {
-          // lock job
-          firstJob.setLockOwner(getName());
-          firstJob.setLockTime(new Date());
-          // has job failed previously?
-          if (firstJob.getException() != null) {
-            // decrease retry count
-            int retries = firstJob.getRetries() - 1;
-            firstJob.setRetries(retries);
-            if (debug) log.debug(firstJob + " has " + retries + " retries remaining");
-          }
-          // deliver result
-          if (debug) log.debug("acquired " + firstJob);
-          job = firstJob;
+        // look for available jobs, skipping those held back by throttles
+        JobSession jobSession = jbpmContext.getJobSession();
+        Collection exhaustedThrottles = jobExecutor.getExhaustedThrottleNames();
+        if (!exhaustedThrottles.isEmpty()) jobSession.excludeJobs(exhaustedThrottles);
+        List acquirableJobs = jobSession.findAcquirableJobs(maxJobs, lane.getMinPriority(),
+          lane.getMaxPriority(), jobExecutor.getAcquisitionPartitions(),
+          jobExecutor.getPartitionCount());
+        // are there jobs?
+        if (!acquirableJobs.isEmpty()) {
+          jobGroups = lockJobs(acquirableJobs, jobSession);
         }
         else if (debug) log.debug("no acquirable job found");
       }
       catch (RuntimeException e) {
         jbpmContext.setRollbackOnly();
-        if (debug) log.debug("failed to acquire job", e);
+        jobGroups = Collections.EMPTY_LIST;
+        acquisitionFailure = e;
+        if (debug) log.debug("failed to acquire jobs", e);
       }
       catch (Error e) {
         jbpmContext.setRollbackOnly();
@@ -127,33 +199,404 @@ class DispatcherThread extends Thread implements Deactivable {
           jbpmContext.close();
         }
         catch (RuntimeException e) {
-          job = null;
-          if (debug) log.debug("failed to acquire job", e);
+          jobGroups = Collections.EMPTY_LIST;
+          acquisitionFailure = e;
+          if (debug) log.debug("failed to acquire jobs", e);
+        }
+      }
+      // give back throttle room taken by jobs that were not acquired after all
+      if (jobGroups.isEmpty() && !lockedJobs.isEmpty()) jobExecutor.releaseJobs(lockedJobs);
+      lockedJobs.clear();
+    }
+    recordAcquisition(jobGroups, startTime);
+    return jobGroups;
+  }
+
+  /**
+   * Locks the given jobs for this dispatcher, skipping those held back by throttles.
+   * 
+   * @return the locked jobs, grouped as lists of jobs to be executed by the same thread
+   */
+  private List lockJobs(List jobs, JobSession jobSession) {
+    Map processDefinitionNames = jobExecutor.hasThrottles() ? jobSession
+      .findProcessDefinitionNames(jobs) : Collections.EMPTY_MAP;
+    Date lockTime = new Date();
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      Job job = (Job) i.next();
+      // throttles may run out within the batch
+      String processDefinitionName = (String) processDefinitionNames.get(new Long(job.getId()));
+      if (jobExecutor.acquireThrottles(job, processDefinitionName)) lockJob(job, lockTime);
+    }
+    // deliver result
+    if (lockedJobs.isEmpty()) return Collections.EMPTY_LIST;
+    return groupJobs(new ArrayList(lockedJobs), jobSession, lockTime, processDefinitionNames);
+  }
+
+  /**
+   * Acquires up to the given number of jobs that committed local transactions created for
+   * this dispatcher. Jobs that are gone, suspended, out of retries or acquired elsewhere in the
+   * meantime are skipped.
+   * 
+   * @return the acquired jobs, grouped as lists of jobs to be executed by the same thread
+   * @see LocalDispatch
+   */
+  private List loadLocalJobs(int maxJobs) {
+    List jobIds = lane.pollLocalJobIds(maxJobs);
+    if (jobIds.isEmpty()) return Collections.EMPTY_LIST;
+
+    List jobGroups = Collections.EMPTY_LIST;
+    boolean debug = log.isDebugEnabled();
+    long startTime;
+    synchronized (jobExecutor) {
+      startTime = System.currentTimeMillis();
+      JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+      try {
+        long[] ids = new long[jobIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = ((Long) jobIds.get(i)).longValue();
+        }
+        JobSession jobSession = jbpmContext.getJobSession();
+        // jobs deleted by their transaction are not found
+        List jobs = new ArrayList();
+        for (Iterator i = jobSession.loadJobs(ids).iterator(); i.hasNext();) {
+          Job job = (Job) i.next();
+          if (job.getLockOwner() == null && !job.isSuspended() && job.getRetries() > 0) {
+            jobs.add(job);
+          }
+          else if (debug) log.debug("skipping local " + job);
+        }
+        if (!jobs.isEmpty()) jobGroups = lockJobs(jobs, jobSession);
+      }
+      catch (RuntimeException e) {
+        jbpmContext.setRollbackOnly();
+        jobGroups = Collections.EMPTY_LIST;
+        acquisitionFailure = e;
+        // regular acquisition will find the jobs
+        log.warn("failed to load local jobs " + jobIds, e);
+      }
+      catch (Error e) {
+        jbpmContext.setRollbackOnly();
+        throw e;
+      }
+      finally {
+        try {
+          jbpmContext.close();
+        }
+        catch (RuntimeException e) {
+          jobGroups = Collections.EMPTY_LIST;
+          acquisitionFailure = e;
+          log.warn("failed to load local jobs " + jobIds, e);
+        }
+      }
+      // give back throttle room taken by jobs that were not acquired after all
+      if (jobGroups.isEmpty() && !lockedJobs.isEmpty()) jobExecutor.releaseJobs(lockedJobs);
+      lockedJobs.clear();
+    }
+    recordAcquisition(jobGroups, startTime);
+    return jobGroups;
+  }
+
+  /**
+   * Resets the idle interval when jobs were found; doubles it otherwise. Failures other than
+   * lock conflicts with other dispatchers count towards opening the circuit breaker.
+   */
+  void adaptIdleInterval(boolean jobsFound, RuntimeException failure) {
+    if (failure == null) {
+      if (isCircuitOpen()) log.info(getName() + " reached the database again");
+      failureCount = 0;
+      currentIdleInterval = jobsFound ? jobExecutor.getIdleInterval()
+        : getNextIdleInterval(getCurrentIdleInterval(), jobExecutor.getMaxIdleInterval());
+    }
+    else {
+      currentIdleInterval = getNextIdleInterval(getCurrentIdleInterval(),
+        jobExecutor.getMaxIdleInterval());
+      if (!DbPersistenceService.isLockingException(failure)) {
+        failureCount++;
+        if (failureCount == jobExecutor.getCircuitBreakerThreshold()) {
+          log.warn(getName() + " failed to reach the database " + failureCount
+            + " times in a row, pausing acquisition", failure);
+        }
+      }
+    }
+  }
+
+  static int getNextIdleInterval(int currentIdleInterval, int maxIdleInterval) {
+    // avoid overflow
+    int nextIdleInterval = currentIdleInterval > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE
+      : 2 * currentIdleInterval;
+    return Math.max(Math.min(nextIdleInterval, maxIdleInterval), currentIdleInterval);
+  }
+
+  int getCurrentIdleInterval() {
+    return Math.max(currentIdleInterval, jobExecutor.getIdleInterval());
+  }
+
+  /**
+   * Tells whether acquisition is paused after repeated database failures.
+   */
+  boolean isCircuitOpen() {
+    int threshold = jobExecutor.getCircuitBreakerThreshold();
+    return threshold > 0 && failureCount >= threshold;
+  }
+
+  /**
+   * Waits for the maximum idle interval before the next acquisition probes the database.
+   * Jobs committed locally show the database is back and end the wait early.
+   */
+  private void waitForRecovery() throws InterruptedException {
+    long deadline = System.currentTimeMillis()
+      + getJitteredPeriod(Math.max(jobExecutor.getMaxIdleInterval(), getCurrentIdleInterval()));
+    synchronized (jobExecutor) {
+      long waitPeriod;
+      while (active && !lane.hasLocalJobs()
+        && (waitPeriod = deadline - System.currentTimeMillis()) > 0) {
+        jobExecutor.wait(waitPeriod);
+      }
+    }
+  }
+
+  /**
+   * @return a random period between half the given period and the full period
+   */
+  private long getJitteredPeriod(int period) {
+    int halfPeriod = period / 2;
+    return period - halfPeriod + (halfPeriod > 0 ? random.nextInt(halfPeriod + 1) : 0);
+  }
+
+  private void recordAcquisition(List jobGroups, long startTime) {
+    if (jobGroups.isEmpty()) return;
+
+    int jobCount = 0;
+    for (Iterator i = jobGroups.iterator(); i.hasNext();) {
+      jobCount += ((List) i.next()).size();
+    }
+    jobExecutor.getMetrics().jobsAcquired(jobCount, System.currentTimeMillis() - startTime);
+  }
+
+  private void lockJob(Job job, Date lockTime) {
+    lockedJobs.add(job);
+    job.setLockOwner(getName());
+    job.setLockTime(lockTime);
+    // has job failed previously?
+    if (job.getException() != null) {
+      // decrease retry count
+      int retries = job.getRetries() - 1;
+      job.setRetries(retries);
+      if (log.isDebugEnabled()) log.debug(job + " has " + retries + " retries remaining");
+    }
+    if (log.isDebugEnabled()) log.debug("acquired " + job);
+  }
+
+  /**
+   * Groups exclusive jobs by process instance, so that they run back to back in a single
+   * thread rather than in several threads waiting for the same process instance lock. Each
+   * group is topped up with other due exclusive jobs of its process instance, up to the
+   * {@linkplain JobExecutor#getExclusiveJobBatchSize() exclusive job batch size}.
+   */
+  private List groupJobs(List jobs, JobSession jobSession, Date lockTime,
+    Map processDefinitionNames) {
+    List jobGroups = new ArrayList(jobs.size());
+    Map exclusiveGroups = new HashMap();
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      Job job = (Job) i.next();
+      ProcessInstance processInstance = job.getProcessInstance();
+      if (!job.isExclusive() || processInstance == null) {
+        jobGroups.add(Collections.singletonList(job));
+        continue;
+      }
+
+      Long processInstanceId = new Long(processInstance.getId());
+      List exclusiveGroup = (List) exclusiveGroups.get(processInstanceId);
+      if (exclusiveGroup == null) {
+        exclusiveGroup = new ArrayList();
+        exclusiveGroups.put(processInstanceId, exclusiveGroup);
+        jobGroups.add(exclusiveGroup);
+      }
+      exclusiveGroup.add(job);
+    }
+
+    int batchSize = jobExecutor.getExclusiveJobBatchSize();
+    if (batchSize > 1) {
+      for (Iterator i = exclusiveGroups.values().iterator(); i.hasNext();) {
+        List exclusiveGroup = (List) i.next();
+        if (exclusiveGroup.size() >= batchSize) continue;
+
+        // add unowned exclusive jobs of this lane
+        Job firstJob = (Job) exclusiveGroup.get(0);
+        ProcessInstance processInstance = firstJob.getProcessInstance();
+        String processDefinitionName = (String) processDefinitionNames.get(new Long(firstJob
+          .getId()));
+        List exclusiveJobs = jobSession.findExclusiveJobs(getName(), processInstance);
+        for (Iterator j = exclusiveJobs.iterator(); j.hasNext()
+          && exclusiveGroup.size() < batchSize;) {
+          Job job = (Job) j.next();
+          if (job.getLockOwner() == null && lane.accepts(job.getPriority())
+            && jobExecutor.acquireThrottles(job, processDefinitionName)) {
+            lockJob(job, lockTime);
+            exclusiveGroup.add(job);
+          }
         }
       }
     }
-    return job;
+    return jobGroups;
   }
 
-  private void submitJob(Job job) {
-    if (!jobExecutor.submitJob(job)) {
-      unlockJob(job);
+  private void submitJobs(List jobGroups) {
+    List rejectedJobs = null;
+    int rejectedGroupCount = 0;
+    for (Iterator i = jobGroups.iterator(); i.hasNext();) {
+      List jobs = (List) i.next();
+      if (!jobExecutor.submitJobs(jobs, lane)) {
+        if (rejectedJobs == null) rejectedJobs = new ArrayList();
+        rejectedJobs.addAll(jobs);
+        rejectedGroupCount++;
+      }
+    }
+    if (rejectedJobs != null) {
+      jobExecutor.releaseJobs(rejectedJobs);
+      lane.releaseDispatchPermits(rejectedGroupCount);
+      unlockJobs(rejectedJobs);
     }
   }
 
-  private void unlockJob(Job job) {
+  private void unlockJobs(List jobs) {
     JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
     try {
-      // reattach job to persistence context
-      jbpmContext.getJobSession().reattachJob(job);
+      JobSession jobSession = jbpmContext.getJobSession();
+      for (Iterator i = jobs.iterator(); i.hasNext();) {
+        Job job = (Job) i.next();
+        // reattach job to persistence context
+        jobSession.reattachJob(job);
+
+        // unlock job so it can be dispatched again
+        job.setLockOwner(null);
+        job.setLockTime(null);
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      log.warn("failed to unlock " + jobs, e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        log.warn("failed to unlock " + jobs, e);
+      }
+    }
+  }
 
-      // unlock job so it can be dispatched again
-      job.setLockOwner(null);
-      job.setLockTime(null);
+  /**
+   * Waits until a timer in the wheel falls due, the job executor gets notified of new jobs,
+   * jobs that fall due within the look-ahead window are found, or a throttle gets tokens back.
+   * The wheel is reloaded from the database each time its horizon is reached. Jobs created by
+   * other processes enter the wheel only then, so every idle interval the database is checked
+   * for unowned jobs that are due already.
+   */
+  private void waitForDueJobs(TimerWheel timerWheel) throws InterruptedException {
+    // throttled jobs might be due already
+    long throttleDelay = jobExecutor.getThrottleRefillDelay();
+    long throttleDeadline = throttleDelay < Long.MAX_VALUE ? System.currentTimeMillis()
+      + throttleDelay : Long.MAX_VALUE;
+    long pollDeadline = System.currentTimeMillis() + getCurrentIdleInterval();
+    while (active) {
+      long now = System.currentTimeMillis();
+      if (now >= throttleDeadline) return;
+      if (now >= timerWheel.getHorizon()) {
+        loadTimerWheel(timerWheel, now);
+        pollDeadline = now + getCurrentIdleInterval();
+      }
+      else if (now >= pollDeadline) {
+        if (hasUnownedDueJobs(now)) return;
+        pollDeadline = now + getCurrentIdleInterval();
+      }
+
+      // are there due jobs?
+      List dueJobIds = timerWheel.expire(now);
+      if (!dueJobIds.isEmpty()) {
+        if (log.isDebugEnabled()) log.debug("jobs " + dueJobIds + " fell due");
+        return;
+      }
+
+      long deadline = Math.min(Math.min(timerWheel.nextExpiration(), timerWheel.getHorizon()),
+        Math.min(throttleDeadline, pollDeadline));
+      long waitPeriod = deadline - now;
+      if (waitPeriod > 0) {
+        synchronized (jobExecutor) {
+          if (lane.hasLocalJobs()) return;
+          if (active) jobExecutor.wait(waitPeriod);
+        }
+      }
+      // if notified before deadline, new jobs might be available
+      if (System.currentTimeMillis() < deadline) return;
+    }
+  }
+
+  /**
+   * Tells whether unowned jobs of this lane are due already, such as jobs created by other
+   * processes since the timer wheel was loaded.
+   */
+  private boolean hasUnownedDueJobs(long now) {
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      List dueDates = jbpmContext.getJobSession().findUnownedJobDueDates(new Date(now), 1,
+        lane.getMinPriority(), lane.getMaxPriority(), jobExecutor.getAcquisitionPartitions(),
+        jobExecutor.getPartitionCount());
+      return !dueDates.isEmpty();
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      // acquisition will report the failure, if it persists
+      if (log.isDebugEnabled()) log.debug("failed to check for due jobs", e);
+      return true;
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        if (log.isDebugEnabled()) log.debug("failed to check for due jobs", e);
+      }
+    }
+  }
+
+  private void loadTimerWheel(TimerWheel timerWheel, long now) {
+    long horizon = now + jobExecutor.getTimerLookAhead();
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      List dueDates = jbpmContext.getJobSession().findUnownedJobDueDates(new Date(horizon),
+        MAX_LOADED_TIMERS, lane.getMinPriority(), lane.getMaxPriority(),
+        jobExecutor.getAcquisitionPartitions(), jobExecutor.getPartitionCount());
+      // if results were truncated, stop at the last due date loaded
+      int dueDateCount = dueDates.size();
+      if (dueDateCount == MAX_LOADED_TIMERS) {
+        Object[] lastDueDate = (Object[]) dueDates.get(dueDateCount - 1);
+        horizon = ((Date) lastDueDate[1]).getTime();
+      }
+
+      timerWheel.reset(now, horizon);
+      for (Iterator i = dueDates.iterator(); i.hasNext();) {
+        Object[] dueDate = (Object[]) i.next();
+        timerWheel.schedule(((Long) dueDate[0]).longValue(), ((Date) dueDate[1]).getTime());
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("loaded " + dueDateCount + " jobs due before " + new Date(horizon));
+      }
     }
     catch (RuntimeException e) {
       jbpmContext.setRollbackOnly();
-      log.warn("failed to unlock " + job, e);
+      // retry on next idle interval
+      timerWheel.reset(now, now + getCurrentIdleInterval());
+      if (log.isDebugEnabled()) log.debug("failed to load due jobs", e);
     }
     catch (Error e) {
       jbpmContext.setRollbackOnly();
@@ -164,7 +607,7 @@ class DispatcherThread extends Thread implements Deactivable {
         jbpmContext.close();
       }
       catch (RuntimeException e) {
-        log.warn("failed to unlock " + job, e);
+        if (log.isDebugEnabled()) log.debug("failed to load due jobs", e);
       }
     }
   }
@@ -190,7 +633,11 @@ class DispatcherThread extends Thread implements Deactivable {
       cal.add(Calendar.MILLISECOND, currentIdleInterval);
       Date wakeUpDate = cal.getTime();
       
-      nextDueDate = jbpmContext.getJobSession().getNextUnownedDueJobDueDate(wakeUpDate);
+      // the earliest due date among the jobs of this lane
+      List dueDates = jbpmContext.getJobSession().findUnownedJobDueDates(wakeUpDate, 1,
+        lane.getMinPriority(), lane.getMaxPriority(), jobExecutor.getAcquisitionPartitions(),
+        jobExecutor.getPartitionCount());
+      if (!dueDates.isEmpty()) nextDueDate = (Date) ((Object[]) dueDates.get(0))[1];
       if (log.isDebugEnabled() && nextDueDate == null) { 
         log.debug("no next waiting due job found before wake up date: possible future jobs after sleep");
       }
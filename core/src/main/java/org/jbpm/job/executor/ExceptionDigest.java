@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.jbpm.util.StringUtil;
+
+/**
+ * Condenses the exceptions thrown by jobs. The fingerprint identifies the root cause by its
+ * class and the top of its stack, ignoring the message, which often contains identifiers that
+ * change from one failure to the next. The summary keeps the messages of the exception chain
+ * and the top of the root cause stack only.
+ */
+public class ExceptionDigest {
+
+  /** number of root cause stack frames considered for fingerprints and summaries */
+  public static final int MAX_FRAMES = 10;
+
+  private ExceptionDigest() {
+    // hide default constructor to prevent instantiation
+  }
+
+  public static Throwable getRootCause(Throwable exception) {
+    Throwable rootCause = exception;
+    for (Throwable cause = exception.getCause(); cause != null && cause != rootCause; cause = cause.getCause()) {
+      rootCause = cause;
+    }
+    return rootCause;
+  }
+
+  /**
+   * Computes a fingerprint that is equal for exceptions with the same root cause class thrown
+   * from the same place.
+   * 
+   * @return a hexadecimal string of 32 characters
+   */
+  public static String getFingerprint(Throwable exception) {
+    Throwable rootCause = getRootCause(exception);
+    StringBuffer text = new StringBuffer(rootCause.getClass().getName());
+    StackTraceElement[] frames = rootCause.getStackTrace();
+    for (int i = 0, n = Math.min(frames.length, MAX_FRAMES); i < n; i++) {
+      StackTraceElement frame = frames[i];
+      text.append('|')
+        .append(frame.getClassName())
+        .append('.')
+        .append(frame.getMethodName())
+        .append(':')
+        .append(frame.getLineNumber());
+    }
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      return StringUtil.toHexString(digest.digest(text.toString().getBytes("UTF-8")));
+    }
+    catch (NoSuchAlgorithmException e) {
+      // should not happen, MD5 is a standard algorithm
+      throw new AssertionError(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      // should not happen, UTF-8 is a standard charset
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Describes the given exception in a few lines: the exception and its causes, followed by the
+   * top {@value #MAX_FRAMES} frames of the root cause.
+   */
+  public static String getSummary(Throwable exception) {
+    StringBuffer summary = new StringBuffer(exception.toString());
+    Throwable rootCause = exception;
+    for (Throwable cause = exception.getCause(); cause != null && cause != rootCause; cause = cause.getCause()) {
+      summary.append("\nCaused by: ").append(cause);
+      rootCause = cause;
+    }
+
+    StackTraceElement[] frames = rootCause.getStackTrace();
+    int frameCount = Math.min(frames.length, MAX_FRAMES);
+    for (int i = 0; i < frameCount; i++) {
+      summary.append("\n\tat ").append(frames[i]);
+    }
+    if (frames.length > frameCount) {
+      summary.append("\n\t... ").append(frames.length - frameCount).append(" more");
+    }
+    return summary.toString();
+  }
+}
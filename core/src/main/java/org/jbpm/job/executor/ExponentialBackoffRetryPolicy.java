@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import org.jbpm.job.Job;
+
+/**
+ * Retries failed jobs after a delay that grows exponentially with the number of failures, up to
+ * a maximum. Half of each delay is randomized, so that jobs failing together do not come back
+ * all at once.
+ * 
+ * <p>
+ * With a multiplier of 1, the delay stays at the initial interval; this is how the job executor
+ * retries jobs when no retry policy is configured, with the
+ * {@linkplain JobExecutor#getRetryInterval() retry interval} as initial interval.
+ * </p>
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private int initialInterval = 1000;
+  private int maxInterval = 3600000;
+  private double multiplier = 2;
+
+  private transient Random random;
+
+  public ExponentialBackoffRetryPolicy() {
+  }
+
+  public ExponentialBackoffRetryPolicy(int initialInterval, int maxInterval, double multiplier) {
+    setInitialInterval(initialInterval);
+    setMaxInterval(maxInterval);
+    setMultiplier(multiplier);
+  }
+
+  public long getRetryDelay(Job job, int failureCount) {
+    double interval = initialInterval * Math.pow(multiplier, Math.max(failureCount - 1, 0));
+    long delay = (long) Math.min(interval, maxInterval);
+    long halfDelay = delay / 2;
+    return halfDelay > 0 ? delay - halfDelay + nextLong(halfDelay) : delay;
+  }
+
+  private synchronized long nextLong(long bound) {
+    if (random == null) random = new Random();
+    return (long) (random.nextDouble() * bound);
+  }
+
+  /** Tells the delay before the first retry, in milliseconds. */
+  public int getInitialInterval() {
+    return initialInterval;
+  }
+
+  public void setInitialInterval(int initialInterval) {
+    if (initialInterval <= 0) {
+      throw new IllegalArgumentException("initial interval must be positive");
+    }
+    this.initialInterval = initialInterval;
+  }
+
+  /** Tells the upper bound of the delay, in milliseconds. */
+  public int getMaxInterval() {
+    return maxInterval;
+  }
+
+  public void setMaxInterval(int maxInterval) {
+    if (maxInterval <= 0) {
+      throw new IllegalArgumentException("max interval must be positive");
+    }
+    this.maxInterval = maxInterval;
+  }
+
+  /** Tells the factor the delay grows by with each failure. */
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(double multiplier) {
+    if (multiplier < 1) {
+      throw new IllegalArgumentException("multiplier must be at least 1");
+    }
+    this.multiplier = multiplier;
+  }
+
+  public String toString() {
+    return "ExponentialBackoffRetryPolicy(" + initialInterval + "ms*" + multiplier + "^n, max "
+      + maxInterval + "ms)";
+  }
+}
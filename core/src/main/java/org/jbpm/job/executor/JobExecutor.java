@@ -1,28 +1,39 @@
 package org.jbpm.job.executor;
 
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
 import org.jbpm.JbpmConfiguration;
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.job.Job;
 
-import edu.emory.mathcs.backport.java.util.concurrent.locks.Condition;
-import edu.emory.mathcs.backport.java.util.concurrent.locks.Lock;
-import edu.emory.mathcs.backport.java.util.concurrent.locks.ReentrantLock;
-
 public class JobExecutor implements Serializable {
 
   private static final long serialVersionUID = 1L;
@@ -32,22 +43,59 @@ public class JobExecutor implements Serializable {
   protected int nbrOfThreads;
   protected int idleInterval;
   protected int maxIdleInterval;
+  private int circuitBreakerThreshold = 5;
   private int retryInterval;
+  private RetryPolicy retryPolicy;
+  private boolean moveDeadJobs;
+  private boolean storeExceptionTraces;
+  private Map throttles;
 
   protected int maxLockTime;
   protected int lockMonitorInterval;
+  private int acquisitionBatchSize = 1;
+  private int exclusiveJobBatchSize = 1;
+  private boolean localDispatch;
+  private int prefetchSize;
+  private int drainTimeout;
 
   private transient ThreadGroup threadGroup;
-  private int waitingExecutorCount ;
-  private boolean waitingDispatcher ;
-  private boolean dispatcherActive ;
-  private Lock waitingExecutorLock = new ReentrantLock() ;
-  private Condition waitingExecutorCondition = waitingExecutorLock.newCondition() ;
-  private Condition waitingDispatcherCondition = waitingExecutorLock.newCondition() ;
-  private LinkedList dispatchedJobs = new LinkedList();
+  private List lanes;
+  /** lanes served while started, each with its dispatch queue and timer wheel */
+  private transient volatile List activeLanes;
+  /** lanes of the executor threads, by thread name */
+  private transient Map threadLanes;
+
+  private transient ExecutorService executorService;
+  private boolean virtualThreads;
+  /** executor service created and shut down by this job executor */
+  private transient ExecutorService ownExecutorService;
+  private transient JobRunner jobRunner;
+
+  private int timerLookAhead;
+  /** granularity of the timer wheel */
+  private static final long TIMER_WHEEL_TICK = 10;
+  private static final int TIMER_WHEEL_SIZE = 64;
+
+  private int partitionCount;
+  private int partitionLeaseDuration = 60000;
+  /** partitions leased by this job executor, as {@link Integer} objects */
+  private transient volatile Set ownedPartitions;
+  private transient String leaseOwner;
+
+  protected int historyMaxSize = 100;
+  private String jmxName;
+  /** name the metrics are registered under while started */
+  private transient ObjectName registeredJmxName;
+  private transient volatile JobExecutorMetrics metrics;
 
   protected Map monitoredJobIds = new Hashtable();
+  /** identifiers of the jobs acquired and not yet processed, as {@link Long} objects */
+  private transient Set heldJobIds;
+  /** throttles that let held jobs through, by job identifier */
+  private transient Map throttledJobs;
   protected boolean isStarted;
+  /** tells whether dispatchers were stopped ahead of the other threads */
+  private transient volatile boolean draining;
 
   /**
    * Starts all the threads needed. 
@@ -59,8 +107,19 @@ public class JobExecutor implements Serializable {
     if (!isStarted) {
       log.info("starting " + name);
 
-      activateDispatcher() ;
-      
+      createActiveLanes();
+      draining = false;
+      heldJobIds = Collections.synchronizedSet(new HashSet());
+      throttledJobs = Collections.synchronizedMap(new HashMap());
+      if (throttles != null) {
+        for (Iterator i = throttles.values().iterator(); i.hasNext();) {
+          ((JobThrottle) i.next()).reset();
+        }
+      }
+      metrics = new JobExecutorMetrics(this, historyMaxSize);
+      registerMBean();
+      ownedPartitions = Collections.EMPTY_SET;
+
       // create thread group
       threadGroup = new ThreadGroup(name) {
         public void uncaughtException(Thread thread, Throwable throwable) {
@@ -68,7 +127,7 @@ public class JobExecutor implements Serializable {
             startThread(thread.getName());
           }
           else if (thread instanceof DispatcherThread) {
-            startDispatcherThread();
+            startDispatcherThread(((DispatcherThread) thread).getLane());
           }
           else if (thread instanceof LockMonitorThread) {
             startLockMonitorThread();
@@ -77,13 +136,21 @@ public class JobExecutor implements Serializable {
         }
       };
 
-      // start executor threads
-      for (int i = 1; i <= nbrOfThreads; i++) {
-        startThread(getThreadName(i));
+      // start executor threads, unless jobs go to an executor service
+      List activeLanes = this.activeLanes;
+      if (getActiveExecutorService() == null) {
+        for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+          JobLane lane = (JobLane) l.next();
+          for (int i = 1; i <= lane.getNbrOfThreads(); i++) {
+            startThread(getThreadName(lane, i));
+          }
+        }
       }
 
       // start control threads
-      startDispatcherThread();
+      for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+        startDispatcherThread((JobLane) l.next());
+      }
       startLockMonitorThread();
       isStarted = true;
     }
@@ -108,36 +175,183 @@ public class JobExecutor implements Serializable {
 
     log.info("stopping " + name);
     isStarted = false;
+    unregisterMBean();
+
+    // deactivate threads
+    List deactivatedThreads = deactivateThreads(Deactivable.class);
+
+    // let the executor service finish the jobs in progress
+    if (ownExecutorService != null) ownExecutorService.shutdown();
+
+    // return deactivated threads
+    return deactivatedThreads;
+  }
+
+  /**
+   * Stops this job executor and blocks until all its threads are finished. Jobs held in queue
+   * are handed back to the cluster as described in {@link #drainAndJoin()}.
+   */
+  public void stopAndJoin() throws InterruptedException {
+    drainAndJoin();
+  }
+
+  /**
+   * Stops this job executor and blocks until all its threads are finished. The dispatchers
+   * stop acquiring jobs first. Jobs acquired but not taken on by an executor thread yet are
+   * unlocked in a single statement, so that other job executors in the cluster can acquire
+   * them right away rather than after the max lock time. Jobs in progress get up to the
+   * {@linkplain #setDrainTimeout(int) drain timeout} to finish before the remaining threads
+   * are told to stop.
+   * 
+   * @return the identifiers of the released jobs, as {@link Long} objects
+   */
+  public List drainAndJoin() throws InterruptedException {
+    // stop acquiring jobs
+    List dispatcherThreads = stopDispatcherThreads();
+    if (dispatcherThreads == null) return Collections.EMPTY_LIST;
+
+    long deadline = System.currentTimeMillis() + drainTimeout;
+    for (Iterator i = dispatcherThreads.iterator(); i.hasNext();) {
+      Thread thread = (Thread) i.next();
+      thread.join();
+    }
+
+    // hand back the jobs no executor thread has taken on
+    List releasedJobIds = releaseQueuedJobs();
+    // let the jobs in progress finish
+    awaitHeldJobs(deadline);
+    // local transactions may have committed jobs for this job executor meanwhile
+    releasedJobIds.addAll(releaseQueuedJobs());
+
+    // deactivate threads
+    List threads = stop();
+
+    // join deactivated threads
+    for (Iterator i = threads.iterator(); i.hasNext();) {
+      Thread thread = (Thread) i.next();
+      thread.join();
+    }
 
+    // wait for the executor service to finish the jobs in progress
+    ExecutorService executorService = ownExecutorService;
+    if (executorService != null) {
+      executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      ownExecutorService = null;
+    }
+
+    if (!releasedJobIds.isEmpty()) {
+      log.info(name + " released " + releasedJobIds.size() + " queued jobs");
+    }
+    return releasedJobIds;
+  }
+
+  /**
+   * Tells the dispatcher threads to stop, so that this job executor acquires no further jobs
+   * while the jobs it holds drain.
+   * 
+   * @return the stopped dispatcher threads, or <code>null</code> if this job executor is not
+   * started
+   */
+  private synchronized List stopDispatcherThreads() {
+    if (!isStarted) {
+      if (log.isDebugEnabled()) log.debug("ignoring stop, " + name + " not started");
+      return null;
+    }
+
+    log.info("draining " + name);
+    draining = true;
+    return deactivateThreads(DispatcherThread.class);
+  }
+
+  private List deactivateThreads(Class threadType) {
     // fetch active threads
-    Thread[] activeThreads = new Thread[nbrOfThreads + 2];
+    Thread[] activeThreads = new Thread[getMaxThreadCount()];
     int activeCount = threadGroup.enumerate(activeThreads, false);
 
-    // deactivate threads
     List deactivatedThreads = new ArrayList(activeCount);
     for (int i = 0; i < activeCount; i++) {
       Thread thread = activeThreads[i];
-      if (thread instanceof Deactivable) {
+      if (threadType.isInstance(thread) && thread instanceof Deactivable) {
         Deactivable deactivable = (Deactivable) thread;
         deactivable.deactivate();
         deactivatedThreads.add(thread);
       }
     }
-
-    deactivateDispatcher() ;
-    
-    // return deactivated threads
     return deactivatedThreads;
   }
 
-  public void stopAndJoin() throws InterruptedException {
-    // deactivate threads
-    List threads = stop();
+  /**
+   * Takes the jobs waiting for an executor thread and unlocks them all in one statement. Jobs
+   * of committed local transactions not loaded yet are unlocked already; they are dropped from
+   * the lanes and left for regular acquisition.
+   * 
+   * @return the identifiers of the released jobs, as {@link Long} objects
+   */
+  private List releaseQueuedJobs() {
+    List jobs = new ArrayList();
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      JobLane lane = (JobLane) l.next();
+      jobs.addAll(lane.drainJobs());
+      lane.pollLocalJobIds(Integer.MAX_VALUE);
+    }
+    jobs.addAll(drainExecutorService());
+    List jobIds = new ArrayList();
+    if (jobs.isEmpty()) return jobIds;
 
-    // join deactivated threads
-    for (Iterator i = threads.iterator(); i.hasNext();) {
-      Thread thread = (Thread) i.next();
-      thread.join();
+    releaseJobs(jobs);
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      jobIds.add(new Long(((Job) i.next()).getId()));
+    }
+
+    JbpmContext jbpmContext = jbpmConfiguration.createJbpmContext();
+    try {
+      int releasedCount = jbpmContext.getJobSession().releaseJobLocks(jobIds, getLockOwners());
+      if (log.isDebugEnabled()) {
+        log.debug("released " + releasedCount + " of " + jobIds.size() + " job locks");
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      // the lock monitors of the cluster unlock the jobs once their locks are overdue
+      log.warn("could not release jobs " + jobIds + ", leaving them for the lock monitor", e);
+    }
+    finally {
+      jbpmContext.close();
+    }
+    return jobIds;
+  }
+
+  /**
+   * Takes the jobs submitted to the executor service that it has not started yet. Only
+   * executor services backed by a queue hold back jobs.
+   */
+  private List drainExecutorService() {
+    ExecutorService executorService = this.executorService != null ? this.executorService
+      : ownExecutorService;
+    if (!(executorService instanceof ThreadPoolExecutor)) return Collections.EMPTY_LIST;
+
+    ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executorService;
+    List jobs = new ArrayList();
+    // the executor service may be shared with other job executors
+    for (Iterator i = threadPoolExecutor.getQueue().iterator(); i.hasNext();) {
+      Object task = i.next();
+      if (task instanceof JobsTask) {
+        JobsTask jobsTask = (JobsTask) task;
+        if (jobsTask.getJobExecutor() == this && threadPoolExecutor.remove(jobsTask)) {
+          jobs.addAll(jobsTask.jobs);
+        }
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Waits until the jobs held by this job executor are processed or the given deadline passes.
+   */
+  private synchronized void awaitHeldJobs(long deadline) throws InterruptedException {
+    Set heldJobIds = this.heldJobIds;
+    for (long now; !heldJobIds.isEmpty() && (now = System.currentTimeMillis()) < deadline;) {
+      wait(deadline - now);
     }
   }
 
@@ -145,28 +359,423 @@ public class JobExecutor implements Serializable {
     Map threads = getThreads();
 
     // check executor threads
-    for (int i = 1; i <= nbrOfThreads; i++) {
-      String threadName = getThreadName(i);
-      if (!threads.containsKey(threadName)) {
-        startThread(threadName);
+    List activeLanes = this.activeLanes;
+    if (getActiveExecutorService() == null) {
+      for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+        JobLane lane = (JobLane) l.next();
+        for (int i = 1; i <= lane.getNbrOfThreads(); i++) {
+          String threadName = getThreadName(lane, i);
+          if (!threads.containsKey(threadName)) {
+            startThread(threadName);
+          }
+        }
       }
     }
 
     // check control threads
-    if (!threads.containsKey(getDispatcherThreadName())) {
-      startDispatcherThread();
+    for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+      JobLane lane = (JobLane) l.next();
+      if (!threads.containsKey(getDispatcherThreadName(lane))) {
+        startDispatcherThread(lane);
+      }
     }
     if (!threads.containsKey(getLockMonitorThreadName())) {
       startLockMonitorThread();
     }
   }
 
+  private void registerMBean() {
+    if (jmxName == null) return;
+    try {
+      ObjectName objectName = new ObjectName(jmxName);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+      registeredJmxName = objectName;
+    }
+    catch (JMException e) {
+      log.warn("could not register metrics of " + name + " as " + jmxName, e);
+    }
+  }
+
+  private void unregisterMBean() {
+    if (registeredJmxName == null) return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredJmxName);
+    }
+    catch (JMException e) {
+      log.warn("could not unregister metrics of " + name + " as " + registeredJmxName, e);
+    }
+    registeredJmxName = null;
+  }
+
+  /**
+   * Determines the executor service that runs jobs, if any. When virtual threads are
+   * requested and no executor service is configured, this method creates an executor service
+   * that starts a virtual thread per job, provided the platform supports virtual threads.
+   */
+  private ExecutorService getActiveExecutorService() {
+    if (executorService != null) return executorService;
+    if (!virtualThreads) return null;
+
+    if (ownExecutorService == null || ownExecutorService.isShutdown()) {
+      try {
+        ownExecutorService = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor", new Class[0])
+          .invoke(null, new Object[0]);
+      }
+      catch (NoSuchMethodException e) {
+        log.warn("virtual threads not supported, falling back to executor threads");
+        virtualThreads = false;
+        return null;
+      }
+      catch (IllegalAccessException e) {
+        throw new JbpmException("could not create virtual thread executor", e);
+      }
+      catch (InvocationTargetException e) {
+        throw new JbpmException("could not create virtual thread executor", e.getCause());
+      }
+    }
+    return ownExecutorService;
+  }
+
+  /**
+   * Sets up the lanes to serve. Without configured lanes, a single lane serves all priorities
+   * with the configured {@linkplain #setNbrOfThreads(int) number of threads}.
+   */
+  private void createActiveLanes() {
+    List activeLanes;
+    if (lanes == null || lanes.isEmpty()) {
+      JobLane defaultLane = new JobLane();
+      if (nbrOfThreads > 0) defaultLane.setNbrOfThreads(nbrOfThreads);
+      activeLanes = Collections.singletonList(defaultLane);
+    }
+    else {
+      activeLanes = new ArrayList(lanes);
+    }
+
+    Map threadLanes = new HashMap();
+    for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+      JobLane lane = (JobLane) l.next();
+      lane.createDispatchQueue(prefetchSize);
+      lane.setTimerWheel(timerLookAhead > 0 ? new TimerWheel(TIMER_WHEEL_TICK,
+        TIMER_WHEEL_SIZE) : null);
+      for (int i = 1; i <= lane.getNbrOfThreads(); i++) {
+        threadLanes.put(getThreadName(lane, i), lane);
+      }
+    }
+    this.threadLanes = threadLanes;
+    this.activeLanes = Collections.unmodifiableList(activeLanes);
+  }
+
+  /**
+   * Tells the lanes served since this job executor was last started.
+   */
+  List getActiveLanes() {
+    List activeLanes = this.activeLanes;
+    return activeLanes != null ? activeLanes : Collections.EMPTY_LIST;
+  }
+
+  /**
+   * Tells the lane served by the executor thread of the given name.
+   * 
+   * @return the lane of the thread, the first lane if the name is unknown, or
+   * <code>null</code> if this job executor was never started
+   */
+  JobLane getThreadLane(String threadName) {
+    Map threadLanes = this.threadLanes;
+    if (threadLanes == null) return null;
+
+    JobLane lane = (JobLane) threadLanes.get(threadName);
+    return lane != null ? lane : (JobLane) activeLanes.get(0);
+  }
+
+  /**
+   * Tells the number of executor threads of the lanes served, or zero if jobs go to an
+   * executor service.
+   */
+  int getExecutorThreadCount() {
+    if (executorService != null || ownExecutorService != null) return 0;
+
+    int threadCount = 0;
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      threadCount += ((JobLane) l.next()).getNbrOfThreads();
+    }
+    return threadCount;
+  }
+
+  /**
+   * Tells the number of acquired jobs waiting for an executor thread.
+   */
+  int getQueuedJobCount() {
+    int jobCount = 0;
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      jobCount += ((JobLane) l.next()).getQueuedJobCount();
+    }
+    return jobCount;
+  }
+
+  private int getMaxThreadCount() {
+    List activeLanes = getActiveLanes();
+    if (activeLanes.isEmpty()) return nbrOfThreads + 2;
+
+    // executor and dispatcher threads of each lane, plus the lock monitor thread
+    int threadCount = 1;
+    for (Iterator l = activeLanes.iterator(); l.hasNext();) {
+      threadCount += ((JobLane) l.next()).getNbrOfThreads() + 1;
+    }
+    return threadCount;
+  }
+
+  /**
+   * Lets the dispatchers know about a job created or rescheduled in this process, so that the
+   * job is acquired as soon as it falls due. Has no effect unless a
+   * {@linkplain #setTimerLookAhead(int) timer look-ahead} is set and the job falls due
+   * within the window loaded last.
+   */
+  public void scheduleJob(Job job) {
+    Date dueDate = job.getDueDate();
+    if (dueDate == null) return;
+
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      JobLane lane = (JobLane) l.next();
+      TimerWheel timerWheel = lane.getTimerWheel();
+      if (timerWheel != null && lane.accepts(job.getPriority())) {
+        timerWheel.schedule(job.getId(), dueDate.getTime());
+      }
+    }
+  }
+
+  /**
+   * Records that the given jobs are locked by this job executor, so that the lock monitor
+   * thread renews their locks until they are processed.
+   */
+  void holdJobs(List jobs) {
+    Set heldJobIds = this.heldJobIds;
+    if (heldJobIds == null) return;
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      heldJobIds.add(new Long(((Job) i.next()).getId()));
+    }
+  }
+
+  /**
+   * Records that the given jobs are no longer locked by this job executor.
+   */
+  void releaseJobs(List jobs) {
+    Set heldJobIds = this.heldJobIds;
+    if (heldJobIds == null) return;
+    boolean throttleFreed = false;
+    for (Iterator i = jobs.iterator(); i.hasNext();) {
+      Long jobId = new Long(((Job) i.next()).getId());
+      heldJobIds.remove(jobId);
+
+      List jobThrottles = (List) throttledJobs.remove(jobId);
+      if (jobThrottles != null) {
+        for (Iterator t = jobThrottles.iterator(); t.hasNext();) {
+          if (((JobThrottle) t.next()).release()) throttleFreed = true;
+        }
+      }
+    }
+    // dispatchers may be waiting for room in a throttle, a drain for the last held job
+    if (throttleFreed || draining && heldJobIds.isEmpty()) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  boolean hasThrottles() {
+    Map throttles = this.throttles;
+    return throttles != null && !throttles.isEmpty();
+  }
+
+  /**
+   * Tells the throttles that apply to the given job: the throttle registered for the name of
+   * its process definition and the throttle registered for its class name, if any.
+   * 
+   * @param processDefinitionName the name of the process definition of the job, passed in to
+   * avoid loading the process definition where it is not needed
+   */
+  List getThrottles(Job job, String processDefinitionName) {
+    Map throttles = this.throttles;
+    if (throttles == null || throttles.isEmpty()) return Collections.EMPTY_LIST;
+
+    List jobThrottles = new ArrayList(2);
+    if (processDefinitionName != null) {
+      Object throttle = throttles.get(processDefinitionName);
+      if (throttle != null) jobThrottles.add(throttle);
+    }
+    Object throttle = throttles.get(Hibernate.getClass(job).getName());
+    if (throttle != null) jobThrottles.add(throttle);
+    return jobThrottles;
+  }
+
+  /**
+   * Takes room for the given job in the throttles that apply to it. The room is given back when
+   * the job is {@linkplain #releaseJobs(List) released}.
+   * 
+   * @see #getThrottles(Job, String)
+   * 
+   * @return <code>true</code> if all throttles let the job through
+   */
+  boolean acquireThrottles(Job job, String processDefinitionName) {
+    List jobThrottles = getThrottles(job, processDefinitionName);
+    if (jobThrottles.isEmpty()) return true;
+
+    long now = System.currentTimeMillis();
+    for (int i = 0, n = jobThrottles.size(); i < n; i++) {
+      if (!((JobThrottle) jobThrottles.get(i)).tryAcquire(now)) {
+        for (int j = 0; j < i; j++) {
+          ((JobThrottle) jobThrottles.get(j)).refund();
+        }
+        return false;
+      }
+    }
+    Map throttledJobs = this.throttledJobs;
+    if (throttledJobs != null) throttledJobs.put(new Long(job.getId()), jobThrottles);
+    return true;
+  }
+
+  /**
+   * Tells the names of the throttles that let no further job through right now.
+   */
+  Collection getExhaustedThrottleNames() {
+    Map throttles = this.throttles;
+    if (throttles == null || throttles.isEmpty()) return Collections.EMPTY_LIST;
+
+    List names = new ArrayList();
+    long now = System.currentTimeMillis();
+    for (Iterator i = throttles.entrySet().iterator(); i.hasNext();) {
+      Map.Entry entry = (Map.Entry) i.next();
+      if (((JobThrottle) entry.getValue()).isExhausted(now)) names.add(entry.getKey());
+    }
+    return names;
+  }
+
+  /**
+   * Tells how long it takes until the next throttle that ran out of tokens gets one back.
+   * 
+   * @return the delay in milliseconds, or {@link Long#MAX_VALUE} if no throttle is waiting
+   * for tokens
+   */
+  long getThrottleRefillDelay() {
+    Map throttles = this.throttles;
+    if (throttles == null || throttles.isEmpty()) return Long.MAX_VALUE;
+
+    long refillDelay = Long.MAX_VALUE;
+    long now = System.currentTimeMillis();
+    for (Iterator i = throttles.values().iterator(); i.hasNext();) {
+      long delay = ((JobThrottle) i.next()).getRefillDelay(now);
+      if (delay > 0 && delay < refillDelay) refillDelay = delay;
+    }
+    return refillDelay;
+  }
+
+  /**
+   * Tells the identifiers of the jobs locked by this job executor and not yet processed.
+   */
+  Set getHeldJobIds() {
+    Set heldJobIds = this.heldJobIds;
+    if (heldJobIds == null) return Collections.EMPTY_SET;
+    synchronized (heldJobIds) {
+      return new HashSet(heldJobIds);
+    }
+  }
+
+  /**
+   * Tells the names under which the dispatchers of this job executor lock jobs.
+   */
+  Set getLockOwners() {
+    Set lockOwners = new HashSet();
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      lockOwners.add(getDispatcherThreadName((JobLane) l.next()));
+    }
+    return lockOwners;
+  }
+
+  /**
+   * Reserves room for the given job in a lane that accepts its priority, so that the job can
+   * be {@linkplain LocalDispatch dispatched locally}.
+   * 
+   * @return the lane with room for the job, or <code>null</code> if local dispatch is disabled,
+   * this job executor is not started or no lane that accepts the job has room for it
+   */
+  JobLane reserveLocalJob(Job job) {
+    if (!localDispatch || !isStarted || draining) return null;
+    // throttled jobs go through regular acquisition
+    if (hasThrottles()) {
+      ProcessInstance processInstance = job.getProcessInstance();
+      String processDefinitionName = processInstance != null ? processInstance
+        .getProcessDefinition().getName() : null;
+      if (!getThrottles(job, processDefinitionName).isEmpty()) return null;
+    }
+
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      JobLane lane = (JobLane) l.next();
+      if (lane.accepts(job.getPriority()) && lane.reserveLocalJob()) return lane;
+    }
+    return null;
+  }
+
+  /**
+   * Tells the partitions the dispatcher acquires jobs from.
+   * 
+   * @return the leased partitions, or <code>null</code> if partitioning is disabled
+   */
+  Set getAcquisitionPartitions() {
+    return partitionCount > 0 ? getOwnedPartitions() : null;
+  }
+
+  /**
+   * Tells the partitions this job executor holds leases for, as {@link Integer} objects.
+   */
+  public Set getOwnedPartitions() {
+    Set ownedPartitions = this.ownedPartitions;
+    return ownedPartitions != null ? ownedPartitions : Collections.EMPTY_SET;
+  }
+
+  void setOwnedPartitions(Set partitions) {
+    if (partitions.equals(ownedPartitions)) return;
+    if (log.isDebugEnabled()) log.debug(name + " owns partitions " + partitions);
+    ownedPartitions = Collections.unmodifiableSet(partitions);
+
+    // due dates of gained partitions are missing from the timer wheels
+    long now = System.currentTimeMillis();
+    for (Iterator l = getActiveLanes().iterator(); l.hasNext();) {
+      TimerWheel timerWheel = ((JobLane) l.next()).getTimerWheel();
+      if (timerWheel != null) timerWheel.reset(now, 0);
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Tells the name under which this job executor holds leases. The name identifies this job
+   * executor across the cluster.
+   */
+  String getLeaseOwner() {
+    if (leaseOwner == null) {
+      // runtime name is pid@host on most platforms
+      leaseOwner = name + '@' + ManagementFactory.getRuntimeMXBean().getName();
+    }
+    return leaseOwner;
+  }
+
+  JobRunner getJobRunner() {
+    if (jobRunner == null) jobRunner = new JobRunner(this);
+    return jobRunner;
+  }
+
   ThreadGroup getThreadGroup() {
     return threadGroup;
   }
 
-  private String getThreadName(int index) {
-    return name + '@' + getHostAddress() + ":Executor-" + index;
+  private String getThreadName(JobLane lane, int index) {
+    return getThreadNamePrefix(lane) + "Executor-" + index;
+  }
+
+  private String getThreadNamePrefix(JobLane lane) {
+    String laneName = lane.getName();
+    return name + '@' + getHostAddress() + ':' + (laneName != null ? laneName + ':' : "");
   }
 
   protected void startThread(String threadName) {
@@ -180,13 +789,16 @@ public class JobExecutor implements Serializable {
     return new JobExecutorThread(threadName, this);
   }
 
-  private String getDispatcherThreadName() {
-    return name + '@' + getHostAddress() + ':' + DispatcherThread.DEFAULT_NAME;
+  String getDispatcherThreadName(JobLane lane) {
+    return getThreadNamePrefix(lane) + DispatcherThread.DEFAULT_NAME;
   }
 
-  void startDispatcherThread() {
-    String threadName = getDispatcherThreadName();
-    Thread dispatcherThread = new DispatcherThread(threadName, this);
+  void startDispatcherThread(JobLane lane) {
+    // a draining job executor acquires no further jobs
+    if (draining) return;
+
+    String threadName = getDispatcherThreadName(lane);
+    Thread dispatcherThread = new DispatcherThread(threadName, this, lane);
 
     if (log.isDebugEnabled()) log.debug("starting " + threadName);
     dispatcherThread.start();
@@ -262,6 +874,81 @@ public class JobExecutor implements Serializable {
     this.retryInterval = retryInterval;
   }
 
+  /**
+   * Tells the retry policy for failed jobs. Unless a policy was set, jobs are retried after
+   * the {@linkplain #getRetryInterval() retry interval}, half of it randomized.
+   */
+  public RetryPolicy getRetryPolicy() {
+    RetryPolicy retryPolicy = this.retryPolicy;
+    if (retryPolicy == null) {
+      int interval = Math.max(retryInterval, 1);
+      retryPolicy = new ExponentialBackoffRetryPolicy(interval, interval, 1);
+    }
+    return retryPolicy;
+  }
+
+  /**
+   * Sets the retry policy for failed jobs, such as an {@link ExponentialBackoffRetryPolicy}
+   * or a {@link CompositeRetryPolicy} that varies by process definition or job class.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Tells the throttles by process definition name or job class name.
+   */
+  public Map getThrottles() {
+    return throttles;
+  }
+
+  /**
+   * Limits the rate and concurrency of jobs per process definition or job class. Keys are
+   * process definition names or job class names; values are {@link JobThrottle}s. A job must
+   * get through both the throttle of its process definition and the throttle of its class.
+   * Dispatchers leave jobs whose throttle is exhausted out of acquisition, and jobs subject to
+   * a throttle are never {@linkplain #setLocalDispatch(boolean) dispatched locally}.
+   */
+  public void setThrottles(Map throttles) {
+    this.throttles = throttles;
+  }
+
+  /**
+   * Tells whether jobs that run out of retries are moved to the dead job table.
+   */
+  public boolean isMoveDeadJobs() {
+    return moveDeadJobs;
+  }
+
+  /**
+   * Moves jobs that run out of retries out of the job table, so that they no longer weigh on
+   * job acquisition. Dead jobs stay in the dead job table until they are requeued or purged.
+   * Job classes without a dead job mapping stay in the job table regardless.
+   * 
+   * @see org.jbpm.command.RequeueDeadJobsCommand
+   * @see org.jbpm.command.PurgeDeadJobsCommand
+   */
+  public void setMoveDeadJobs(boolean moveDeadJobs) {
+    this.moveDeadJobs = moveDeadJobs;
+  }
+
+  /**
+   * Tells whether the full stack traces of job exceptions are stored.
+   */
+  public boolean isStoreExceptionTraces() {
+    return storeExceptionTraces;
+  }
+
+  /**
+   * Stores the full stack trace of the first exception with a given fingerprint in the
+   * exception trace table. Jobs always keep a summary of their last exception.
+   * 
+   * @see org.jbpm.db.JobSession#loadExceptionTrace(String)
+   */
+  public void setStoreExceptionTraces(boolean storeExceptionTraces) {
+    this.storeExceptionTraces = storeExceptionTraces;
+  }
+
   public int getMaxIdleInterval() {
     return maxIdleInterval;
   }
@@ -273,6 +960,27 @@ public class JobExecutor implements Serializable {
     this.maxIdleInterval = maxIdleInterval;
   }
 
+  /**
+   * Tells how many acquisitions in a row must fail to reach the database before dispatchers
+   * pause acquisition.
+   */
+  public int getCircuitBreakerThreshold() {
+    return circuitBreakerThreshold;
+  }
+
+  /**
+   * Sets how many acquisitions in a row must fail to reach the database before dispatchers
+   * pause acquisition for the {@linkplain #setMaxIdleInterval(int) maximum idle interval}. Lock
+   * conflicts with other job executors do not count. When zero, dispatchers keep polling
+   * every idle interval, doubled after each failure.
+   */
+  public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+    if (circuitBreakerThreshold < 0) {
+      throw new IllegalArgumentException("circuit breaker threshold must not be negative");
+    }
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+  }
+
   public String getName() {
     return name;
   }
@@ -283,7 +991,7 @@ public class JobExecutor implements Serializable {
 
   public Map getThreads() {
     // fetch active threads
-    Thread[] activeThreads = new Thread[nbrOfThreads + 2];
+    Thread[] activeThreads = new Thread[getMaxThreadCount()];
     int activeCount = threadGroup.enumerate(activeThreads, false);
 
     // map threads by name
@@ -299,6 +1007,14 @@ public class JobExecutor implements Serializable {
     return maxLockTime;
   }
 
+  /**
+   * Sets how long a job may stay locked without its lock being renewed, in milliseconds. The
+   * lock monitor thread renews the locks of the jobs this job executor holds three times per
+   * max lock time, and unlocks jobs whose locks were not renewed in time, such as jobs held by
+   * a failed cluster node. A transaction that executes a job whose lock was taken away fails
+   * to commit. The clocks of the cluster nodes must agree within a fraction of the max lock
+   * time.
+   */
   public void setMaxLockTime(int maxLockTime) {
     if (maxLockTime <= 0) {
       throw new IllegalArgumentException("max lock time must be positive");
@@ -321,6 +1037,10 @@ public class JobExecutor implements Serializable {
     return nbrOfThreads;
   }
 
+  /**
+   * Sets the number of executor threads. Has no effect when {@linkplain #setLanes(List) lanes}
+   * are set, as each lane has a number of threads of its own.
+   */
   public void setNbrOfThreads(int nbrOfThreads) {
     if (nbrOfThreads <= 0) {
       throw new IllegalArgumentException("number of threads must be positive");
@@ -328,91 +1048,334 @@ public class JobExecutor implements Serializable {
     this.nbrOfThreads = nbrOfThreads;
   }
 
-  private boolean hasFreeExecutor() {
-    waitingExecutorLock.lock() ;
-    try {
-      return (waitingExecutorCount > dispatchedJobs.size()) ;
-    } finally {
-      waitingExecutorLock.unlock() ;
-    }
+  /**
+   * Tells the lanes jobs are divided into by priority.
+   */
+  public List getLanes() {
+    return lanes;
   }
 
-  // return false when interrupted
-  boolean waitForFreeExecutorThread() {
-    waitingExecutorLock.lock() ;
-    try {
-      waitingDispatcher = true ;
-      if (dispatcherActive) {
-        if (hasFreeExecutor()) {
-          return true ;
-        } else {
-          waitingDispatcherCondition.await() ;
-          return hasFreeExecutor() ;
+  /**
+   * Divides jobs into lanes by {@linkplain Job#getPriority() priority}. Each lane has a
+   * dispatcher thread of its own, which acquires only the jobs whose priority falls within the
+   * lane, and its own {@linkplain JobLane#setNbrOfThreads(int) number of executor threads}.
+   * Give cleanup and bulk work a lane apart from latency-sensitive jobs so that they never
+   * compete for the same threads. Lanes may overlap; a job missing from all lanes is never
+   * executed. When no lanes are set, a single lane serves all priorities with the configured
+   * {@linkplain #setNbrOfThreads(int) number of threads}. Takes effect the next time this job
+   * executor is started.
+   */
+  public void setLanes(List lanes) {
+    if (lanes != null) {
+      for (Iterator i = lanes.iterator(); i.hasNext();) {
+        if (!(i.next() instanceof JobLane)) {
+          throw new IllegalArgumentException("lanes must be instances of " + JobLane.class);
         }
       }
-    } catch (final InterruptedException ie) {
-    } finally {
-      waitingDispatcher = false ;
-      waitingExecutorLock.unlock() ;
     }
-    return false ;
+    this.lanes = lanes;
   }
-  
-  // return null when interrupted
-  Job getJob() {
-    waitingExecutorLock.lock() ;
-    try {
-      waitingExecutorCount++ ;
-      if (dispatcherActive) { 
-        if (waitingDispatcher && hasFreeExecutor()) {
-          waitingDispatcherCondition.signal() ;
-        }
-        if (dispatchedJobs.isEmpty()) {
-          waitingExecutorCondition.await() ;
-        }
-        if (dispatchedJobs.size() > 0) {
-          return (Job)dispatchedJobs.remove(0) ;
-        }
-      }
-    } catch (final InterruptedException ie) {
-    } finally {
-      waitingExecutorCount-- ;
-      waitingExecutorLock.unlock() ;
+
+  /**
+   * Tells the maximum number of jobs the dispatcher acquires in a single transaction.
+   */
+  public int getAcquisitionBatchSize() {
+    return acquisitionBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of jobs the dispatcher acquires in a single transaction. The
+   * dispatcher never acquires more jobs than the executor threads can take on, plus the
+   * {@linkplain #setPrefetchSize(int) prefetch size}.
+   */
+  public void setAcquisitionBatchSize(int acquisitionBatchSize) {
+    if (acquisitionBatchSize <= 0) {
+      throw new IllegalArgumentException("acquisition batch size must be positive");
     }
-    return null ;
+    this.acquisitionBatchSize = acquisitionBatchSize;
   }
-  
-  boolean submitJob(final Job job) {
-    waitingExecutorLock.lock() ;
-    try {
-      if (hasFreeExecutor()) {
-        dispatchedJobs.add(job) ;
-        waitingExecutorCondition.signal() ;
-        return true ;
+
+  /**
+   * Tells the maximum number of exclusive jobs of one process instance executed in a single
+   * transaction.
+   */
+  public int getExclusiveJobBatchSize() {
+    return exclusiveJobBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of exclusive jobs of one process instance executed in a single
+   * transaction. The dispatcher hands all exclusive jobs of a process instance it acquires to
+   * a single executor thread, adding other due exclusive jobs of that process instance until
+   * there are this many. The executor thread runs them back to back, in transactions of up to
+   * this many jobs, rather than letting several threads wait for the same process instance
+   * lock. If a transaction fails, its jobs are executed again one per transaction. When one,
+   * each job runs in a transaction of its own.
+   */
+  public void setExclusiveJobBatchSize(int exclusiveJobBatchSize) {
+    if (exclusiveJobBatchSize <= 0) {
+      throw new IllegalArgumentException("exclusive job batch size must be positive");
+    }
+    this.exclusiveJobBatchSize = exclusiveJobBatchSize;
+  }
+
+  /**
+   * Tells whether jobs created in this process are dispatched without a round trip to the
+   * database.
+   */
+  public boolean isLocalDispatch() {
+    return localDispatch;
+  }
+
+  /**
+   * Makes jobs created in this process go straight to the dispatcher once their transaction
+   * commits, rather than waiting for the dispatcher to find them in the database. A lane
+   * reserves room for each such job as it is created. After commit, the dispatcher loads the
+   * jobs by identifier and locks them, skipping jobs that are gone, suspended or held back by
+   * throttles, or that another cluster node acquired first. Requires transactions demarcated
+   * by the persistence service.
+   */
+  public void setLocalDispatch(boolean localDispatch) {
+    this.localDispatch = localDispatch;
+  }
+
+  /**
+   * Tells the executor service that runs jobs, if any.
+   */
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  /**
+   * Makes jobs run in the given executor service rather than in executor threads started by
+   * this job executor. The {@linkplain #setNbrOfThreads(int) number of threads} then bounds the
+   * number of jobs submitted to the executor service and not yet finished. This job executor
+   * does not shut down the given executor service. Takes effect the next time this job
+   * executor is started.
+   */
+  public void setExecutorService(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Tells whether jobs run in virtual threads.
+   */
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Makes each job run in a new virtual thread, unless an
+   * {@linkplain #setExecutorService(ExecutorService) executor service} is configured. The
+   * {@linkplain #setNbrOfThreads(int) number of threads} then bounds the number of jobs in
+   * progress. Requires Java 21 or later; older platforms fall back to executor threads. Takes
+   * effect the next time this job executor is started.
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Tells the span of the look-ahead window of the timer wheel, in milliseconds.
+   */
+  public int getTimerLookAhead() {
+    return timerLookAhead;
+  }
+
+  /**
+   * Sets the span of the look-ahead window of the timer wheel, in milliseconds. When positive,
+   * the dispatcher loads the jobs due within the window into a timer wheel and acquires them
+   * right when they fall due, reloading the wheel only once the window has passed.
+   * Timers created in this process enter the wheel as they are scheduled; timers created
+   * elsewhere enter the wheel when the next window is loaded. Meanwhile, the dispatcher checks
+   * for unowned jobs that are due already every {@linkplain #setIdleInterval(int) idle
+   * interval}, so jobs created elsewhere are no later than without the wheel. When zero, the
+   * default, the dispatcher polls the database for the next due date every idle interval.
+   * Takes effect the next time this job executor is started.
+   */
+  public void setTimerLookAhead(int timerLookAhead) {
+    if (timerLookAhead < 0) {
+      throw new IllegalArgumentException("timer look-ahead must not be negative");
+    }
+    this.timerLookAhead = timerLookAhead;
+  }
+
+  /**
+   * Tells the number of partitions jobs are divided into.
+   */
+  public int getPartitionCount() {
+    return partitionCount;
+  }
+
+  /**
+   * Divides jobs into the given number of partitions and makes this job executor acquire jobs
+   * only from the partitions it holds a lease for. A job belongs to the partition given by the
+   * identifier of its process instance modulo the number of partitions; jobs without a process
+   * instance belong to partition 0. The job executors in a cluster record their membership and
+   * divide the partitions evenly among themselves in the <code>JBPM_JOBEXECUTORLEASE</code>
+   * table, so that they no longer compete for the same jobs. All job executors in a cluster must be configured with the same number of
+   * partitions, which should be several times the number of nodes. When zero, this job
+   * executor acquires jobs from all partitions.
+   */
+  public void setPartitionCount(int partitionCount) {
+    if (partitionCount < 0) {
+      throw new IllegalArgumentException("partition count must not be negative");
+    }
+    this.partitionCount = partitionCount;
+  }
+
+  /**
+   * Tells how long partition leases last, in milliseconds.
+   */
+  public int getPartitionLeaseDuration() {
+    return partitionLeaseDuration;
+  }
+
+  /**
+   * Sets how long partition leases last, in milliseconds. The lock monitor thread renews the
+   * leases of this job executor three times per lease duration. Partitions of a job executor
+   * that stops renewing its leases pass to the remaining job executors once the leases expire.
+   * The clocks of the cluster nodes must agree within a fraction of the lease duration.
+   */
+  public void setPartitionLeaseDuration(int partitionLeaseDuration) {
+    if (partitionLeaseDuration <= 0) {
+      throw new IllegalArgumentException("partition lease duration must be positive");
+    }
+    this.partitionLeaseDuration = partitionLeaseDuration;
+  }
+
+  /**
+   * Tells the counters and timings of this job executor since it was last started.
+   */
+  public JobExecutorMetrics getMetrics() {
+    JobExecutorMetrics metrics = this.metrics;
+    if (metrics == null) {
+      synchronized (this) {
+        if (this.metrics == null) this.metrics = new JobExecutorMetrics(this, historyMaxSize);
+        metrics = this.metrics;
       }
-    } finally {
-      waitingExecutorLock.unlock() ;
     }
-    return false ;
+    return metrics;
   }
 
-  private void activateDispatcher() {
-    waitingExecutorLock.lock() ;
-    dispatcherActive = true ;
-    waitingExecutorLock.unlock() ;
+  /**
+   * Tells the number of recent executions kept by the {@linkplain #getMetrics() metrics}.
+   */
+  public int getHistoryMaxSize() {
+    return historyMaxSize;
   }
-  
-  private void deactivateDispatcher() {
-    waitingExecutorLock.lock() ;
+
+  /**
+   * Sets the number of recent executions kept by the {@linkplain #getMetrics() metrics}. Zero
+   * keeps no history. Takes effect the next time this job executor is started.
+   */
+  public void setHistoryMaxSize(int historyMaxSize) {
+    if (historyMaxSize < 0) {
+      throw new IllegalArgumentException("history size must not be negative");
+    }
+    this.historyMaxSize = historyMaxSize;
+  }
+
+  /**
+   * Tells the JMX object name of the {@linkplain #getMetrics() metrics}, if registered.
+   */
+  public String getJmxName() {
+    return jmxName;
+  }
+
+  /**
+   * Sets the JMX object name under which the {@linkplain #getMetrics() metrics} are registered
+   * in the platform MBean server while this job executor is started. No MBean is registered
+   * when the name is <code>null</code>. Takes effect the next time this job executor is
+   * started.
+   */
+  public void setJmxName(String jmxName) {
+    this.jmxName = jmxName;
+  }
+
+  /**
+   * Tells how many jobs the dispatcher may acquire in advance while all executor threads are
+   * busy.
+   */
+  public int getPrefetchSize() {
+    return prefetchSize;
+  }
+
+  /**
+   * Sets how many jobs the dispatcher may acquire in advance while all executor threads are
+   * busy. Prefetched jobs wait in queue, locked by this job executor, until an executor thread
+   * takes them on. Takes effect the next time this job executor is started.
+   */
+  public void setPrefetchSize(int prefetchSize) {
+    if (prefetchSize < 0) {
+      throw new IllegalArgumentException("prefetch size must not be negative");
+    }
+    this.prefetchSize = prefetchSize;
+  }
+
+  /**
+   * Tells how long, in milliseconds, {@link #drainAndJoin()} lets jobs in progress finish before
+   * it tells the executor threads to stop.
+   */
+  public int getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  /**
+   * Sets how long, in milliseconds, {@link #drainAndJoin()} lets jobs in progress finish before
+   * it tells the executor threads to stop. Executor threads finish the job at hand either way;
+   * the timeout spares jobs in progress the interruption of blocking calls.
+   */
+  public void setDrainTimeout(int drainTimeout) {
+    if (drainTimeout < 0) {
+      throw new IllegalArgumentException("drain timeout must not be negative");
+    }
+    this.drainTimeout = drainTimeout;
+  }
+
+  /**
+   * Hands the given jobs to a single executor thread of the given lane, which executes them
+   * back to back. The caller must hold a dispatch permit of the lane for the jobs.
+   * 
+   * @return <code>true</code> if the jobs were queued
+   */
+  boolean submitJobs(List jobs, JobLane lane) {
+    ExecutorService executorService = this.executorService != null ? this.executorService
+      : ownExecutorService;
+    if (executorService == null) return lane.offerJobs(jobs);
+
     try {
-      dispatcherActive = false ;
-      waitingDispatcherCondition.signal() ;
-      waitingExecutorCondition.signalAll() ;
-    } finally {
-      waitingExecutorLock.unlock() ;
+      executorService.execute(new JobsTask(jobs, lane));
+      return true;
+    }
+    catch (RejectedExecutionException e) {
+      if (log.isDebugEnabled()) log.debug(executorService + " rejected " + jobs, e);
+      return false;
     }
   }
-  
+
+  /**
+   * Jobs submitted to the executor service, recognizable when taken back on drain.
+   */
+  private class JobsTask implements Runnable {
+
+    final List jobs;
+    final JobLane lane;
+
+    JobsTask(List jobs, JobLane lane) {
+      this.jobs = jobs;
+      this.lane = lane;
+    }
+
+    JobExecutor getJobExecutor() {
+      return JobExecutor.this;
+    }
+
+    public void run() {
+      getJobRunner().run(jobs, lane);
+    }
+  }
+
   private static Log log = LogFactory.getLog(JobExecutor.class);
   
   /**
@@ -421,8 +1384,6 @@ public class JobExecutor implements Serializable {
    * ====================
    */
    
-  /** @deprecated property has no effect */
-  protected int historyMaxSize;
   /** @deprecated property has no effect */
   protected int lockBufferTime;
   /** @deprecated call {@link #getThreads()} instead */
@@ -439,16 +1400,6 @@ public class JobExecutor implements Serializable {
   public void setMonitoredJobIds(Map monitoredJobIds) {
   }
 
-  /** @deprecated property has no effect */
-  public int getHistoryMaxSize() {
-    return historyMaxSize;
-  }
-
-  /** @deprecated property has no effect */
-  public void setHistoryMaxSize(int historyMaxSize) {
-    this.historyMaxSize = historyMaxSize;
-  }
-
   /**
    * This method has no effect.
    * 
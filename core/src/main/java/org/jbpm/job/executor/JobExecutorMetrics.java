@@ -0,0 +1,341 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Hibernate;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+import org.jbpm.persistence.db.DbPersistenceService;
+
+/**
+ * Counters and timings of a {@link JobExecutor}, which help size the
+ * {@linkplain JobExecutor#setNbrOfThreads(int) thread pool} and the
+ * {@linkplain JobExecutor#setIdleInterval(int) idle interval}. Execution timings are broken
+ * down by job class and process definition. The most recent executions are kept in a ring
+ * buffer of {@linkplain JobExecutor#setHistoryMaxSize(int) configurable size}.
+ * 
+ * <p>
+ * When the job executor has an {@linkplain JobExecutor#setJmxName(String) MBean name}, the
+ * metrics are registered in the platform MBean server while the job executor is started.
+ * </p>
+ * 
+ * @see JobExecutor#getMetrics()
+ */
+public class JobExecutorMetrics implements JobExecutorMetricsMBean {
+
+  private final JobExecutor jobExecutor;
+
+  private final AtomicLong acquiredJobCount = new AtomicLong();
+  private final AtomicLong executedJobCount = new AtomicLong();
+  private final AtomicLong failedJobCount = new AtomicLong();
+  private final AtomicLong staleJobCount = new AtomicLong();
+  private final AtomicInteger busyThreadCount = new AtomicInteger();
+
+  private final TimeHistogram acquisitionTime = new TimeHistogram();
+  private final TimeHistogram waitTime = new TimeHistogram();
+  private final TimeHistogram executionTime = new TimeHistogram();
+
+  /** statistics by job class name */
+  private final ConcurrentMap jobClassStatistics = new ConcurrentHashMap();
+  /** statistics by process definition name */
+  private final ConcurrentMap processDefinitionStatistics = new ConcurrentHashMap();
+
+  /** most recent executions, oldest first once the buffer wraps around */
+  private final JobHistoryEntry[] history;
+  private int historyIndex;
+
+  JobExecutorMetrics(JobExecutor jobExecutor, int historySize) {
+    this.jobExecutor = jobExecutor;
+    history = new JobHistoryEntry[Math.max(historySize, 0)];
+  }
+
+  void jobsAcquired(int jobCount, long millis) {
+    acquiredJobCount.addAndGet(jobCount);
+    acquisitionTime.record(millis);
+  }
+
+  void threadBusy() {
+    busyThreadCount.incrementAndGet();
+  }
+
+  void threadIdle() {
+    busyThreadCount.decrementAndGet();
+  }
+
+  /**
+   * Records the execution of the given job.
+   * 
+   * @param dueDate the due date of the job before the execution, which reschedules repeating
+   * timers
+   * @param startTime the time the execution started
+   * @param duration the time the execution took
+   * @param exception the exception the execution threw, or <code>null</code> if it succeeded
+   */
+  void jobExecuted(Job job, Date dueDate, long startTime, long duration, Exception exception) {
+    long wait = dueDate != null ? Math.max(startTime - dueDate.getTime(), 0) : 0;
+
+    boolean failed = exception != null;
+    if (!failed) {
+      executedJobCount.incrementAndGet();
+    }
+    else if (DbPersistenceService.isLockingException(exception)) {
+      staleJobCount.incrementAndGet();
+    }
+    else {
+      failedJobCount.incrementAndGet();
+    }
+    waitTime.record(wait);
+    executionTime.record(duration);
+
+    getStatistics(jobClassStatistics, Hibernate.getClass(job).getName()).record(wait,
+      duration, failed);
+    String processDefinitionName = getProcessDefinitionName(job);
+    if (processDefinitionName != null) {
+      getStatistics(processDefinitionStatistics, processDefinitionName).record(wait, duration,
+        failed);
+    }
+
+    if (history.length > 0) {
+      JobHistoryEntry entry = new JobHistoryEntry(new Date(startTime), job.toString(),
+        failed ? exception.toString() : null, wait, duration);
+      synchronized (history) {
+        history[historyIndex] = entry;
+        historyIndex = (historyIndex + 1) % history.length;
+      }
+    }
+  }
+
+  private static JobStatistics getStatistics(ConcurrentMap statisticsMap, String key) {
+    JobStatistics statistics = (JobStatistics) statisticsMap.get(key);
+    if (statistics == null) {
+      statistics = new JobStatistics();
+      JobStatistics existing = (JobStatistics) statisticsMap.putIfAbsent(key, statistics);
+      if (existing != null) statistics = existing;
+    }
+    return statistics;
+  }
+
+  /**
+   * Tells the name of the process definition of the given job, provided it was loaded during
+   * execution; the job is detached at this point.
+   */
+  private static String getProcessDefinitionName(Job job) {
+    ProcessInstance processInstance = job.getProcessInstance();
+    if (processInstance == null || !Hibernate.isInitialized(processInstance)) return null;
+
+    ProcessDefinition processDefinition = processInstance.getProcessDefinition();
+    if (processDefinition == null || !Hibernate.isInitialized(processDefinition)) return null;
+    return processDefinition.getName();
+  }
+
+  public String getJobExecutorName() {
+    return jobExecutor.getName();
+  }
+
+  /** Number of jobs acquired by the dispatchers, including jobs dispatched locally. */
+  public long getAcquiredJobCount() {
+    return acquiredJobCount.get();
+  }
+
+  public long getExecutedJobCount() {
+    return executedJobCount.get();
+  }
+
+  /** Number of job executions that threw an exception other than a locking exception. */
+  public long getFailedJobCount() {
+    return failedJobCount.get();
+  }
+
+  /** Number of job executions that failed on concurrent updates to the same data. */
+  public long getStaleJobCount() {
+    return staleJobCount.get();
+  }
+
+  /** Number of acquired jobs waiting for an executor thread. */
+  public int getQueuedJobCount() {
+    return jobExecutor.getQueuedJobCount();
+  }
+
+  public int getBusyThreadCount() {
+    return busyThreadCount.get();
+  }
+
+  /**
+   * Number of executor threads waiting for jobs. Jobs handed to an
+   * {@linkplain JobExecutor#setExecutorService executor service} do not count against the
+   * threads of the job executor.
+   */
+  public int getIdleThreadCount() {
+    return Math.max(jobExecutor.getExecutorThreadCount() - busyThreadCount.get(), 0);
+  }
+
+  /** Time taken by each acquisition of jobs, from the query to the commit of the locks. */
+  public TimeHistogram getAcquisitionTime() {
+    return acquisitionTime;
+  }
+
+  /** Time elapsed between the due date of the jobs and the start of their execution. */
+  public TimeHistogram getWaitTime() {
+    return waitTime;
+  }
+
+  /** Time taken to execute the jobs, including the transaction commit. */
+  public TimeHistogram getExecutionTime() {
+    return executionTime;
+  }
+
+  public long getAcquisitionTimeMean() {
+    return acquisitionTime.getMean();
+  }
+
+  public long getAcquisitionTime95thPercentile() {
+    return acquisitionTime.getPercentile(0.95);
+  }
+
+  public long getAcquisitionTimeMax() {
+    return acquisitionTime.getMax();
+  }
+
+  public long getWaitTimeMean() {
+    return waitTime.getMean();
+  }
+
+  public long getWaitTime95thPercentile() {
+    return waitTime.getPercentile(0.95);
+  }
+
+  public long getWaitTimeMax() {
+    return waitTime.getMax();
+  }
+
+  public long getExecutionTimeMean() {
+    return executionTime.getMean();
+  }
+
+  public long getExecutionTime95thPercentile() {
+    return executionTime.getPercentile(0.95);
+  }
+
+  public long getExecutionTimeMax() {
+    return executionTime.getMax();
+  }
+
+  /**
+   * Tells the execution statistics of each job class.
+   * 
+   * @return a map of {@link JobStatistics} by job class name, sorted by name
+   */
+  public Map getJobClassStatistics() {
+    return new TreeMap(jobClassStatistics);
+  }
+
+  /**
+   * Tells the execution statistics of the jobs of each process definition.
+   * 
+   * @return a map of {@link JobStatistics} by process definition name, sorted by name
+   */
+  public Map getProcessDefinitionStatistics() {
+    return new TreeMap(processDefinitionStatistics);
+  }
+
+  /**
+   * Tells the most recent executions, up to the {@linkplain JobExecutor#getHistoryMaxSize()
+   * history size}.
+   * 
+   * @return a list of {@link JobHistoryEntry} objects, oldest first
+   */
+  public List getRecentExecutions() {
+    if (history.length == 0) return Collections.EMPTY_LIST;
+
+    List entries = new ArrayList(history.length);
+    synchronized (history) {
+      for (int i = 0; i < history.length; i++) {
+        JobHistoryEntry entry = history[(historyIndex + i) % history.length];
+        if (entry != null) entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  public String[] getJobClassSummary() {
+    return summarize(getJobClassStatistics());
+  }
+
+  public String[] getProcessDefinitionSummary() {
+    return summarize(getProcessDefinitionStatistics());
+  }
+
+  private static String[] summarize(Map statisticsMap) {
+    String[] summary = new String[statisticsMap.size()];
+    int index = 0;
+    for (Iterator i = statisticsMap.entrySet().iterator(); i.hasNext();) {
+      Map.Entry entry = (Map.Entry) i.next();
+      summary[index++] = entry.getKey() + ": " + entry.getValue();
+    }
+    return summary;
+  }
+
+  public String[] getRecentExecutionSummary() {
+    List entries = getRecentExecutions();
+    String[] summary = new String[entries.size()];
+    for (int i = 0; i < summary.length; i++) {
+      summary[i] = entries.get(i).toString();
+    }
+    return summary;
+  }
+
+  /** Clears the counters, timings and history; the busy thread count is kept. */
+  public void reset() {
+    acquiredJobCount.set(0);
+    executedJobCount.set(0);
+    failedJobCount.set(0);
+    staleJobCount.set(0);
+    acquisitionTime.reset();
+    waitTime.reset();
+    executionTime.reset();
+    jobClassStatistics.clear();
+    processDefinitionStatistics.clear();
+    synchronized (history) {
+      for (int i = 0; i < history.length; i++) {
+        history[i] = null;
+      }
+      historyIndex = 0;
+    }
+  }
+
+  public String toString() {
+    return "JobExecutorMetrics(" + getJobExecutorName() + ")";
+  }
+}
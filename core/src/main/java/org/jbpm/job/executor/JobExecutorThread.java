@@ -1,172 +1,89 @@
 package org.jbpm.job.executor;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.util.Date;
-import java.util.Random;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jbpm.JbpmConfiguration;
-import org.jbpm.JbpmContext;
-import org.jbpm.db.JobSession;
-import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.job.Job;
-import org.jbpm.persistence.db.DbPersistenceService;
-import org.jbpm.persistence.db.StaleObjectLogConfigurer;
 
 public class JobExecutorThread extends Thread implements Deactivable {
 
   private final JobExecutor jobExecutor;
+  private final JobLane lane;
+  private final JobRunner jobRunner;
   private volatile boolean active = true;
-  private Random random = new Random() ;
 
+  /**
+   * Creates an executor thread serving the lane the job executor assigned to the given thread
+   * name.
+   */
   public JobExecutorThread(String name, JobExecutor jobExecutor) {
+    this(name, jobExecutor, jobExecutor.getThreadLane(name));
+  }
+
+  public JobExecutorThread(String name, JobExecutor jobExecutor, JobLane lane) {
     super(jobExecutor.getThreadGroup(), name);
     this.jobExecutor = jobExecutor;
+    this.lane = lane;
+    jobRunner = new ThreadJobRunner();
+  }
+
+  /**
+   * Tells the lane whose jobs this thread executes.
+   */
+  public JobLane getLane() {
+    return lane;
   }
 
   public void run() {
     while (active) {
-      // take on next job
-      Job job = jobExecutor.getJob();
-      // if an exception occurs, acquireJob() returns null
-      if (job != null) {
-        try {
-          executeJob(job);
-        }
-        catch (Exception e) {
-          // save exception stack trace
-          // if another exception occurs, it is not rethrown
-          saveJobException(job, e);
-        }
-        catch (Error e) {
-          // unlock job so it can be dispatched again
-          // if another exception occurs, it is not rethrown
-          unlockJob(job);
-          throw e;
-        }
-      }
+      // take on next jobs
+      List jobs = lane.takeJobs();
+      // if interrupted, takeJobs() returns null
+      if (jobs != null) jobRunner.run(jobs, lane);
     }
     log.info(getName() + " leaves cyberspace");
   }
 
   protected void executeJob(Job job) throws Exception {
-    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
-    try {
-      // reattach job to persistence context
-      JobSession jobSession = jbpmContext.getJobSession();
-      jobSession.reattachJob(job);
-      
-      // register process instance for automatic save
-      // https://jira.jboss.org/browse/JBPM-1015
-      ProcessInstance processInstance = job.getProcessInstance();
-      jbpmContext.addAutoSaveProcessInstance(processInstance);
-
-      // if job is exclusive, lock process instance
-      if (job.isExclusive()) {
-        jbpmContext.getGraphSession().lockProcessInstance(processInstance);
-      }
-
-      if (log.isDebugEnabled()) log.debug("executing " + job);
-      if (job.execute(jbpmContext)) jobSession.deleteJob(job);
-    }
-    catch (Exception e) {
-      jbpmContext.setRollbackOnly();
-      throw e;
-    }
-    catch (Error e) {
-      jbpmContext.setRollbackOnly();
-      throw e;
-    }
-    finally {
-      jbpmContext.close();
-    }
+    jobExecutor.getJobRunner().executeJob(job);
   }
 
-  private void saveJobException(Job job, Exception exception) {
-    // if this is a locking exception, keep it quiet
-    if (DbPersistenceService.isLockingException(exception)) {
-      StaleObjectLogConfigurer.getStaleObjectExceptionsLog().error("failed to execute " + job, exception);
-    }
-    else {
-      log.error("failed to execute " + job, exception);
-    }
+  /**
+   * Routes job execution through {@link JobExecutorThread#executeJob(Job)}, so that
+   * subclasses can customize it.
+   */
+  private class ThreadJobRunner extends JobRunner {
 
-    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
-    try {
-      // do not reattach existing job as it contains undesired updates
-      jbpmContext.getSession().refresh(job);
-
-      // print and save exception
-      StringWriter out = new StringWriter();
-      exception.printStackTrace(new PrintWriter(out));
-      job.setException(out.toString());
-
-      // unlock job so it can be dispatched again
-      job.setLockOwner(null);
-      job.setLockTime(null);
-      int waitPeriod = jobExecutor.getRetryInterval() / 2;
-      waitPeriod += random.nextInt(waitPeriod) ;
-      job.setDueDate(new Date(System.currentTimeMillis() + waitPeriod)) ;
-    }
-    catch (RuntimeException e) {
-      jbpmContext.setRollbackOnly();
-      log.warn("failed to save exception for " + job, e);
-    }
-    catch (Error e) {
-      jbpmContext.setRollbackOnly();
-      throw e;
+    /** whether a subclass customizes job execution */
+    private final boolean customized = overridesExecuteJob(JobExecutorThread.this.getClass());
+
+    ThreadJobRunner() {
+      super(jobExecutor);
     }
-    finally {
-      try {
-        jbpmContext.close();
-      }
-      catch (RuntimeException e) {
-        log.warn("failed to save exception for " + job, e);
-      }
+
+    void executeJob(Job job) throws Exception {
+      JobExecutorThread.this.executeJob(job);
     }
-    // notify job executor
-    synchronized (jobExecutor) {
-      jobExecutor.notify();
+
+    int getExclusiveJobBatchSize() {
+      // jobs executed together would bypass customized execution
+      return customized ? 1 : super.getExclusiveJobBatchSize();
     }
   }
 
-  private void unlockJob(Job job) {
-    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
-    try {
-      // do not reattach existing job as it contains undesired updates
-      jbpmContext.getSession().refresh(job);
-
-      // unlock job
-      job.setLockOwner(null);
-      job.setLockTime(null);
-      if (job.getException() != null)
-      {
-    	  job.setRetries(job.getRetries()+1) ;
-      }
-    }
-    catch (RuntimeException e) {
-      jbpmContext.setRollbackOnly();
-      log.warn("failed to unlock " + job, e);
-    }
-    catch (Error e) {
-      jbpmContext.setRollbackOnly();
-      // do not rethrow as this method is already called in response to an Error
-      log.warn("failed to unlock " + job, e);
-    }
-    finally {
+  private static boolean overridesExecuteJob(Class type) {
+    for (; type != JobExecutorThread.class; type = type.getSuperclass()) {
       try {
-        jbpmContext.close();
+        type.getDeclaredMethod("executeJob", new Class[] { Job.class });
+        return true;
       }
-      catch (RuntimeException e) {
-        log.warn("failed to unlock " + job, e);
+      catch (NoSuchMethodException e) {
+        // keep looking
       }
     }
-    // notify job executor
-    synchronized (jobExecutor) {
-      jobExecutor.notify();
-    }
+    return false;
   }
 
   public void deactivate() {
@@ -190,8 +107,7 @@ public class JobExecutorThread extends Thread implements Deactivable {
   public JobExecutorThread(String name, JobExecutor jobExecutor,
     JbpmConfiguration jbpmConfiguration, int idleInterval, int maxIdleInterval,
     long maxLockTime, int maxHistory) {
-    super(jobExecutor.getThreadGroup(), name);
-    this.jobExecutor = jobExecutor;
+    this(name, jobExecutor);
   }
  
   /**
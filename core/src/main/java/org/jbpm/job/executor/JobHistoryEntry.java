@@ -3,7 +3,10 @@ package org.jbpm.job.executor;
 import java.io.Serializable;
 import java.util.Date;
 
-/** @deprecated no use for this class */
+/**
+ * Outcome of a job execution, kept by {@link JobExecutorMetrics} among the most recent
+ * executions.
+ */
 public class JobHistoryEntry implements Serializable {
 
   private static final long serialVersionUID = 1L;
@@ -11,4 +14,44 @@ public class JobHistoryEntry implements Serializable {
   Date executionTime;
   String jobDescription;
   String exception;
+  long waitTime;
+  long duration;
+
+  JobHistoryEntry(Date executionTime, String jobDescription, String exception, long waitTime,
+    long duration) {
+    this.executionTime = executionTime;
+    this.jobDescription = jobDescription;
+    this.exception = exception;
+    this.waitTime = waitTime;
+    this.duration = duration;
+  }
+
+  /** Time the execution started. */
+  public Date getExecutionTime() {
+    return executionTime;
+  }
+
+  public String getJobDescription() {
+    return jobDescription;
+  }
+
+  /** Exception the execution threw, or <code>null</code> if it succeeded. */
+  public String getException() {
+    return exception;
+  }
+
+  /** Milliseconds elapsed between the due date of the job and the start of the execution. */
+  public long getWaitTime() {
+    return waitTime;
+  }
+
+  /** Milliseconds the execution took. */
+  public long getDuration() {
+    return duration;
+  }
+
+  public String toString() {
+    return jobDescription + " at " + executionTime + " waited " + waitTime + "ms, took "
+      + duration + "ms" + (exception != null ? ", failed: " + exception : "");
+  }
 }
@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jbpm.job.Job;
+
+/**
+ * Range of job priorities served by a dispatcher thread and a pool of executor threads of
+ * their own. Lanes keep jobs of different priorities from competing for the same threads, so
+ * that a burst of bulk jobs cannot hold back latency-sensitive ones.
+ * 
+ * @see JobExecutor#setLanes(java.util.List)
+ * @see Job#getPriority()
+ */
+public class JobLane implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String name;
+  private int minPriority = Integer.MIN_VALUE;
+  private int maxPriority = Integer.MAX_VALUE;
+  private int nbrOfThreads = 1;
+
+  /** lists of jobs acquired by the dispatcher, each waiting for an executor thread */
+  private transient BlockingQueue dispatchedJobs;
+  /** one permit per job list the executor threads can take on or hold in queue */
+  private transient Semaphore dispatchPermits;
+  private transient TimerWheel timerWheel;
+  /** identifiers of jobs created for this lane by committed local transactions */
+  private transient Queue localJobIds;
+  /** jobs reserved for this lane by local transactions and not loaded yet */
+  private transient AtomicInteger localJobCount;
+  private transient int capacity;
+
+  public JobLane() {
+  }
+
+  public JobLane(String name, int minPriority, int maxPriority, int nbrOfThreads) {
+    setName(name);
+    setMinPriority(minPriority);
+    setMaxPriority(maxPriority);
+    setNbrOfThreads(nbrOfThreads);
+  }
+
+  /**
+   * Tells whether this lane serves jobs of the given priority.
+   */
+  public boolean accepts(int priority) {
+    return priority >= minPriority && priority <= maxPriority;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Tells the lowest priority number this lane serves, that is, its most urgent priority.
+   */
+  public int getMinPriority() {
+    return minPriority;
+  }
+
+  public void setMinPriority(int minPriority) {
+    this.minPriority = minPriority;
+  }
+
+  /**
+   * Tells the highest priority number this lane serves, that is, its least urgent priority.
+   */
+  public int getMaxPriority() {
+    return maxPriority;
+  }
+
+  public void setMaxPriority(int maxPriority) {
+    this.maxPriority = maxPriority;
+  }
+
+  public int getNbrOfThreads() {
+    return nbrOfThreads;
+  }
+
+  public void setNbrOfThreads(int nbrOfThreads) {
+    if (nbrOfThreads <= 0) {
+      throw new IllegalArgumentException("number of threads must be positive");
+    }
+    this.nbrOfThreads = nbrOfThreads;
+  }
+
+  public String toString() {
+    return "JobLane(" + (name != null ? name + ',' : "") + minPriority + ".." + maxPriority
+      + ')';
+  }
+
+  void createDispatchQueue(int prefetchSize) {
+    capacity = nbrOfThreads + prefetchSize;
+    dispatchedJobs = new LinkedBlockingQueue(capacity);
+    dispatchPermits = new Semaphore(capacity);
+    localJobIds = new ConcurrentLinkedQueue();
+    localJobCount = new AtomicInteger();
+  }
+
+  TimerWheel getTimerWheel() {
+    return timerWheel;
+  }
+
+  void setTimerWheel(TimerWheel timerWheel) {
+    this.timerWheel = timerWheel;
+  }
+
+  /**
+   * Waits until the executor threads can take on at least one more job and reserves room for
+   * as many jobs as possible, up to the given maximum.
+   * 
+   * @return the number of reserved jobs, or zero if interrupted
+   */
+  int acquireDispatchPermits(int maxPermits) {
+    try {
+      dispatchPermits.acquire();
+    }
+    catch (InterruptedException e) {
+      return 0;
+    }
+    int permits = 1;
+    while (permits < maxPermits && dispatchPermits.tryAcquire()) {
+      permits++;
+    }
+    return permits;
+  }
+
+  /**
+   * Gives back room reserved by {@link #acquireDispatchPermits(int)} for jobs that were not
+   * dispatched.
+   */
+  void releaseDispatchPermits(int permits) {
+    if (permits > 0) dispatchPermits.release(permits);
+  }
+
+  /**
+   * Reserves room for a job that a local transaction creates for this lane, unless as many
+   * jobs as the executor threads can take on or hold in queue are waiting for dispatch already.
+   * 
+   * @return <code>true</code> if room was reserved
+   */
+  boolean reserveLocalJob() {
+    for (;;) {
+      int count = localJobCount.get();
+      if (count >= capacity) return false;
+      if (localJobCount.compareAndSet(count, count + 1)) return true;
+    }
+  }
+
+  /**
+   * Gives back room reserved by {@link #reserveLocalJob()} for a job whose transaction rolled
+   * back.
+   */
+  void cancelLocalJob() {
+    localJobCount.decrementAndGet();
+  }
+
+  /**
+   * Makes the given job, created for this lane by a committed transaction, available for
+   * dispatch.
+   */
+  void addLocalJob(long jobId) {
+    localJobIds.offer(new Long(jobId));
+  }
+
+  /**
+   * Tells whether jobs created for this lane by committed local transactions await dispatch.
+   */
+  boolean hasLocalJobs() {
+    return !localJobIds.isEmpty();
+  }
+
+  /**
+   * Takes the identifiers of up to the given number of jobs created for this lane by committed
+   * local transactions.
+   */
+  List pollLocalJobIds(int maxJobs) {
+    List jobIds = new ArrayList();
+    for (Object jobId; jobIds.size() < maxJobs && (jobId = localJobIds.poll()) != null;) {
+      jobIds.add(jobId);
+    }
+    if (!jobIds.isEmpty()) localJobCount.addAndGet(-jobIds.size());
+    return jobIds;
+  }
+
+  /**
+   * Queues the given jobs for the executor threads of this lane. The jobs go to a single
+   * executor thread.
+   * 
+   * @return <code>true</code> if the jobs were queued
+   */
+  boolean offerJobs(List jobs) {
+    return dispatchedJobs.offer(jobs);
+  }
+
+  /**
+   * Takes the next dispatched jobs, waiting until some are available.
+   * 
+   * @return the next jobs, or <code>null</code> if interrupted
+   */
+  List takeJobs() {
+    try {
+      return (List) dispatchedJobs.take();
+    }
+    catch (InterruptedException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Takes all dispatched jobs no executor thread has taken yet.
+   */
+  List drainJobs() {
+    List jobLists = new ArrayList();
+    dispatchedJobs.drainTo(jobLists);
+
+    List jobs = new ArrayList();
+    for (Iterator i = jobLists.iterator(); i.hasNext();) {
+      jobs.addAll((List) i.next());
+    }
+    return jobs;
+  }
+
+  /**
+   * Tells the number of dispatched jobs waiting for an executor thread of this lane.
+   */
+  int getQueuedJobCount() {
+    BlockingQueue dispatchedJobs = this.dispatchedJobs;
+    if (dispatchedJobs == null) return 0;
+
+    int jobCount = 0;
+    for (Iterator i = dispatchedJobs.iterator(); i.hasNext();) {
+      jobCount += ((List) i.next()).size();
+    }
+    return jobCount;
+  }
+
+  /**
+   * Tells that an executor thread is done with jobs it took on, making room for more jobs.
+   */
+  void jobProcessed(List jobs) {
+    dispatchPermits.release();
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.jbpm.JbpmConfiguration.Configs;
+import org.jbpm.JbpmContext;
+import org.jbpm.db.JobSession;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+import org.jbpm.persistence.db.DbPersistenceService;
+import org.jbpm.persistence.db.StaleObjectLogConfigurer;
+
+/**
+ * Executes dispatched jobs and records the outcome of each execution. Executor threads and
+ * tasks submitted to an {@linkplain JobExecutor#setExecutorService executor service} share
+ * this logic.
+ */
+class JobRunner {
+
+  private final JobExecutor jobExecutor;
+
+  JobRunner(JobExecutor jobExecutor) {
+    this.jobExecutor = jobExecutor;
+  }
+
+  /**
+   * Executes the given jobs back to back, saves the exception of each job whose execution
+   * fails and finally makes room for more jobs in the given lane. Several jobs are exclusive
+   * jobs of the same process instance; they run in transactions of up to
+   * {@linkplain JobExecutor#getExclusiveJobBatchSize() batch size} jobs.
+   */
+  void run(List jobs, JobLane lane) {
+    JobExecutorMetrics metrics = jobExecutor.getMetrics();
+    metrics.threadBusy();
+    // index of the first job not executed yet
+    int next = 0;
+    try {
+      int batchSize = getExclusiveJobBatchSize();
+      for (int jobCount = jobs.size(); next < jobCount;) {
+        int end = Math.min(next + batchSize, jobCount);
+        List pendingJobs = jobs.subList(next, end);
+        if (pendingJobs.size() > 1) pendingJobs = executeJobs(pendingJobs);
+
+        // execute jobs one per transaction, so that a failing job records its own exception
+        for (; next < end; next++) {
+          Job job = (Job) jobs.get(next);
+          if (!pendingJobs.contains(job)) continue;
+          Date dueDate = job.getDueDate();
+          long startTime = System.currentTimeMillis();
+          try {
+            executeJob(job);
+            metrics.jobExecuted(job, dueDate, startTime, System.currentTimeMillis() - startTime,
+              null);
+          }
+          catch (Exception e) {
+            metrics.jobExecuted(job, dueDate, startTime, System.currentTimeMillis() - startTime,
+              e);
+            // save exception stack trace
+            // if another exception occurs, it is not rethrown
+            saveJobException(job, e);
+          }
+        }
+      }
+    }
+    catch (Error e) {
+      // unlock jobs so they can be dispatched again
+      // if another exception occurs, it is not rethrown
+      for (int i = next, n = jobs.size(); i < n; i++) {
+        unlockJob((Job) jobs.get(i));
+      }
+      throw e;
+    }
+    finally {
+      metrics.threadIdle();
+      jobExecutor.releaseJobs(jobs);
+      lane.jobProcessed(jobs);
+    }
+  }
+
+  int getExclusiveJobBatchSize() {
+    return jobExecutor.getExclusiveJobBatchSize();
+  }
+
+  /**
+   * Executes the given exclusive jobs of one process instance in a single transaction. If the
+   * transaction rolls back, the state of the jobs is refreshed from the database.
+   * 
+   * @return the jobs left to execute one per transaction: none if the transaction committed,
+   * else the jobs still locked by this job executor
+   */
+  List executeJobs(List jobs) {
+    boolean failed = false;
+    List deletedJobs = new ArrayList();
+    int jobCount = jobs.size();
+    Date[] dueDates = new Date[jobCount];
+    long[] startTimes = new long[jobCount];
+    long[] durations = new long[jobCount];
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      JobSession jobSession = jbpmContext.getJobSession();
+      for (Iterator i = jobs.iterator(); i.hasNext();) {
+        // reattach job to persistence context
+        jobSession.reattachJob((Job) i.next());
+      }
+
+      // register process instance for automatic save and lock it
+      ProcessInstance processInstance = ((Job) jobs.get(0)).getProcessInstance();
+      jbpmContext.addAutoSaveProcessInstance(processInstance);
+      jbpmContext.getGraphSession().lockProcessInstance(processInstance);
+
+      for (int i = 0; i < jobCount; i++) {
+        Job job = (Job) jobs.get(i);
+        if (log.isDebugEnabled()) log.debug("executing " + job);
+        dueDates[i] = job.getDueDate();
+        startTimes[i] = System.currentTimeMillis();
+        if (job.execute(jbpmContext)) {
+          jobSession.deleteJob(job);
+          deletedJobs.add(job);
+        }
+        durations[i] = System.currentTimeMillis() - startTimes[i];
+      }
+    }
+    catch (Exception e) {
+      jbpmContext.setRollbackOnly();
+      failed = true;
+      if (log.isDebugEnabled()) log.debug("failed to execute " + jobs + " together", e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        failed = true;
+        if (log.isDebugEnabled()) log.debug("failed to execute " + jobs + " together", e);
+      }
+    }
+
+    // discard updates made in the rolled back transaction
+    if (failed) return refreshJobs(jobs);
+
+    JobExecutorMetrics metrics = jobExecutor.getMetrics();
+    for (int i = 0; i < jobCount; i++) {
+      Job job = (Job) jobs.get(i);
+      metrics.jobExecuted(job, dueDates[i], startTimes[i], durations[i], null);
+      // repeating timers stay around with a new due date
+      if (!deletedJobs.contains(job)) jobExecutor.scheduleJob(job);
+    }
+    return Collections.EMPTY_LIST;
+  }
+
+  /**
+   * Refreshes the state of the given jobs from the database.
+   * 
+   * @return the jobs still locked by this job executor
+   */
+  private List refreshJobs(List jobs) {
+    List lockedJobs = new ArrayList(jobs.size());
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      Session session = jbpmContext.getSession();
+      for (Iterator i = jobs.iterator(); i.hasNext();) {
+        Job job = (Job) i.next();
+        try {
+          if (refreshJob(session, job)) lockedJobs.add(job);
+        }
+        catch (HibernateException e) {
+          // job is gone
+          if (log.isDebugEnabled()) log.debug("could not refresh " + job, e);
+        }
+      }
+    }
+    finally {
+      jbpmContext.close();
+    }
+    return lockedJobs;
+  }
+
+  void executeJob(Job job) throws Exception {
+    boolean deleted = false;
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      // reattach job to persistence context
+      JobSession jobSession = jbpmContext.getJobSession();
+      jobSession.reattachJob(job);
+      
+      // register process instance for automatic save
+      // https://jira.jboss.org/browse/JBPM-1015
+      ProcessInstance processInstance = job.getProcessInstance();
+      jbpmContext.addAutoSaveProcessInstance(processInstance);
+
+      // if job is exclusive, lock process instance
+      if (job.isExclusive()) {
+        jbpmContext.getGraphSession().lockProcessInstance(processInstance);
+      }
+
+      if (log.isDebugEnabled()) log.debug("executing " + job);
+      if (job.execute(jbpmContext)) {
+        jobSession.deleteJob(job);
+        deleted = true;
+      }
+    }
+    catch (Exception e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      jbpmContext.close();
+    }
+    // a repeating timer stays around with a new due date
+    if (!deleted) jobExecutor.scheduleJob(job);
+  }
+
+  void saveJobException(Job job, Exception exception) {
+    // if this is a locking exception, keep it quiet
+    if (DbPersistenceService.isLockingException(exception)) {
+      StaleObjectLogConfigurer.getStaleObjectExceptionsLog().error("failed to execute " + job, exception);
+    }
+    else {
+      log.error("failed to execute " + job, exception);
+    }
+
+    boolean dead = false;
+    boolean newFingerprint = false;
+    String fingerprint = ExceptionDigest.getFingerprint(exception);
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      // do not reattach existing job as it contains undesired updates
+      if (!refreshJob(jbpmContext.getSession(), job)) return;
+
+      // summarize exception; repeats of the last exception only increase the count
+      if (fingerprint.equals(job.getExceptionFingerprint())) {
+        job.setExceptionCount(job.getExceptionCount() + 1);
+      }
+      else {
+        job.setException(ExceptionDigest.getSummary(exception));
+        job.setExceptionFingerprint(fingerprint);
+        job.setExceptionCount(1);
+        newFingerprint = true;
+      }
+
+      // unlock job so it can be dispatched again
+      job.setLockOwner(null);
+      job.setLockTime(null);
+      if (job.getRetries() <= 0 && jobExecutor.isMoveDeadJobs()
+        && jbpmContext.getJobSession().moveToDeadJobs(job)) {
+        log.warn(job + " ran out of retries, moved to dead jobs");
+        dead = true;
+      }
+      else {
+        long retryDelay = jobExecutor.getRetryPolicy().getRetryDelay(job, getFailureCount(job));
+        job.setDueDate(new Date(System.currentTimeMillis() + retryDelay));
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      log.warn("failed to save exception for " + job, e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        log.warn("failed to save exception for " + job, e);
+      }
+    }
+    if (newFingerprint && jobExecutor.isStoreExceptionTraces()) {
+      saveExceptionTrace(fingerprint, exception);
+    }
+    if (dead) return;
+    // notify job executor
+    jobExecutor.scheduleJob(job);
+    synchronized (jobExecutor) {
+      jobExecutor.notifyAll();
+    }
+  }
+
+  /**
+   * Stores the full stack trace in a transaction of its own, so that a concurrent insert of the
+   * same fingerprint by another job executor does not undo the job update.
+   */
+  private void saveExceptionTrace(String fingerprint, Exception exception) {
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      jbpmContext.getJobSession().saveExceptionTrace(fingerprint, exception);
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      if (log.isDebugEnabled()) log.debug("could not save exception trace " + fingerprint, e);
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        // most likely another job executor stored the same trace meanwhile
+        if (log.isDebugEnabled()) log.debug("could not save exception trace " + fingerprint, e);
+      }
+    }
+  }
+
+  /**
+   * Tells how many times the given job has failed, including this time. Each retry consumes
+   * one of the {@linkplain Job#getRetries() retries} the job started with.
+   */
+  private static int getFailureCount(Job job) {
+    return Math.max(Configs.getInt("jbpm.job.retries") - job.getRetries(), 0) + 1;
+  }
+
+  void unlockJob(Job job) {
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      // do not reattach existing job as it contains undesired updates
+      if (!refreshJob(jbpmContext.getSession(), job)) return;
+
+      // unlock job
+      job.setLockOwner(null);
+      job.setLockTime(null);
+      if (job.getException() != null)
+      {
+    	  job.setRetries(job.getRetries()+1) ;
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      log.warn("failed to unlock " + job, e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      // do not rethrow as this method is already called in response to an Error
+      log.warn("failed to unlock " + job, e);
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        log.warn("failed to unlock " + job, e);
+      }
+    }
+    // notify job executor
+    synchronized (jobExecutor) {
+      jobExecutor.notifyAll();
+    }
+  }
+
+  /**
+   * Refreshes the state of the given job from the database.
+   * 
+   * @return <code>true</code> if the job is still locked by the same owner, or
+   * <code>false</code> if the lock monitor has taken the lock away in the meantime
+   */
+  private static boolean refreshJob(Session session, Job job) {
+    String lockOwner = job.getLockOwner();
+    session.refresh(job);
+    if (lockOwner != null && lockOwner.equals(job.getLockOwner())) return true;
+
+    log.warn(lockOwner + " lost lock of " + job);
+    return false;
+  }
+
+  private static final Log log = LogFactory.getLog(JobRunner.class);
+}
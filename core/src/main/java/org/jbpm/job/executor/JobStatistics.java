@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+
+/**
+ * Execution counts and durations of a subset of the jobs, such as the jobs of a given class or
+ * process definition.
+ * 
+ * @see JobExecutorMetrics
+ */
+public class JobStatistics implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private long executedCount;
+  private long failedCount;
+  private final TimeHistogram waitTime = new TimeHistogram();
+  private final TimeHistogram executionTime = new TimeHistogram();
+
+  void record(long waitMillis, long executionMillis, boolean failed) {
+    synchronized (this) {
+      if (failed) failedCount++;
+      else executedCount++;
+    }
+    waitTime.record(waitMillis);
+    executionTime.record(executionMillis);
+  }
+
+  /** Number of jobs that executed successfully. */
+  public synchronized long getExecutedCount() {
+    return executedCount;
+  }
+
+  /** Number of job executions that threw an exception. */
+  public synchronized long getFailedCount() {
+    return failedCount;
+  }
+
+  /** Time elapsed between the due date of the jobs and the start of their execution. */
+  public TimeHistogram getWaitTime() {
+    return waitTime;
+  }
+
+  /** Time taken to execute the jobs, including the transaction commit. */
+  public TimeHistogram getExecutionTime() {
+    return executionTime;
+  }
+
+  public String toString() {
+    return "executed=" + getExecutedCount() + ", failed=" + getFailedCount() + ", wait=["
+      + waitTime + "], execution=[" + executionTime + "]";
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+
+/**
+ * Limits the rate at which the job executor acquires jobs of a process definition or job
+ * class, and how many of them it runs at once. The rate is enforced with a token bucket: the
+ * bucket holds up to <code>burst</code> tokens, refills at <code>rate</code> tokens per
+ * second, and each acquired job takes a token.
+ * 
+ * <pre>
+ * &lt;property name="throttles"&gt;
+ *   &lt;map&gt;
+ *     &lt;entry&gt;
+ *       &lt;key&gt;&lt;string value="bulk migration" /&gt;&lt;/key&gt;
+ *       &lt;value&gt;
+ *         &lt;bean class="org.jbpm.job.executor.JobThrottle"&gt;
+ *           &lt;property name="rate"&gt;&lt;double value="50" /&gt;&lt;/property&gt;
+ *           &lt;property name="maxInFlight"&gt;&lt;int value="4" /&gt;&lt;/property&gt;
+ *         &lt;/bean&gt;
+ *       &lt;/value&gt;
+ *     &lt;/entry&gt;
+ *   &lt;/map&gt;
+ * &lt;/property&gt;
+ * </pre>
+ * 
+ * @see JobExecutor#setThrottles(java.util.Map)
+ */
+public class JobThrottle implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private double rate;
+  private int burst;
+  private int maxInFlight;
+
+  private transient double tokens;
+  private transient long refillTime;
+  private transient int inFlight;
+
+  public JobThrottle() {
+  }
+
+  public JobThrottle(double rate, int maxInFlight) {
+    setRate(rate);
+    setMaxInFlight(maxInFlight);
+  }
+
+  /**
+   * Takes a token and counts the job as in flight, if the throttle allows another job.
+   * 
+   * @return <code>true</code> if the job may be acquired
+   */
+  public synchronized boolean tryAcquire(long now) {
+    if (maxInFlight > 0 && inFlight >= maxInFlight) return false;
+    if (rate > 0) {
+      refill(now);
+      if (tokens < 1) return false;
+      tokens--;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Records that an acquired job was processed.
+   * 
+   * @return <code>true</code> if the throttle was full and now has room again
+   */
+  public synchronized boolean release() {
+    if (inFlight == 0) return false;
+    boolean full = maxInFlight > 0 && inFlight >= maxInFlight;
+    inFlight--;
+    return full;
+  }
+
+  /**
+   * Gives back the token of a job that was not acquired after all.
+   */
+  public synchronized void refund() {
+    if (inFlight > 0) inFlight--;
+    if (rate > 0) tokens = Math.min(tokens + 1, getBucketSize());
+  }
+
+  /**
+   * Tells whether the throttle allows no further job right now.
+   */
+  public synchronized boolean isExhausted(long now) {
+    if (maxInFlight > 0 && inFlight >= maxInFlight) return true;
+    if (rate > 0) {
+      refill(now);
+      return tokens < 1;
+    }
+    return false;
+  }
+
+  /**
+   * Tells how long it takes until the bucket holds a token again.
+   * 
+   * @return the delay in milliseconds, zero if a token is available
+   */
+  public synchronized long getRefillDelay(long now) {
+    if (rate <= 0) return 0;
+    refill(now);
+    return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / rate);
+  }
+
+  /**
+   * Forgets the jobs in flight and fills the bucket.
+   */
+  public synchronized void reset() {
+    inFlight = 0;
+    refillTime = 0;
+  }
+
+  private void refill(long now) {
+    if (refillTime == 0) {
+      tokens = getBucketSize();
+    }
+    else if (now > refillTime) {
+      tokens = Math.min(tokens + (now - refillTime) * rate / 1000, getBucketSize());
+    }
+    refillTime = now;
+  }
+
+  private int getBucketSize() {
+    return burst > 0 ? burst : Math.max((int) Math.ceil(rate), 1);
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets the number of jobs acquired per second, on average. When zero, the rate is unlimited.
+   */
+  public void setRate(double rate) {
+    if (rate < 0) throw new IllegalArgumentException("rate must not be negative");
+    this.rate = rate;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  /**
+   * Sets the number of jobs acquired at once after a quiet period. Unless set, the burst
+   * equals the rate, rounded up.
+   */
+  public void setBurst(int burst) {
+    if (burst < 0) throw new IllegalArgumentException("burst must not be negative");
+    this.burst = burst;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Sets the number of jobs that may be acquired and not yet processed at any time, across
+   * all lanes of the job executor. When zero, the number is unlimited.
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    if (maxInFlight < 0) throw new IllegalArgumentException("max in flight must not be negative");
+    this.maxInFlight = maxInFlight;
+  }
+
+  public String toString() {
+    return "JobThrottle(rate=" + rate + ", maxInFlight=" + maxInFlight + ')';
+  }
+}
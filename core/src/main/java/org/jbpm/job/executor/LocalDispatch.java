@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jbpm.job.Job;
+
+/**
+ * Hands jobs created by a transaction straight to the job executor running in the same
+ * process. Room is reserved for the jobs as they are created; once the transaction commits,
+ * the dispatcher locks them by identifier without querying the database for acquirable jobs.
+ * Jobs stay unlocked until then, so the transaction that created them can still delete them,
+ * for instance by ending the process instance. If the transaction rolls back, the reserved
+ * room is given back.
+ */
+public class LocalDispatch implements Synchronization {
+
+  private final JobExecutor jobExecutor;
+  private final List jobs = new ArrayList();
+  private final List lanes = new ArrayList();
+
+  public LocalDispatch(JobExecutor jobExecutor) {
+    this.jobExecutor = jobExecutor;
+  }
+
+  /**
+   * Reserves room for the given job in the job executor, provided the job is due and a lane
+   * of the job executor accepts it and has room for it.
+   * 
+   * @return <code>true</code> if the job will be dispatched after commit
+   */
+  public boolean dispatchJob(Job job) {
+    // future and suspended jobs go through regular acquisition
+    Date dueDate = job.getDueDate();
+    if (dueDate != null && dueDate.after(new Date()) || job.isSuspended()) return false;
+
+    JobLane lane = jobExecutor.reserveLocalJob(job);
+    if (lane == null) return false;
+
+    jobs.add(job);
+    lanes.add(lane);
+    return true;
+  }
+
+  public void beforeCompletion() {
+  }
+
+  public void afterCompletion(int status) {
+    boolean committed = status == Status.STATUS_COMMITTED;
+    for (int i = 0, n = jobs.size(); i < n; i++) {
+      JobLane lane = (JobLane) lanes.get(i);
+      if (committed) {
+        lane.addLocalJob(((Job) jobs.get(i)).getId());
+      }
+      else {
+        lane.cancelLocalJob();
+      }
+    }
+
+    if (committed) {
+      if (log.isDebugEnabled()) log.debug("dispatching " + jobs + " locally");
+      synchronized (jobExecutor) {
+        jobExecutor.notifyAll();
+      }
+    }
+  }
+
+  private static final Log log = LogFactory.getLog(LocalDispatch.class);
+}
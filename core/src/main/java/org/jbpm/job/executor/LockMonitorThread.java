@@ -1,15 +1,19 @@
 package org.jbpm.job.executor;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.jbpm.JbpmConfiguration;
 import org.jbpm.JbpmContext;
-import org.jbpm.job.Job;
+import org.jbpm.db.JobSession;
+import org.jbpm.job.JobExecutorLease;
 import org.jbpm.persistence.db.DbPersistenceService;
 import org.jbpm.persistence.db.StaleObjectLogConfigurer;
 
@@ -19,6 +23,8 @@ public class LockMonitorThread extends Thread implements Deactivable {
 
   private final JobExecutor jobExecutor;
   private volatile boolean active = true;
+  /** time at which the partition leases renewed last expire */
+  private long leaseExpiration;
 
   public LockMonitorThread(JobExecutor jobExecutor) {
     this(DEFAULT_NAME, jobExecutor);
@@ -38,35 +44,103 @@ public class LockMonitorThread extends Thread implements Deactivable {
   }
 
   public void run() {
+    long nextUnlockTime = 0;
+    long nextRenewalTime = 0;
     while (active) {
-      try {
-        unlockOverdueJobs();
+      long now = System.currentTimeMillis();
+      if (now >= nextRenewalTime) {
+        try {
+          renewJobLocks();
+        }
+        catch (RuntimeException e) {
+          log.error("exception in " + getName(), e);
+        }
+        // renew locks three times per max lock time
+        nextRenewalTime = now + jobExecutor.getMaxLockTime() / 3;
       }
-      catch (RuntimeException e) {
-        log.error("exception in " + getName(), e);
+      if (now >= nextUnlockTime) {
+        try {
+          unlockOverdueJobs();
+        }
+        catch (RuntimeException e) {
+          log.error("exception in " + getName(), e);
+        }
+        nextUnlockTime = now + jobExecutor.getLockMonitorInterval();
       }
-      if (active) {
+
+      long waitPeriod = Math.min(nextUnlockTime, nextRenewalTime) - now;
+      if (jobExecutor.getPartitionCount() > 0) {
+        try {
+          renewPartitionLeases();
+        }
+        catch (RuntimeException e) {
+          log.error("exception in " + getName(), e);
+        }
+        // renew leases three times per lease duration
+        waitPeriod = Math.min(waitPeriod, jobExecutor.getPartitionLeaseDuration() / 3);
+      }
+
+      if (active && waitPeriod > 0) {
         try {
-          sleep(jobExecutor.getLockMonitorInterval());
+          sleep(waitPeriod);
         }
         catch (InterruptedException e) {
           if (log.isDebugEnabled()) log.debug(getName() + " got interrupted");
         }
       }
     }
+
+    if (jobExecutor.getPartitionCount() > 0) {
+      try {
+        releasePartitionLeases();
+      }
+      catch (RuntimeException e) {
+        log.error("exception in " + getName(), e);
+      }
+    }
     log.info(getName() + " leaves cyberspace");
   }
 
+  /**
+   * Renews the locks of the jobs held by the job executor, whether waiting in queue or in
+   * progress, so that the locks do not become overdue.
+   */
+  protected void renewJobLocks() {
+    Set heldJobIds = jobExecutor.getHeldJobIds();
+    if (heldJobIds.isEmpty()) return;
+
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      int renewedCount = jbpmContext.getJobSession().renewJobLocks(heldJobIds,
+        jobExecutor.getLockOwners(), new Date());
+      if (log.isDebugEnabled()) {
+        log.debug("renewed " + renewedCount + " of " + heldJobIds.size() + " job locks");
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      jbpmContext.close();
+    }
+  }
+
+  /**
+   * Unlocks jobs whose locks have not been renewed within the max lock time, so that they can
+   * be dispatched again. A transaction still executing such a job fails to commit.
+   */
   protected void unlockOverdueJobs() {
     JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
     try {
       Date threshold = new Date(System.currentTimeMillis() - jobExecutor.getMaxLockTime());
-      List overdueJobs = jbpmContext.getJobSession().findJobsWithOverdueLockTime(threshold);
-      for (Iterator i = overdueJobs.iterator(); i.hasNext();) {
-        Job job = (Job) i.next();
-        if (log.isDebugEnabled()) log.debug("unlocking " + job);
-        job.setLockOwner(null);
-        job.setLockTime(null);
+      int unlockedCount = jbpmContext.getJobSession().unlockOverdueJobs(threshold);
+      if (unlockedCount > 0) {
+        log.info("unlocked " + unlockedCount + " jobs locked before " + threshold);
       }
     }
     catch (RuntimeException e) {
@@ -93,6 +167,179 @@ public class LockMonitorThread extends Thread implements Deactivable {
     }
   }
 
+  /**
+   * Announces the membership of the job executor, renews the leases it holds and divides the
+   * partitions evenly among the members. The job executor keeps up to its fair share of the
+   * partitions it holds, gives up the rest and claims free or expired partitions until it
+   * reaches its fair share. Concurrent changes made by other members are detected by optimistic
+   * locking; the losing member rolls back and tries again in the next round.
+   */
+  protected void renewPartitionLeases() {
+    int partitionCount = jobExecutor.getPartitionCount();
+    String owner = jobExecutor.getLeaseOwner();
+    long now = System.currentTimeMillis();
+    Date currentTime = new Date(now);
+    Date expiration = new Date(now + jobExecutor.getPartitionLeaseDuration());
+    Set partitions = new TreeSet();
+
+    if (now >= leaseExpiration) {
+      // leases expired, other members may have claimed the partitions
+      jobExecutor.setOwnedPartitions(Collections.EMPTY_SET);
+    }
+
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      JobSession jobSession = jbpmContext.getJobSession();
+      JobExecutorLease membership = null;
+      JobExecutorLease[] partitionLeases = new JobExecutorLease[partitionCount];
+      // count this job executor
+      int memberCount = 1;
+
+      List leases = jobSession.findJobExecutorLeases();
+      for (Iterator i = leases.iterator(); i.hasNext();) {
+        JobExecutorLease lease = (JobExecutorLease) i.next();
+        if (lease.isMember()) {
+          if (lease.getName().equals(JobExecutorLease.getMemberName(owner))) {
+            membership = lease;
+          }
+          else if (lease.isHeld(currentTime)) {
+            memberCount++;
+          }
+          else if (lease.getExpiration() == null
+            || now - lease.getExpiration().getTime() > jobExecutor.getPartitionLeaseDuration()) {
+            // member has been gone for a while
+            jobSession.deleteJobExecutorLease(lease);
+          }
+        }
+        else {
+          int partition = lease.getPartition();
+          if (partition >= 0 && partition < partitionCount) {
+            partitionLeases[partition] = lease;
+          }
+        }
+      }
+
+      // announce membership
+      if (membership == null) {
+        membership = new JobExecutorLease(JobExecutorLease.getMemberName(owner));
+        jobSession.saveJobExecutorLease(membership);
+      }
+      membership.grant(owner, expiration);
+
+      // create missing partition leases
+      for (int partition = 0; partition < partitionCount; partition++) {
+        if (partitionLeases[partition] == null) {
+          JobExecutorLease lease = new JobExecutorLease(
+            JobExecutorLease.getPartitionName(partition));
+          jobSession.saveJobExecutorLease(lease);
+          partitionLeases[partition] = lease;
+        }
+      }
+
+      // renew held partitions up to the fair share, give up the rest
+      int fairShare = (partitionCount + memberCount - 1) / memberCount;
+      for (int partition = 0; partition < partitionCount; partition++) {
+        JobExecutorLease lease = partitionLeases[partition];
+        if (owner.equals(lease.getOwner())) {
+          if (partitions.size() < fairShare) {
+            lease.grant(owner, expiration);
+            partitions.add(new Integer(partition));
+          }
+          else {
+            lease.release();
+          }
+        }
+      }
+
+      // claim free partitions up to the fair share
+      for (int partition = 0; partition < partitionCount
+        && partitions.size() < fairShare; partition++) {
+        JobExecutorLease lease = partitionLeases[partition];
+        if (!lease.isHeld(currentTime)) {
+          lease.grant(owner, expiration);
+          partitions.add(new Integer(partition));
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      partitions = null;
+      if (!DbPersistenceService.isLockingException(e)) throw e;
+      // keep locking exception quiet
+      StaleObjectLogConfigurer.getStaleObjectExceptionsLog()
+        .error("could not renew partition leases", e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        partitions = null;
+        if (!DbPersistenceService.isLockingException(e)) throw e;
+        // keep locking exception quiet
+        StaleObjectLogConfigurer.getStaleObjectExceptionsLog()
+          .error("could not renew partition leases", e);
+      }
+    }
+
+    if (partitions != null) {
+      jobExecutor.setOwnedPartitions(partitions);
+      leaseExpiration = expiration.getTime();
+    }
+  }
+
+  /**
+   * Gives up the leases held by the job executor so that other members can claim its
+   * partitions right away.
+   */
+  protected void releasePartitionLeases() {
+    String owner = jobExecutor.getLeaseOwner();
+    jobExecutor.setOwnedPartitions(Collections.EMPTY_SET);
+
+    JbpmContext jbpmContext = jobExecutor.getJbpmConfiguration().createJbpmContext();
+    try {
+      JobSession jobSession = jbpmContext.getJobSession();
+      List leases = jobSession.findJobExecutorLeases();
+      for (Iterator i = leases.iterator(); i.hasNext();) {
+        JobExecutorLease lease = (JobExecutorLease) i.next();
+        if (owner.equals(lease.getOwner())) {
+          if (lease.isMember()) {
+            jobSession.deleteJobExecutorLease(lease);
+          }
+          else {
+            lease.release();
+          }
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      jbpmContext.setRollbackOnly();
+      if (!DbPersistenceService.isLockingException(e)) throw e;
+      // keep locking exception quiet, leases will expire anyway
+      StaleObjectLogConfigurer.getStaleObjectExceptionsLog()
+        .error("could not release partition leases", e);
+    }
+    catch (Error e) {
+      jbpmContext.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      try {
+        jbpmContext.close();
+      }
+      catch (RuntimeException e) {
+        if (!DbPersistenceService.isLockingException(e)) throw e;
+        // keep locking exception quiet, leases will expire anyway
+        StaleObjectLogConfigurer.getStaleObjectExceptionsLog()
+          .error("could not release partition leases", e);
+      }
+    }
+  }
+
   /**
    * @deprecated As of jBPM 3.2.3, replaced by {@link #deactivate()}
    */
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.io.Serializable;
+
+/**
+ * Distribution of durations in milliseconds over buckets of exponentially growing width. The
+ * histogram keeps a fixed amount of state regardless of the number of samples recorded, so
+ * percentiles are approximated by the upper bound of the bucket they fall in.
+ */
+public class TimeHistogram implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** upper bounds of the buckets, in milliseconds; the last bucket is unbounded */
+  private static final long[] BUCKET_BOUNDS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000, 300000
+  };
+
+  private final long[] bucketCounts = new long[BUCKET_BOUNDS.length + 1];
+  private long count;
+  private long total;
+  private long max;
+
+  public synchronized void record(long millis) {
+    if (millis < 0) millis = 0;
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+      bucket++;
+    }
+    bucketCounts[bucket]++;
+    count++;
+    total += millis;
+    if (millis > max) max = millis;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  public synchronized long getMean() {
+    return count > 0 ? total / count : 0;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * Estimates the duration below which the given fraction of the samples fall.
+   * 
+   * @param fraction a value between 0 and 1, such as 0.95 for the 95th percentile
+   */
+  public synchronized long getPercentile(double fraction) {
+    if (count == 0) return 0;
+    long rank = (long) Math.ceil(fraction * count);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKET_BOUNDS.length; bucket++) {
+      seen += bucketCounts[bucket];
+      if (seen >= rank) return Math.min(BUCKET_BOUNDS[bucket], max);
+    }
+    return max;
+  }
+
+  public synchronized void reset() {
+    for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+      bucketCounts[bucket] = 0;
+    }
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  public synchronized String toString() {
+    return "count=" + count + ", mean=" + getMean() + "ms, p95=" + getPercentile(0.95)
+      + "ms, max=" + max + "ms";
+  }
+}
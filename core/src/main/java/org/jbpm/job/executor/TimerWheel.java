@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical timing wheel holding the due dates of jobs that fall due before a certain
+ * horizon. Each level divides its span in a fixed number of buckets; entries too far in the
+ * future for a level go to the next, coarser level and cascade down as time advances. Non-empty
+ * buckets are kept in a priority queue, so that the next expiration is known without scanning
+ * the wheel.
+ * 
+ * <p>
+ * The dispatcher thread loads the wheel with the jobs due within a look-ahead window and then
+ * sleeps until the earliest bucket expires, rather than polling the database for the next due
+ * date.
+ * </p>
+ */
+class TimerWheel {
+
+  private final long tickMillis;
+  private final int wheelSize;
+
+  private Level level;
+  private final PriorityQueue queue = new PriorityQueue(11, new BucketComparator());
+  /** jobs known to be due, pending retrieval */
+  private final List dueJobIds = new ArrayList();
+  private long horizon;
+  private int size;
+
+  TimerWheel(long tickMillis, int wheelSize) {
+    if (tickMillis <= 0) throw new IllegalArgumentException("tick must be positive");
+    if (wheelSize <= 1) throw new IllegalArgumentException("wheel size must exceed one");
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    reset(System.currentTimeMillis(), 0);
+  }
+
+  /**
+   * Discards all entries and restarts the wheel at the given time.
+   * 
+   * @param horizon the time beyond which {@link #schedule(long, long)} ignores entries
+   */
+  synchronized void reset(long now, long horizon) {
+    level = new Level(tickMillis, now);
+    queue.clear();
+    dueJobIds.clear();
+    this.horizon = horizon;
+    size = 0;
+  }
+
+  /**
+   * Tells the time up to which this wheel tracks due dates.
+   */
+  synchronized long getHorizon() {
+    return horizon;
+  }
+
+  /**
+   * Tells the number of entries in this wheel, including due entries not yet retrieved.
+   */
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Adds an entry for the given job, unless its due date lies beyond the horizon. Entries fall
+   * due at the first tick not earlier than their due date, so that a job is never retrieved
+   * before the database considers it acquirable.
+   */
+  synchronized void schedule(long jobId, long dueTime) {
+    if (dueTime >= horizon) return;
+    // round up to the next tick
+    add(new Entry(jobId, dueTime + tickMillis - 1));
+    size++;
+  }
+
+  private void add(Entry entry) {
+    if (!level.add(entry)) dueJobIds.add(new Long(entry.jobId));
+  }
+
+  /**
+   * Tells the earliest time at which some entry falls due.
+   * 
+   * @return the expiration time of the earliest bucket, the current time if due entries are
+   * pending retrieval, or {@link Long#MAX_VALUE} if this wheel is empty
+   */
+  synchronized long nextExpiration() {
+    if (!dueJobIds.isEmpty()) return level.currentTime;
+    Bucket bucket = (Bucket) queue.peek();
+    return bucket != null ? bucket.expiration : Long.MAX_VALUE;
+  }
+
+  /**
+   * Advances this wheel to the given time and removes the entries due by then.
+   * 
+   * @return the identifiers of the due jobs, as {@link Long} objects
+   */
+  synchronized List expire(long now) {
+    for (Bucket bucket; (bucket = (Bucket) queue.peek()) != null && bucket.expiration <= now;) {
+      queue.poll();
+      level.advanceClock(bucket.expiration);
+      // entries cascade to a finer level or fall due
+      for (Iterator i = bucket.flush().iterator(); i.hasNext();) {
+        add((Entry) i.next());
+      }
+    }
+    level.advanceClock(now);
+
+    if (dueJobIds.isEmpty()) return Collections.EMPTY_LIST;
+    List jobIds = new ArrayList(dueJobIds);
+    dueJobIds.clear();
+    size -= jobIds.size();
+    return jobIds;
+  }
+
+  private class Level {
+
+    final long tick;
+    final long interval;
+    final Bucket[] buckets;
+    long currentTime;
+    private Level overflow;
+
+    Level(long tick, long startTime) {
+      this.tick = tick;
+      interval = tick * wheelSize;
+      buckets = new Bucket[wheelSize];
+      for (int i = 0; i < wheelSize; i++) {
+        buckets[i] = new Bucket();
+      }
+      currentTime = startTime - startTime % tick;
+    }
+
+    /**
+     * @return <code>false</code> if the entry is due already
+     */
+    boolean add(Entry entry) {
+      if (entry.dueTime < currentTime + tick) return false;
+
+      if (entry.dueTime < currentTime + interval) {
+        long virtualId = entry.dueTime / tick;
+        Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+        bucket.add(entry);
+        // enqueue bucket if its expiration changed
+        if (bucket.setExpiration(virtualId * tick)) queue.add(bucket);
+        return true;
+      }
+
+      if (overflow == null) overflow = new Level(interval, currentTime);
+      return overflow.add(entry);
+    }
+
+    void advanceClock(long time) {
+      if (time >= currentTime + tick) {
+        currentTime = time - time % tick;
+        if (overflow != null) overflow.advanceClock(currentTime);
+      }
+    }
+  }
+
+  private static class Bucket {
+
+    private List entries = new ArrayList();
+    long expiration = -1;
+
+    void add(Entry entry) {
+      entries.add(entry);
+    }
+
+    boolean setExpiration(long expiration) {
+      if (this.expiration == expiration) return false;
+      this.expiration = expiration;
+      return true;
+    }
+
+    List flush() {
+      List flushedEntries = entries;
+      entries = new ArrayList();
+      expiration = -1;
+      return flushedEntries;
+    }
+  }
+
+  private static class BucketComparator implements Comparator {
+
+    public int compare(Object o1, Object o2) {
+      long expiration1 = ((Bucket) o1).expiration;
+      long expiration2 = ((Bucket) o2).expiration;
+      return expiration1 < expiration2 ? -1 : expiration1 == expiration2 ? 0 : 1;
+    }
+  }
+
+  private static class Entry {
+
+    final long jobId;
+    final long dueTime;
+
+    Entry(long jobId, long dueTime) {
+      this.jobId = jobId;
+      this.dueTime = dueTime;
+    }
+  }
+}
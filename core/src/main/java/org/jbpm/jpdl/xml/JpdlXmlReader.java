@@ -475,6 +475,8 @@ public class JpdlXmlReader implements ProblemListener {
     else if (readBoolean(asyncText, false)) {
       node.setAsync(true);
     }
+    String asyncPriorityText = nodeElement.attributeValue("async-priority");
+    if (asyncPriorityText != null) node.setAsyncPriority(Task.parsePriority(asyncPriorityText));
 
     // parse common subelements
     readNodeTimers(nodeElement, node);
@@ -649,6 +651,8 @@ public class JpdlXmlReader implements ProblemListener {
     else if (readBoolean(asyncText, false)) {
       action.setAsync(true);
     }
+    String asyncPriorityText = actionElement.attributeValue("async-priority");
+    if (asyncPriorityText != null) action.setAsyncPriority(Task.parsePriority(asyncPriorityText));
   }
 
   protected void readExceptionHandlers(Element graphDomElement, GraphElement graphElement) {
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.logging.LoggingService;
+import org.jbpm.logging.log.ProcessLog;
+import org.jbpm.persistence.PersistenceService;
+import org.jbpm.persistence.db.DbPersistenceService;
+
+/**
+ * Logging service that hands the logs of a jBPM context over to a background writer once the
+ * transaction commits. Logs reach the database shortly after the transaction, in batches that
+ * span many transactions, and the transaction itself does not wait for log inserts. Logs of
+ * rolled back transactions are discarded.
+ * <p>
+ * Logs that cascade to other entities, such as byte array updates, are saved along with the
+ * transaction as {@link DbLoggingService} does.
+ * </p>
+ * 
+ * @see AsyncDbLoggingServiceFactory
+ */
+public class AsyncDbLoggingService implements LoggingService, Synchronization {
+
+  private static final long serialVersionUID = 1L;
+
+  private final AsyncLogWriter logWriter;
+  private final PersistenceService persistenceService;
+  private final List processLogs = new ArrayList();
+  private ProcessLogRecord[] records;
+  private boolean synchronizationRegistered;
+
+  AsyncDbLoggingService(AsyncLogWriter logWriter) {
+    JbpmContext jbpmContext = JbpmContext.getCurrentJbpmContext();
+    if (jbpmContext == null) throw new JbpmException("no active jbpm context");
+    persistenceService = jbpmContext.getServices().getPersistenceService();
+    this.logWriter = logWriter;
+  }
+
+  public void log(ProcessLog processLog) {
+    // logs are written after the transaction, see DbLoggingService
+    if (persistenceService instanceof DbPersistenceService) {
+      DbPersistenceService dbPersistenceService = (DbPersistenceService) persistenceService;
+      if (dbPersistenceService.isTransactionActive()) {
+        if (logWriter.getProcessLogWriter().isStatelessWritable(processLog)) {
+          if (!synchronizationRegistered) {
+            dbPersistenceService.getTransaction().registerSynchronization(this);
+            synchronizationRegistered = true;
+          }
+          processLogs.add(processLog);
+        }
+        else {
+          Session session = dbPersistenceService.getSession();
+          session.save(processLog);
+        }
+      }
+    }
+  }
+
+  public void close() {
+  }
+
+  public void beforeCompletion() {
+    // the session is flushed, copy the logs while the entities they refer to are at hand
+    records = logWriter.getProcessLogWriter().createRecords(processLogs);
+    processLogs.clear();
+  }
+
+  public void afterCompletion(int status) {
+    if (status == Status.STATUS_COMMITTED && records != null) logWriter.enqueue(records);
+    records = null;
+    processLogs.clear();
+    synchronizationRegistered = false;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.io.File;
+
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.svc.Service;
+import org.jbpm.svc.ServiceFactory;
+
+/**
+ * Creates {@linkplain AsyncDbLoggingService asynchronous logging services} and runs the
+ * background writer they share. The writer starts with the first service and stops when the
+ * jBPM configuration closes, after writing the queued logs.
+ * <p>
+ * The following fields can be configured:
+ * </p>
+ * <ul>
+ * <li><code>queueSize</code>: maximum number of logs waiting for the writer, 10000 by
+ * default</li>
+ * <li><code>batchSize</code>: number of logs the writer takes at once, 1000 by default</li>
+ * <li><code>flushInterval</code>: milliseconds the writer waits for more logs before it looks
+ * for spilled logs, 1000 by default</li>
+ * <li><code>overflowPolicy</code>: what committing transactions do when the queue is full;
+ * <code>block</code> waits for room (the default), <code>drop</code> discards the logs and
+ * <code>spill</code> appends them to the spill file</li>
+ * <li><code>spillFile</code>: file for spilled logs, <code>jbpm-logs.spill</code> in the
+ * temporary directory by default</li>
+ * </ul>
+ */
+public class AsyncDbLoggingServiceFactory implements ServiceFactory {
+
+  private static final long serialVersionUID = 1L;
+
+  private int queueSize = 10000;
+  private int batchSize = 1000;
+  private long flushInterval = 1000;
+  private String overflowPolicy = AsyncLogWriter.OVERFLOW_BLOCK;
+  private String spillFile;
+
+  private transient AsyncLogWriter logWriter;
+
+  public synchronized Service openService() {
+    if (logWriter == null) {
+      JbpmContext jbpmContext = JbpmContext.getCurrentJbpmContext();
+      if (jbpmContext == null) throw new JbpmException("no active jbpm context");
+
+      File spillFile = null;
+      if (AsyncLogWriter.OVERFLOW_SPILL.equals(overflowPolicy)) {
+        spillFile = this.spillFile != null ? new File(this.spillFile) : new File(System
+          .getProperty("java.io.tmpdir"), "jbpm-logs.spill");
+      }
+      logWriter = new AsyncLogWriter(jbpmContext.getSessionFactory(), queueSize, batchSize,
+        flushInterval, overflowPolicy, spillFile);
+      logWriter.start();
+    }
+    return new AsyncDbLoggingService(logWriter);
+  }
+
+  public synchronized void close() {
+    if (logWriter != null) {
+      logWriter.deactivate();
+      logWriter = null;
+    }
+  }
+
+  AsyncLogWriter getLogWriter() {
+    return logWriter;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getFlushInterval() {
+    return flushInterval;
+  }
+
+  public void setFlushInterval(long flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+
+  public String getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public String getSpillFile() {
+    return spillFile;
+  }
+
+  public void setSpillFile(String spillFile) {
+    this.spillFile = spillFile;
+  }
+}
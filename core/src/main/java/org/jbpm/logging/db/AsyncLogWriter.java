@@ -0,0 +1,427 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+/**
+ * Background thread that writes the logs of committed transactions. The thread takes as many
+ * queued transactions as fit in a batch and writes them in a single transaction of its own,
+ * through a stateless session. If the batch fails, the transactions are written one at a
+ * time, so that a failing transaction does not take others down with it.
+ * <p>
+ * The queue holds up to a fixed number of logs. When the queue is full, the overflow policy
+ * tells whether committing transactions wait for room, drop their logs or spill them to a
+ * local file. Spilled logs are written once the queue runs empty. Before a spilled
+ * transaction is written, the writer checks whether its logs reached the database already,
+ * so that spilled logs can be written again after a crash without being duplicated.
+ * </p>
+ */
+class AsyncLogWriter extends Thread {
+
+  static final String OVERFLOW_BLOCK = "block";
+  static final String OVERFLOW_DROP = "drop";
+  static final String OVERFLOW_SPILL = "spill";
+
+  /** number of times the logs of a transaction are tried before they are dropped */
+  static final int MAX_ATTEMPTS = 3;
+
+  private final SessionFactory sessionFactory;
+  private final ProcessLogWriter processLogWriter;
+  private final int queueSize;
+  private final int batchSize;
+  private final long flushInterval;
+  private final String overflowPolicy;
+  private final File spillFile;
+
+  private final BlockingQueue queue = new LinkedBlockingQueue();
+  /** one permit per log the queue can take on */
+  private final Semaphore queuePermits;
+  private final Object spillLock = new Object();
+  private volatile boolean active = true;
+
+  AsyncLogWriter(SessionFactory sessionFactory, int queueSize, int batchSize,
+    long flushInterval, String overflowPolicy, File spillFile) {
+    super("AsyncLogWriter");
+    if (!OVERFLOW_BLOCK.equals(overflowPolicy) && !OVERFLOW_DROP.equals(overflowPolicy)
+      && !OVERFLOW_SPILL.equals(overflowPolicy)) {
+      throw new IllegalArgumentException("unknown overflow policy: " + overflowPolicy);
+    }
+    this.sessionFactory = sessionFactory;
+    this.processLogWriter = new ProcessLogWriter(sessionFactory);
+    this.queueSize = queueSize;
+    this.batchSize = batchSize;
+    this.flushInterval = flushInterval;
+    this.overflowPolicy = overflowPolicy;
+    this.spillFile = spillFile;
+    queuePermits = new Semaphore(queueSize);
+    setDaemon(true);
+  }
+
+  ProcessLogWriter getProcessLogWriter() {
+    return processLogWriter;
+  }
+
+  /**
+   * Queues the logs of a committed transaction, applying the overflow policy if the queue is
+   * full.
+   */
+  void enqueue(ProcessLogRecord[] records) {
+    if (records.length == 0) return;
+
+    LogGroup group = new LogGroup(records);
+    int permits = getPermits(group);
+    if (!active) {
+      overflow(group, "log writer is closed");
+    }
+    else if (queuePermits.tryAcquire(permits)) {
+      queue.add(group);
+    }
+    else if (OVERFLOW_BLOCK.equals(overflowPolicy)) {
+      try {
+        queuePermits.acquire(permits);
+        queue.add(group);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("interrupted while waiting for room in the log queue, dropping "
+          + records.length + " logs");
+      }
+    }
+    else {
+      overflow(group, "log queue is full");
+    }
+  }
+
+  private int getPermits(LogGroup group) {
+    // a transaction with more logs than the queue holds takes the whole queue
+    return Math.min(group.records.length, queueSize);
+  }
+
+  private void overflow(LogGroup group, String reason) {
+    if (OVERFLOW_SPILL.equals(overflowPolicy)) {
+      if (log.isDebugEnabled()) {
+        log.debug(reason + ", spilling " + group.records.length + " logs to " + spillFile);
+      }
+      spill(group);
+    }
+    else {
+      log.warn(reason + ", dropping " + group.records.length + " logs");
+    }
+  }
+
+  public void run() {
+    replaySpilledLogs();
+    while (active || !queue.isEmpty()) {
+      LogGroup group;
+      try {
+        group = (LogGroup) queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        continue;
+      }
+      if (group == null) {
+        replaySpilledLogs();
+        continue;
+      }
+
+      // take as many queued transactions as fit in a batch
+      List groups = new ArrayList();
+      int logCount = 0;
+      do {
+        groups.add(group);
+        logCount += group.records.length;
+      } while (logCount < batchSize && (group = (LogGroup) queue.poll()) != null);
+
+      try {
+        writeGroups(groups, false);
+      }
+      finally {
+        for (Iterator i = groups.iterator(); i.hasNext();) {
+          queuePermits.release(getPermits((LogGroup) i.next()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops taking logs and waits until the queued logs are written.
+   */
+  void deactivate() {
+    active = false;
+    try {
+      join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("interrupted while waiting for " + queue.size()
+        + " queued transactions to be written");
+    }
+  }
+
+  /**
+   * Waits until the queued logs are written, for testing purposes.
+   * 
+   * @return <code>true</code> if the logs were written in time
+   */
+  boolean awaitWritten(long timeout) throws InterruptedException {
+    if (!queuePermits.tryAcquire(queueSize, timeout, TimeUnit.MILLISECONDS)) return false;
+    queuePermits.release(queueSize);
+    return true;
+  }
+
+  private void writeGroups(List groups, boolean replay) {
+    try {
+      writeInTransaction(groups, replay);
+    }
+    catch (RuntimeException e) {
+      if (groups.size() == 1) {
+        writeFailed((LogGroup) groups.get(0), e);
+        return;
+      }
+      log.debug("could not write logs of " + groups.size()
+        + " transactions together, writing them one at a time", e);
+      for (Iterator i = groups.iterator(); i.hasNext();) {
+        LogGroup group = (LogGroup) i.next();
+        try {
+          writeInTransaction(Collections.singletonList(group), replay);
+        }
+        catch (RuntimeException e2) {
+          writeFailed(group, e2);
+        }
+      }
+    }
+  }
+
+  private void writeInTransaction(List groups, boolean replay) {
+    StatelessSession statelessSession = sessionFactory.openStatelessSession();
+    try {
+      Transaction transaction = statelessSession.beginTransaction();
+      try {
+        List processLogs = new ArrayList();
+        Set groupKeys = new HashSet();
+        for (Iterator i = groups.iterator(); i.hasNext();) {
+          LogGroup group = (LogGroup) i.next();
+          if (replay) {
+            // the same logs may be spilled twice, or be in the database already
+            Object groupKey = group.getKey();
+            if (groupKey != null
+              && (!groupKeys.add(groupKey) || processLogWriter.isWritten(statelessSession,
+                group.records))) {
+              if (log.isDebugEnabled()) {
+                log.debug("skipping " + group.records.length + " logs written already");
+              }
+              continue;
+            }
+          }
+          processLogs.addAll(processLogWriter.restoreLogs(group.records));
+        }
+        processLogWriter.writeLogs(statelessSession, processLogs);
+        transaction.commit();
+      }
+      catch (RuntimeException e) {
+        try {
+          transaction.rollback();
+        }
+        catch (RuntimeException e2) {
+          log.debug("could not roll back log transaction", e2);
+        }
+        throw e;
+      }
+    }
+    finally {
+      statelessSession.close();
+    }
+  }
+
+  private void writeFailed(LogGroup group, RuntimeException e) {
+    group.attempts++;
+    if (OVERFLOW_SPILL.equals(overflowPolicy) && group.attempts < MAX_ATTEMPTS) {
+      log.warn("could not write " + group.records.length + " logs, spilling them to "
+        + spillFile, e);
+      spill(group);
+    }
+    else {
+      log.error("could not write " + group.records.length + " logs, dropping them", e);
+    }
+  }
+
+  /**
+   * Appends the logs of a transaction to the spill file, to be written once the queue runs
+   * empty.
+   */
+  void spill(ProcessLogRecord[] records) {
+    spill(new LogGroup(records));
+  }
+
+  private void spill(LogGroup group) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream objectStream = new ObjectOutputStream(bytes);
+      objectStream.writeObject(group);
+      objectStream.close();
+
+      synchronized (spillLock) {
+        DataOutputStream fileStream = new DataOutputStream(new FileOutputStream(spillFile, true));
+        try {
+          fileStream.writeInt(bytes.size());
+          bytes.writeTo(fileStream);
+        }
+        finally {
+          fileStream.close();
+        }
+      }
+    }
+    catch (IOException e) {
+      log.error("could not spill " + group.records.length + " logs to " + spillFile
+        + ", dropping them", e);
+    }
+  }
+
+  /**
+   * Writes the logs spilled to file. The spill file is set aside first, so that logs spilled
+   * meanwhile go to a fresh file. A file set aside by an earlier replay that did not complete
+   * is written before anything else.
+   */
+  private void replaySpilledLogs() {
+    if (spillFile == null) return;
+
+    File replayFile = new File(spillFile.getPath() + ".replay");
+    synchronized (spillLock) {
+      if (!replayFile.exists()) {
+        if (!spillFile.exists()) return;
+        if (!spillFile.renameTo(replayFile)) {
+          log.warn("could not rename " + spillFile + " to " + replayFile);
+          return;
+        }
+      }
+    }
+
+    try {
+      DataInputStream fileStream = new DataInputStream(new FileInputStream(replayFile));
+      try {
+        List groups = new ArrayList();
+        int logCount = 0;
+        for (LogGroup group; (group = readGroup(fileStream)) != null;) {
+          groups.add(group);
+          logCount += group.records.length;
+          if (logCount >= batchSize) {
+            writeGroups(groups, true);
+            groups.clear();
+            logCount = 0;
+          }
+        }
+        if (!groups.isEmpty()) writeGroups(groups, true);
+      }
+      finally {
+        fileStream.close();
+      }
+      if (!replayFile.delete()) log.warn("could not delete " + replayFile);
+    }
+    catch (IOException e) {
+      log.error("could not replay logs spilled to " + replayFile, e);
+    }
+  }
+
+  private static LogGroup readGroup(DataInputStream fileStream) throws IOException {
+    byte[] bytes;
+    try {
+      bytes = new byte[fileStream.readInt()];
+      fileStream.readFully(bytes);
+    }
+    catch (EOFException e) {
+      // end of file, or a group cut short while it was being spilled
+      return null;
+    }
+
+    ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return (LogGroup) objectStream.readObject();
+    }
+    catch (ClassNotFoundException e) {
+      IOException ioException = new IOException("could not read spilled logs");
+      ioException.initCause(e);
+      throw ioException;
+    }
+    finally {
+      objectStream.close();
+    }
+  }
+
+  /**
+   * Logs of one committed transaction.
+   */
+  static class LogGroup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final ProcessLogRecord[] records;
+    int attempts;
+
+    LogGroup(ProcessLogRecord[] records) {
+      this.records = records;
+    }
+
+    /**
+     * Identifies the group by its first token log, see
+     * {@link ProcessLogWriter#isWritten(StatelessSession, ProcessLogRecord[])}.
+     * 
+     * @return the key of this group, or <code>null</code> if it has no token logs
+     */
+    Object getKey() {
+      for (int i = 0; i < records.length; i++) {
+        ProcessLogRecord record = records[i];
+        if (record.tokenId != 0) return record.tokenId + "/" + record.index;
+      }
+      return null;
+    }
+  }
+
+  private static final Log log = LogFactory.getLog(AsyncLogWriter.class);
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.logging.LoggingService;
+import org.jbpm.logging.log.ProcessLog;
+import org.jbpm.persistence.JbpmPersistenceException;
+import org.jbpm.persistence.PersistenceService;
+import org.jbpm.persistence.db.DbPersistenceService;
+import org.jbpm.tx.TxService;
+
+/**
+ * Logging service that collects the logs of a jBPM context and writes them on close, through a
+ * stateless session sharing the connection of the persistence service. Compared to
+ * {@link DbLoggingService}, logs stay out of the first-level cache and logs of the same type
+ * are inserted in JDBC batches.
+ * <p>
+ * This service must close before the persistence service commits the transaction. List the
+ * logging service ahead of the persistence service in the configuration.
+ * </p>
+ */
+public class BatchDbLoggingService implements LoggingService {
+
+  private static final long serialVersionUID = 1L;
+
+  private final PersistenceService persistenceService;
+  private final TxService txService;
+  private final List processLogs = new ArrayList();
+
+  public BatchDbLoggingService() {
+    JbpmContext jbpmContext = JbpmContext.getCurrentJbpmContext();
+    if (jbpmContext == null) throw new JbpmException("no active jbpm context");
+    persistenceService = jbpmContext.getServices().getPersistenceService();
+    txService = jbpmContext.getServices().getTxService();
+  }
+
+  public void log(ProcessLog processLog) {
+    // logs are written along with the transaction, see DbLoggingService
+    if (persistenceService instanceof DbPersistenceService) {
+      DbPersistenceService dbPersistenceService = (DbPersistenceService) persistenceService;
+      if (dbPersistenceService.isTransactionActive()) processLogs.add(processLog);
+    }
+  }
+
+  public void close() {
+    if (processLogs.isEmpty()) return;
+    try {
+      if (txService != null && txService.isRollbackOnly()) return;
+
+      DbPersistenceService dbPersistenceService = (DbPersistenceService) persistenceService;
+      if (!dbPersistenceService.isTransactionActive()) {
+        throw new JbpmException("transaction ended before " + processLogs.size()
+          + " logs could be written, list the logging service before the persistence service");
+      }
+      writeLogs(dbPersistenceService.getSession());
+    }
+    catch (RuntimeException e) {
+      // keep the transaction from committing without its logs
+      if (txService != null) txService.setRollbackOnly();
+      throw e;
+    }
+    finally {
+      processLogs.clear();
+    }
+  }
+
+  private void writeLogs(Session session) {
+    ProcessLogWriter logWriter = new ProcessLogWriter(session.getSessionFactory());
+    List statelessLogs = new ArrayList();
+    for (Iterator i = processLogs.iterator(); i.hasNext();) {
+      ProcessLog processLog = (ProcessLog) i.next();
+      if (logWriter.isStatelessWritable(processLog)) {
+        statelessLogs.add(processLog);
+      }
+      else {
+        session.save(processLog);
+      }
+    }
+
+    try {
+      // the logs refer to execution data, which must be in the database first
+      session.flush();
+
+      StatelessSession statelessSession = session.getSessionFactory()
+        .openStatelessSession(session.connection());
+      try {
+        logWriter.writeLogs(statelessSession, statelessLogs);
+      }
+      finally {
+        statelessSession.close();
+      }
+    }
+    catch (HibernateException e) {
+      throw new JbpmPersistenceException("could not write " + processLogs.size() + " logs", e);
+    }
+  }
+}
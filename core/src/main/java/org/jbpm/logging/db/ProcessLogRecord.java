@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.io.Serializable;
+
+/**
+ * Detached copy of a process log, fit for a queue or a file. References to other entities are
+ * kept as entity name and identifier, so that a record holds no Hibernate proxies or other
+ * session state.
+ */
+class ProcessLogRecord implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  final String entityName;
+  /** property values, with entity references in place of entities */
+  final Object[] values;
+  /**
+   * children of a composite log, each either the position of a record of the same group or a
+   * reference to a log saved already; <code>null</code> for other logs
+   */
+  final Object[] children;
+  final long tokenId;
+  final int index;
+
+  ProcessLogRecord(String entityName, Object[] values, Object[] children, long tokenId,
+    int index) {
+    this.entityName = entityName;
+    this.values = values;
+    this.children = children;
+    this.tokenId = tokenId;
+    this.index = index;
+  }
+
+  public String toString() {
+    return "ProcessLogRecord(" + entityName + ',' + tokenId + ',' + index + ')';
+  }
+
+  /**
+   * Identifies the entity a record refers to.
+   */
+  static class Reference implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String entityName;
+    final Serializable id;
+
+    Reference(String entityName, Serializable id) {
+      this.entityName = entityName;
+      this.id = id;
+    }
+
+    public String toString() {
+      return entityName + '#' + id;
+    }
+  }
+}
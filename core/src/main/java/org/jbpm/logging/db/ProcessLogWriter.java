@@ -0,0 +1,331 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.EntityMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.collection.PersistentList;
+import org.hibernate.engine.CascadeStyle;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+import org.jbpm.logging.log.CompositeLog;
+import org.jbpm.logging.log.ProcessLog;
+
+/**
+ * Inserts process logs through a Hibernate stateless session, which skips the first-level cache
+ * and dirty checking of a regular session. Logs are inserted type by type, so that each type
+ * goes through a single prepared statement and JDBC batching applies. The links from composite
+ * logs to their children are written afterwards, the same way a regular session writes the
+ * <code>children</code> list.
+ */
+class ProcessLogWriter {
+
+  private final SessionFactoryImplementor sessionFactory;
+  private final Map statelessWritableTypes = Collections.synchronizedMap(new HashMap());
+
+  ProcessLogWriter(SessionFactory sessionFactory) {
+    this.sessionFactory = (SessionFactoryImplementor) sessionFactory;
+  }
+
+  /**
+   * Tells whether the given log can be written by a stateless session. Stateless sessions do
+   * not cascade, hence logs that cascade to other entities, such as byte array updates, must
+   * be saved by a regular session.
+   */
+  boolean isStatelessWritable(ProcessLog processLog) {
+    Class logType = processLog.getClass();
+    Boolean statelessWritable = (Boolean) statelessWritableTypes.get(logType);
+    if (statelessWritable == null) {
+      statelessWritable = Boolean.TRUE;
+
+      EntityPersister persister = sessionFactory.getEntityPersister(logType.getName());
+      CascadeStyle[] cascadeStyles = persister.getPropertyCascadeStyles();
+      Type[] propertyTypes = persister.getPropertyTypes();
+      for (int i = 0; i < cascadeStyles.length; i++) {
+        // composite logs cascade to their children, which are written here as well
+        if (cascadeStyles[i] != CascadeStyle.NONE && !propertyTypes[i].isCollectionType()) {
+          statelessWritable = Boolean.FALSE;
+          break;
+        }
+      }
+      statelessWritableTypes.put(logType, statelessWritable);
+    }
+    return statelessWritable.booleanValue();
+  }
+
+  /**
+   * Inserts the given logs. The entities the logs refer to must be in the database already.
+   */
+  void writeLogs(StatelessSession statelessSession, Collection processLogs) {
+    // group logs by type, keeping their order otherwise
+    Map logsByType = new LinkedHashMap();
+    for (Iterator i = processLogs.iterator(); i.hasNext();) {
+      ProcessLog processLog = (ProcessLog) i.next();
+      List logs = (List) logsByType.get(processLog.getClass());
+      if (logs == null) {
+        logs = new ArrayList();
+        logsByType.put(processLog.getClass(), logs);
+      }
+      logs.add(processLog);
+    }
+
+    for (Iterator i = logsByType.values().iterator(); i.hasNext();) {
+      List logs = (List) i.next();
+      for (Iterator j = logs.iterator(); j.hasNext();) {
+        insert(statelessSession, (ProcessLog) j.next());
+      }
+    }
+
+    // stateless sessions ignore collections, link composite logs to their children here
+    SessionImplementor session = (SessionImplementor) statelessSession;
+    CollectionPersister childrenPersister = sessionFactory
+      .getCollectionPersister(CompositeLog.class.getName() + ".children");
+    for (Iterator i = processLogs.iterator(); i.hasNext();) {
+      Object processLog = i.next();
+      if (processLog instanceof CompositeLog) {
+        CompositeLog compositeLog = (CompositeLog) processLog;
+        List children = compositeLog.getChildren();
+        if (children != null && !children.isEmpty()) {
+          childrenPersister.recreate(new PersistentList(session, children),
+            new Long(compositeLog.getId()), session);
+        }
+      }
+    }
+
+    // stateless sessions leave the last batch pending
+    session.getBatcher().executeBatch();
+  }
+
+  private void insert(StatelessSession statelessSession, ProcessLog processLog) {
+    EntityPersister persister = sessionFactory.getEntityPersister(processLog.getClass()
+      .getName());
+    Object[] values = persister.getPropertyValues(processLog, EntityMode.POJO);
+    Object[] unproxiedValues = unproxy(values);
+
+    if (unproxiedValues == values) {
+      statelessSession.insert(processLog);
+    }
+    else {
+      // stateless sessions cannot tell the identifier of a proxy
+      persister.setPropertyValues(processLog, unproxiedValues, EntityMode.POJO);
+      try {
+        statelessSession.insert(processLog);
+      }
+      finally {
+        persister.setPropertyValues(processLog, values, EntityMode.POJO);
+      }
+    }
+  }
+
+  private Object[] unproxy(Object[] values) {
+    Object[] unproxiedValues = values;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] instanceof HibernateProxy) {
+        if (unproxiedValues == values) unproxiedValues = (Object[]) values.clone();
+
+        HibernateProxy proxy = (HibernateProxy) values[i];
+        LazyInitializer lazyInitializer = proxy.getHibernateLazyInitializer();
+        if (lazyInitializer.isUninitialized()) {
+          unproxiedValues[i] = instantiateReference(lazyInitializer.getEntityName(),
+            lazyInitializer.getIdentifier());
+        }
+        else {
+          unproxiedValues[i] = lazyInitializer.getImplementation();
+        }
+      }
+    }
+    return unproxiedValues;
+  }
+
+  /**
+   * Instantiates a stand-in for the entity with the given identifier. An instance bearing the
+   * identifier is enough to write a foreign key. Abstract entities, such as variable instances,
+   * are stood in for by a concrete subclass.
+   */
+  private Object instantiateReference(String entityName, Serializable id) {
+    EntityPersister persister = sessionFactory.getEntityPersister(entityName);
+    EntityMetamodel entityMetamodel = persister.getEntityMetamodel();
+    if (entityMetamodel.isAbstract()) {
+      for (Iterator i = entityMetamodel.getSubclassEntityNames().iterator(); i.hasNext();) {
+        EntityPersister subclassPersister = sessionFactory.getEntityPersister((String) i.next());
+        if (!subclassPersister.getEntityMetamodel().isAbstract()) {
+          persister = subclassPersister;
+          break;
+        }
+      }
+    }
+    return persister.instantiate(id, EntityMode.POJO);
+  }
+
+  /**
+   * Copies the given logs into records that outlive the session. Composite logs refer to
+   * children among the given logs by position and to other children by identifier, hence
+   * children left out must have been saved already.
+   */
+  ProcessLogRecord[] createRecords(List processLogs) {
+    Map positions = new IdentityHashMap();
+    for (int i = 0; i < processLogs.size(); i++) {
+      positions.put(processLogs.get(i), new Integer(i));
+    }
+
+    ProcessLogRecord[] records = new ProcessLogRecord[processLogs.size()];
+    for (int i = 0; i < records.length; i++) {
+      ProcessLog processLog = (ProcessLog) processLogs.get(i);
+      String entityName = processLog.getClass().getName();
+      EntityPersister persister = sessionFactory.getEntityPersister(entityName);
+      Type[] propertyTypes = persister.getPropertyTypes();
+
+      Object[] values = persister.getPropertyValues(processLog, EntityMode.POJO);
+      for (int j = 0; j < values.length; j++) {
+        if (propertyTypes[j].isCollectionType()) {
+          values[j] = null;
+        }
+        else if (propertyTypes[j].isEntityType()) {
+          values[j] = createReference((EntityType) propertyTypes[j], values[j]);
+        }
+      }
+
+      Object[] children = null;
+      if (processLog instanceof CompositeLog) {
+        List childLogs = ((CompositeLog) processLog).getChildren();
+        if (childLogs != null) {
+          children = new Object[childLogs.size()];
+          for (int j = 0; j < children.length; j++) {
+            Object childLog = childLogs.get(j);
+            Object position = positions.get(childLog);
+            children[j] = position != null ? position : new ProcessLogRecord.Reference(childLog
+              .getClass().getName(), new Long(((ProcessLog) childLog).getId()));
+          }
+        }
+      }
+
+      ProcessLogRecord.Reference token = (ProcessLogRecord.Reference) values[persister
+        .getEntityMetamodel().getPropertyIndex("token")];
+      long tokenId = token != null ? ((Long) token.id).longValue() : 0;
+      records[i] = new ProcessLogRecord(entityName, values, children, tokenId, processLog
+        .getIndex());
+    }
+    return records;
+  }
+
+  private ProcessLogRecord.Reference createReference(EntityType entityType, Object entity) {
+    if (entity == null) return null;
+
+    if (entity instanceof HibernateProxy) {
+      LazyInitializer lazyInitializer = ((HibernateProxy) entity).getHibernateLazyInitializer();
+      return new ProcessLogRecord.Reference(lazyInitializer.getEntityName(), lazyInitializer
+        .getIdentifier());
+    }
+
+    String entityName = entityType.getAssociatedEntityName();
+    EntityPersister persister = sessionFactory.getEntityPersister(entityName);
+    Serializable id = persister.getIdentifier(entity, EntityMode.POJO);
+    // unsaved entities, such as the parent of a log, are not written by the log itself
+    Boolean unsaved = persister.getEntityMetamodel()
+      .getIdentifierProperty()
+      .getUnsavedValue()
+      .isUnsaved(id);
+    return unsaved != null && unsaved.booleanValue() ? null : new ProcessLogRecord.Reference(
+      entityName, id);
+  }
+
+  /**
+   * Turns the given records back into unsaved logs, ready for
+   * {@link #writeLogs(StatelessSession, Collection)}.
+   */
+  List restoreLogs(ProcessLogRecord[] records) {
+    ProcessLog[] processLogs = new ProcessLog[records.length];
+    for (int i = 0; i < records.length; i++) {
+      ProcessLogRecord record = records[i];
+      EntityPersister persister = sessionFactory.getEntityPersister(record.entityName);
+      Object[] values = new Object[record.values.length];
+      for (int j = 0; j < values.length; j++) {
+        values[j] = restoreValue(record.values[j]);
+      }
+      processLogs[i] = (ProcessLog) persister.instantiate(null, EntityMode.POJO);
+      persister.setPropertyValues(processLogs[i], values, EntityMode.POJO);
+    }
+
+    for (int i = 0; i < records.length; i++) {
+      Object[] children = records[i].children;
+      if (children != null) {
+        List childLogs = new ArrayList(children.length);
+        for (int j = 0; j < children.length; j++) {
+          childLogs.add(children[j] instanceof Integer ? processLogs[((Integer) children[j])
+            .intValue()] : restoreValue(children[j]));
+        }
+        ((CompositeLog) processLogs[i]).setChildren(childLogs);
+      }
+    }
+    return Arrays.asList(processLogs);
+  }
+
+  private Object restoreValue(Object value) {
+    if (value instanceof ProcessLogRecord.Reference) {
+      ProcessLogRecord.Reference reference = (ProcessLogRecord.Reference) value;
+      return instantiateReference(reference.entityName, reference.id);
+    }
+    return value;
+  }
+
+  /**
+   * Tells whether the logs of the given records are in the database already. The logs of a
+   * token have distinct indexes, hence the first record referring to a token identifies its
+   * group. Groups without token logs cannot be told apart and are never reported as written.
+   */
+  boolean isWritten(StatelessSession statelessSession, ProcessLogRecord[] records) {
+    for (int i = 0; i < records.length; i++) {
+      ProcessLogRecord record = records[i];
+      if (record.tokenId != 0) {
+        Number count = (Number) statelessSession.createQuery("select count(pl.id) "
+          + "from org.jbpm.logging.log.ProcessLog pl "
+          + "where pl.token.id = :tokenId and pl.index = :index")
+          .setLong("tokenId", record.tokenId)
+          .setInteger("index", record.index)
+          .uniqueResult();
+        return count.intValue() > 0;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.exe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jbpm.JbpmConfiguration.Configs;
+import org.jbpm.JbpmException;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.logging.log.ProcessLog;
+import org.jbpm.util.ClassLoaderUtil;
+
+/**
+ * Tells which process logs are kept. The configuration entry
+ * <code>jbpm.log.types.</code><i>process name</i> lists the log types kept for the named
+ * process definition; the entry <code>jbpm.log.types</code> lists the log types kept for other
+ * process definitions. Types are separated by commas or white space. Listing a type keeps its
+ * subtypes as well. In the absence of both entries, all logs are kept.
+ */
+class LogFilter {
+
+  static final String LOG_TYPES = "jbpm.log.types";
+
+  static final LogFilter ALL = new LogFilter(null);
+
+  /** filters parsed so far, by configuration value */
+  private static final Map filters = Collections.synchronizedMap(new HashMap());
+
+  private final Class[] logTypes;
+  private final Map acceptedTypes = new ConcurrentHashMap();
+
+  private LogFilter(Class[] logTypes) {
+    this.logTypes = logTypes;
+  }
+
+  /**
+   * Tells whether logs of the given type are kept.
+   */
+  boolean accepts(Class logType) {
+    if (logTypes == null) return true;
+
+    Boolean accepted = (Boolean) acceptedTypes.get(logType);
+    if (accepted == null) {
+      accepted = Boolean.FALSE;
+      for (int i = 0; i < logTypes.length; i++) {
+        if (logTypes[i].isAssignableFrom(logType)) {
+          accepted = Boolean.TRUE;
+          break;
+        }
+      }
+      acceptedTypes.put(logType, accepted);
+    }
+    return accepted.booleanValue();
+  }
+
+  /**
+   * Looks up the filter configured for the given process instance.
+   */
+  static LogFilter getLogFilter(ProcessInstance processInstance) {
+    String logTypes = null;
+
+    ProcessDefinition processDefinition = processInstance != null ? processInstance
+      .getProcessDefinition() : null;
+    if (processDefinition != null && processDefinition.getName() != null) {
+      String entryName = LOG_TYPES + '.' + processDefinition.getName();
+      if (Configs.hasObject(entryName)) logTypes = Configs.getString(entryName);
+    }
+    if (logTypes == null && Configs.hasObject(LOG_TYPES)) {
+      logTypes = Configs.getString(LOG_TYPES);
+    }
+    return logTypes != null ? parse(logTypes) : ALL;
+  }
+
+  static LogFilter parse(String logTypes) {
+    LogFilter filter = (LogFilter) filters.get(logTypes);
+    if (filter == null) {
+      List types = new ArrayList();
+      String[] typeNames = logTypes.trim().split("[\\s,]+");
+      for (int i = 0; i < typeNames.length; i++) {
+        String typeName = typeNames[i];
+        if (typeName.length() == 0) continue;
+
+        Class type;
+        try {
+          type = ClassLoaderUtil.classForName(typeName);
+        }
+        catch (ClassNotFoundException e) {
+          throw new JbpmException("log type not found: " + typeName, e);
+        }
+        if (!ProcessLog.class.isAssignableFrom(type)) {
+          throw new JbpmException(typeName + " is not a log type");
+        }
+        types.add(type);
+      }
+      filter = new LogFilter((Class[]) types.toArray(new Class[types.size()]));
+      filters.put(logTypes, filter);
+    }
+    return filter;
+  }
+}
@@ -48,13 +48,20 @@ public class LoggingInstance extends ModuleInstance {
 
   private List logs = new ArrayList();
   private transient List compositeLogStack = new ArrayList();
+  private transient LogFilter logFilter;
 
   public LoggingInstance() {
   }
 
   public synchronized void startCompositeLog(CompositeLog compositeLog) {
-    addLog(compositeLog);
-    compositeLogStack.add(compositeLog);
+    if (isLogged(compositeLog.getClass())) {
+      addLog(compositeLog);
+      compositeLogStack.add(compositeLog);
+    }
+    else {
+      // children of a filtered composite log go to the enclosing composite log
+      compositeLogStack.add(null);
+    }
   }
 
   public synchronized void endCompositeLog() {
@@ -62,15 +69,32 @@ public class LoggingInstance extends ModuleInstance {
   }
 
   public synchronized void addLog(ProcessLog processLog) {
-    if (!compositeLogStack.isEmpty()) {
-      CompositeLog compositeLog = (CompositeLog) compositeLogStack.get(compositeLogStack.size() - 1);
-      compositeLog.addChild(processLog);
-      processLog.setParent(compositeLog);
+    if (!isLogged(processLog.getClass())) return;
+
+    for (int i = compositeLogStack.size() - 1; i >= 0; i--) {
+      CompositeLog compositeLog = (CompositeLog) compositeLogStack.get(i);
+      if (compositeLog != null) {
+        compositeLog.addChild(processLog);
+        processLog.setParent(compositeLog);
+        break;
+      }
     }
     processLog.setDate(Clock.getCurrentTime());
     logs.add(processLog);
   }
 
+  /**
+   * Tells whether logs of the given type are kept for this process instance. Logs of other
+   * types are discarded by {@link #addLog(ProcessLog)}; callers may check this method to avoid
+   * creating them in the first place.
+   * 
+   * @see org.jbpm.graph.exe.Token#isLogged(Class)
+   */
+  public boolean isLogged(Class logType) {
+    if (logFilter == null) logFilter = LogFilter.getLogFilter(getProcessInstance());
+    return logFilter.accepts(logType);
+  }
+
   /**
    * If you modify the returned list in any way, you run the risk 
    * of causing exceptions in a concurrent situation. 
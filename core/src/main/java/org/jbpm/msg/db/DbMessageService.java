@@ -21,10 +21,12 @@
  */
 package org.jbpm.msg.db;
 
+import org.hibernate.Transaction;
 import org.jbpm.JbpmContext;
 import org.jbpm.JbpmException;
 import org.jbpm.job.Job;
 import org.jbpm.job.executor.JobExecutor;
+import org.jbpm.job.executor.LocalDispatch;
 import org.jbpm.msg.MessageService;
 
 public class DbMessageService implements MessageService {
@@ -33,6 +35,8 @@ public class DbMessageService implements MessageService {
 
   private final JbpmContext jbpmContext;
   private boolean hasProducedJobs;
+  private LocalDispatch localDispatch;
+  private boolean isLocalDispatchUnavailable;
 
   public DbMessageService() {
     jbpmContext = JbpmContext.getCurrentJbpmContext();
@@ -40,8 +44,34 @@ public class DbMessageService implements MessageService {
   }
 
   public void send(Job job) {
+    // jobs dispatched locally need no notification
+    if (!dispatchLocally(job)) hasProducedJobs = true;
     jbpmContext.getJobSession().saveJob(job);
-    hasProducedJobs = true;
+  }
+
+  /**
+   * Hands the given job to the job executor in this process, which acquires the job right
+   * after the current transaction commits.
+   */
+  private boolean dispatchLocally(Job job) {
+    if (isLocalDispatchUnavailable) return false;
+
+    if (localDispatch == null) {
+      JobExecutor jobExecutor = jbpmContext.getJbpmConfiguration().getJobExecutor();
+      if (jobExecutor == null || !jobExecutor.isLocalDispatch() || !jobExecutor.isStarted()) {
+        isLocalDispatchUnavailable = true;
+        return false;
+      }
+      // local dispatch takes place after commit
+      Transaction transaction = jbpmContext.getSession().getTransaction();
+      if (!transaction.isActive()) {
+        isLocalDispatchUnavailable = true;
+        return false;
+      }
+      localDispatch = new LocalDispatch(jobExecutor);
+      transaction.registerSynchronization(localDispatch);
+    }
+    return localDispatch.dispatchJob(job);
   }
 
   public void close() {
@@ -51,7 +81,7 @@ public class DbMessageService implements MessageService {
     JobExecutor jobExecutor = jbpmContext.getJbpmConfiguration().getJobExecutor();
     if (jobExecutor != null) {
       synchronized (jobExecutor) {
-        jobExecutor.notify();
+        jobExecutor.notifyAll();
       }
     }
   }
@@ -21,6 +21,10 @@
  */
 package org.jbpm.scheduler.db;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import org.jbpm.JbpmContext;
 import org.jbpm.JbpmException;
 import org.jbpm.configuration.ObjectFactory;
@@ -33,7 +37,7 @@ import org.jbpm.scheduler.SchedulerService;
 public class DbSchedulerService implements SchedulerService {
 
   private final JbpmContext jbpmContext;
-  private boolean hasProducedTimers;
+  private final List producedTimers = new ArrayList();
 
   private static final String CALENDAR_RESOURCE = "resource.business.calendar";
   private static final long serialVersionUID = 1L;
@@ -52,7 +56,7 @@ public class DbSchedulerService implements SchedulerService {
     }
 
     jbpmContext.getJobSession().saveJob(timer);
-    hasProducedTimers = true;
+    producedTimers.add(timer);
   }
 
   public void deleteTimer(Timer timer) {
@@ -68,12 +72,16 @@ public class DbSchedulerService implements SchedulerService {
   }
 
   public void close() {
-    if (!hasProducedTimers) return;
+    if (producedTimers.isEmpty()) return;
     // notify job executor
     JobExecutor jobExecutor = jbpmContext.getJbpmConfiguration().getJobExecutor();
     if (jobExecutor != null) {
+      // let the job executor know when the timers fall due
+      for (Iterator i = producedTimers.iterator(); i.hasNext();) {
+        jobExecutor.scheduleJob((Timer) i.next());
+      }
       synchronized (jobExecutor) {
-        jobExecutor.notify();
+        jobExecutor.notifyAll();
       }
     }
   }
@@ -34,10 +34,12 @@ import org.jbpm.graph.def.Action;
 import org.jbpm.graph.def.Event;
 import org.jbpm.graph.def.GraphElement;
 import org.jbpm.graph.exe.ExecutionContext;
+import org.jbpm.job.Job;
 import org.jbpm.job.Timer;
 import org.jbpm.jpdl.el.impl.JbpmExpressionEvaluator;
 import org.jbpm.jpdl.xml.JpdlXmlReader;
 import org.jbpm.scheduler.SchedulerService;
+import org.jbpm.taskmgmt.def.Task;
 import org.jbpm.util.Clock;
 
 public class CreateTimerAction extends Action {
@@ -48,6 +50,7 @@ public class CreateTimerAction extends Action {
   private String dueDate;
   private String repeat;
   private String transitionName;
+  private int timerPriority = Job.PRIORITY_NORMAL;
   private Action timerAction;
 
   public void read(Element actionElement, JpdlXmlReader jpdlReader) {
@@ -64,6 +67,8 @@ public class CreateTimerAction extends Action {
       repeat = dueDate;
     }
     transitionName = actionElement.attributeValue("transition");
+    String priorityText = actionElement.attributeValue("priority");
+    if (priorityText != null) timerPriority = Task.parsePriority(priorityText);
 
     if (transitionName != null && repeat != null) {
       repeat = null;
@@ -96,6 +101,7 @@ public class CreateTimerAction extends Action {
     Timer timer = new Timer(executionContext.getToken());
     timer.setName(timerName);
     timer.setRepeat(repeat);
+    timer.setPriority(timerPriority);
 
     // calculate due date
     if (dueDate != null) {
@@ -181,6 +187,14 @@ public class CreateTimerAction extends Action {
     this.repeat = repeatDuration;
   }
 
+  public int getTimerPriority() {
+    return timerPriority;
+  }
+
+  public void setTimerPriority(int timerPriority) {
+    this.timerPriority = timerPriority;
+  }
+
   public String getTransitionName() {
     return transitionName;
   }
@@ -254,7 +254,9 @@ public class TaskInstance extends VariableContainer implements Identifiable, Ass
 
     if (token != null) {
       // log this assignment
-      token.addLog(new TaskAssignLog(this, previousActorId, actorId));
+      if (token.isLogged(TaskAssignLog.class)) {
+        token.addLog(new TaskAssignLog(this, previousActorId, actorId));
+      }
 
       if (task != null) {
         // fire task assign event
@@ -411,7 +413,7 @@ public class TaskInstance extends VariableContainer implements Identifiable, Ass
       submitVariables();
 
       // log task completion
-      token.addLog(new TaskEndLog(this));
+      if (token.isLogged(TaskEndLog.class)) token.addLog(new TaskEndLog(this));
 
       if (task != null) {
         // fire task end event
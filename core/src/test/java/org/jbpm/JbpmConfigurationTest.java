@@ -204,6 +204,56 @@ public class JbpmConfigurationTest extends AbstractJbpmTestCase {
     }
   }
 
+  public void testDomainModelConfigsValueCache() {
+    JbpmConfiguration jbpmConfiguration = JbpmConfiguration.parseXmlString("<jbpm-configuration>"
+      + "  <jbpm-context />"
+      + "  <int name='myint' value='7' />"
+      + "  <bean name='mybean' class='java.util.ArrayList' />"
+      + "</jbpm-configuration>");
+
+    JbpmContext jbpmContext = jbpmConfiguration.createJbpmContext();
+    try {
+      assertEquals(7, JbpmConfiguration.Configs.getInt("myint"));
+      assertSame(JbpmConfiguration.Configs.getValue("myint"),
+        JbpmConfiguration.Configs.getValue("myint"));
+      // mutable objects are not cached
+      assertNotSame(JbpmConfiguration.Configs.getValue("mybean"),
+        JbpmConfiguration.Configs.getValue("mybean"));
+    }
+    finally {
+      jbpmContext.close();
+    }
+  }
+
+  public void testDomainModelConfigsValueCachePerObjectFactory() {
+    JbpmConfiguration jbpmConfiguration1 = JbpmConfiguration.parseXmlString("<jbpm-configuration>"
+      + "  <jbpm-context />"
+      + "  <int name='myint' value='1' />"
+      + "</jbpm-configuration>");
+    JbpmConfiguration jbpmConfiguration2 = JbpmConfiguration.parseXmlString("<jbpm-configuration>"
+      + "  <jbpm-context />"
+      + "  <int name='myint' value='2' />"
+      + "</jbpm-configuration>");
+
+    Object value1 = getValue(jbpmConfiguration1, "myint");
+    Object value2 = getValue(jbpmConfiguration2, "myint");
+    assertEquals(new Integer(1), value1);
+    assertEquals(new Integer(2), value2);
+    // alternating configurations keep their cached values
+    assertSame(value1, getValue(jbpmConfiguration1, "myint"));
+    assertSame(value2, getValue(jbpmConfiguration2, "myint"));
+  }
+
+  private static Object getValue(JbpmConfiguration jbpmConfiguration, String name) {
+    JbpmContext jbpmContext = jbpmConfiguration.createJbpmContext();
+    try {
+      return JbpmConfiguration.Configs.getValue(name);
+    }
+    finally {
+      jbpmContext.close();
+    }
+  }
+
   public void testJbpmConfigurationClose() {
     JbpmConfiguration jbpmConfiguration = JbpmConfiguration.getInstance();
     JbpmContext jbpmContext = jbpmConfiguration.createJbpmContext();
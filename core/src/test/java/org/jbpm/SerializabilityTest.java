@@ -68,14 +68,20 @@ public class SerializabilityTest extends AbstractJbpmTestCase {
     "org.jbpm.job.executor.DispatcherThread",
     "org.jbpm.job.executor.JobExecutorThread",
     "org.jbpm.job.executor.JobExecutor$JobRejectionHandler",
+    "org.jbpm.job.executor.JobExecutor$JobsTask",
     "org.jbpm.job.executor.JobParcel",
+    "org.jbpm.job.executor.JobExecutorMetrics",
+    "org.jbpm.job.executor.JobRunner",
+    "org.jbpm.job.executor.LocalDispatch",
     "org.jbpm.job.executor.LockMonitorThread",
+    "org.jbpm.job.executor.TimerWheel",
     "org.jbpm.jpdl.convert.Converter",
     "org.jbpm.jpdl.el.",
     "org.jbpm.jpdl.par.FileArchiveParser",
     "org.jbpm.jpdl.par.JpdlArchiveParser",
     "org.jbpm.jpdl.xml.JpdlXmlReader",
     "org.jbpm.jpdl.xml.JpdlXmlWriter",
+    "org.jbpm.logging.db.AsyncLogWriter",
     "org.jbpm.persistence.db.StaleObjectLogConfigurer$LogWrapper",
     "org.jbpm.util.Clock$DefaultDateGenerator",
     "org.jbpm.util.CustomLoaderObjectInputStream",
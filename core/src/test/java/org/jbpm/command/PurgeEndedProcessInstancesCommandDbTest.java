@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.command;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.jbpm.JbpmConfiguration;
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.db.JbpmSchema;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.persistence.db.DbPersistenceServiceFactory;
+import org.jbpm.taskmgmt.exe.TaskInstance;
+
+public class PurgeEndedProcessInstancesCommandDbTest extends AbstractDbTestCase {
+
+  private static final String[] RUNTIME_TABLES = {
+    "JBPM_PROCESSINSTANCE", "JBPM_TOKEN", "JBPM_TOKENVARIABLEMAP", "JBPM_VARIABLEINSTANCE",
+    "JBPM_BYTEARRAY", "JBPM_BYTEBLOCK", "JBPM_MODULEINSTANCE", "JBPM_SWIMLANEINSTANCE",
+    "JBPM_TASKINSTANCE", "JBPM_POOLEDACTOR", "JBPM_TASKACTORPOOL", "JBPM_COMMENT", "JBPM_LOG",
+    "JBPM_JOB"
+  };
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    deployProcessDefinition(ProcessDefinition.parseXmlString("<process-definition name='purge sub'>"
+      + "  <start-state>"
+      + "    <transition to='end' />"
+      + "  </start-state>"
+      + "  <end-state name='end' />"
+      + "</process-definition>"));
+    deployProcessDefinition(ProcessDefinition.parseXmlString("<process-definition name='purge super'>"
+      + "  <swimlane name='clerk'>"
+      + "    <assignment pooled-actors='alice, bob' />"
+      + "  </swimlane>"
+      + "  <start-state>"
+      + "    <transition to='sub' />"
+      + "  </start-state>"
+      + "  <process-state name='sub'>"
+      + "    <sub-process name='purge sub' />"
+      + "    <transition to='approve' />"
+      + "  </process-state>"
+      + "  <task-node name='approve'>"
+      + "    <task name='approve' swimlane='clerk' />"
+      + "    <transition to='end' />"
+      + "  </task-node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>"));
+  }
+
+  public void testPurgeEndedProcessInstances() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      runProcessInstance();
+    }
+    newTransaction();
+    assertEquals(6, countRows("JBPM_PROCESSINSTANCE"));
+    assertEquals(3, countRows("JBPM_TASKACTORPOOL") / 2);
+    assertTrue(countRows("JBPM_BYTEBLOCK") > 0);
+    assertTrue(countRows("JBPM_LOG") > 0);
+
+    // nothing matches the restrictions
+    Date past = new Date(System.currentTimeMillis() - 60000);
+    PurgeEndedProcessInstancesCommand command = new PurgeEndedProcessInstancesCommand(past);
+    assertEquals(new Integer(0), command.execute(jbpmContext));
+    command = new PurgeEndedProcessInstancesCommand().processDefinitionName("other process");
+    assertEquals(new Integer(0), command.execute(jbpmContext));
+    // sub-process instances go along with their super-process instances
+    command = new PurgeEndedProcessInstancesCommand().processDefinitionName("purge sub");
+    assertEquals(new Integer(0), command.execute(jbpmContext));
+
+    command = new PurgeEndedProcessInstancesCommand().processDefinitionName("purge super")
+      .chunkSize(2);
+    assertEquals(new Integer(6), command.execute(jbpmContext));
+
+    for (int i = 0; i < RUNTIME_TABLES.length; i++) {
+      assertEquals(RUNTIME_TABLES[i], 0, countRows(RUNTIME_TABLES[i]));
+    }
+  }
+
+  public void testRefuseEnclosingTransaction() throws Exception {
+    // contexts without transactions of their own join whatever transaction is going on
+    JbpmConfiguration jbpmConfiguration = JbpmConfiguration.parseXmlString("<jbpm-configuration>"
+      + "  <jbpm-context>"
+      + "    <service name='persistence'>"
+      + "      <factory>"
+      + "        <bean class='org.jbpm.persistence.db.DbPersistenceServiceFactory'>"
+      + "          <field name='isTransactionEnabled'><false /></field>"
+      + "        </bean>"
+      + "      </factory>"
+      + "    </service>"
+      + "    <service name='message' factory='org.jbpm.msg.db.DbMessageServiceFactory' />"
+      + "    <service name='scheduler' factory='org.jbpm.scheduler.db.DbSchedulerServiceFactory' />"
+      + "    <service name='logging' factory='org.jbpm.logging.db.DbLoggingServiceFactory' />"
+      + "    <service name='authentication' factory='org.jbpm.security.authentication.DefaultAuthenticationServiceFactory' />"
+      + "  </jbpm-context>"
+      + "</jbpm-configuration>");
+    try {
+      JbpmContext jbpmContext = jbpmConfiguration.createJbpmContext();
+      try {
+        new PurgeEndedProcessInstancesCommand().execute(jbpmContext);
+        fail("expected exception");
+      }
+      catch (JbpmException e) {
+        // OK
+      }
+      finally {
+        jbpmContext.close();
+      }
+    }
+    finally {
+      jbpmConfiguration.close();
+    }
+  }
+
+  private void runProcessInstance() {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("purge super");
+    processInstance.getContextInstance().setVariable("text", "hello");
+    processInstance.getContextInstance().setVariable("data", "hello".getBytes());
+    processInstance.signal();
+
+    TaskInstance taskInstance = (TaskInstance) processInstance.getTaskMgmtInstance()
+      .getTaskInstances()
+      .iterator()
+      .next();
+    taskInstance.setVariableLocally("remark", "approved");
+    taskInstance.setVariableLocally("scan", "scan".getBytes());
+    taskInstance.addComment("looks fine");
+    taskInstance.end();
+    assertTrue(processInstance.hasEnded());
+    // ended process instances update byte variables, leaving byte array logs behind
+    processInstance.getContextInstance().setVariable("data", "bye".getBytes());
+  }
+
+  private int countRows(String tableName) {
+    DbPersistenceServiceFactory persistenceServiceFactory = (DbPersistenceServiceFactory) getJbpmConfiguration().getServiceFactory("persistence");
+    Map rowsPerTable = new JbpmSchema(persistenceServiceFactory.getConfiguration()).getRowsPerTable();
+    return ((Long) rowsPerTable.get(tableName)).intValue();
+  }
+}
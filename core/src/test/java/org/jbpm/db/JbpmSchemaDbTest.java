@@ -26,8 +26,11 @@ import java.util.Map;
 import java.util.Set;
 
 import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
 
 import org.jbpm.AbstractJbpmTestCase;
+import org.jbpm.db.hibernate.JobIndex;
 
 /**
  * Test the JbpmSchema utility
@@ -70,4 +73,29 @@ public class JbpmSchemaDbTest extends AbstractJbpmTestCase {
       assertEquals(0, rowCount.longValue());
     }
   }
+
+  public void testIndexReport() {
+    jbpmSchema.cleanSchema();
+    Map indexReport = jbpmSchema.getIndexReport();
+    assertEquals(Boolean.TRUE, indexReport.get("IDX_JOB_DUEDATE"));
+    for (int i = 0; i < JobIndex.JOB_INDEXES.length; i++) {
+      assertEquals(Boolean.TRUE, indexReport.get(JobIndex.JOB_INDEXES[i].getName()));
+    }
+
+    // update leaves existing job indexes alone
+    String[] updateSql = jbpmSchema.getUpdateSql();
+    for (int i = 0; i < updateSql.length; i++) {
+      assertEquals(-1, updateSql[i].indexOf("IDX_JOB_ACQUIRE"));
+    }
+  }
+
+  public void testJobIndexSql() {
+    JobIndex jobIndex = new JobIndex.Acquisition();
+    assertEquals("create index IDX_JOB_ACQUIRE on JBPM_JOB "
+      + "(LOCKOWNER_, ISSUSPENDED_, PRIORITY_, DUEDATE_, RETRIES_)",
+      jobIndex.sqlCreateString(new HSQLDialect(), null, null, null));
+    assertEquals("create index IDX_JOB_ACQUIRE on JBPM_JOB "
+      + "(PRIORITY_, DUEDATE_, RETRIES_) where LOCKOWNER_ is null",
+      jobIndex.sqlCreateString(new PostgreSQLDialect(), null, null, null));
+  }
 }
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jbpm.graph.def.Node;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+import org.jbpm.job.executor.JobLane;
+import org.jbpm.persistence.db.DbPersistenceServiceFactory;
+
+/**
+ * Checks that a schema update makes rows written before a column was introduced loadable.
+ */
+public class JbpmSchemaUpdateDbTest extends AbstractDbTestCase {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    deployProcessDefinition(ProcessDefinition.parseXmlString("<process-definition name='upgrade'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <node name='a' async='true'>"
+      + "    <transition to='end' />"
+      + "  </node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>"));
+  }
+
+  public void testUpdateJobColumns() throws SQLException {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("upgrade");
+    processInstance.signal();
+    newTransaction();
+
+    DbPersistenceServiceFactory persistenceServiceFactory = (DbPersistenceServiceFactory) getJbpmConfiguration().getServiceFactory("persistence");
+    JbpmSchema jbpmSchema = new JbpmSchema(persistenceServiceFactory.getConfiguration());
+    if (Boolean.TRUE.equals(jbpmSchema.getIndexReport().get("IDX_JOB_ACQUIRE"))) {
+      executeSql(new String[] { "drop index IDX_JOB_ACQUIRE" });
+    }
+
+    // mimic a schema that predates priorities and exception counts: job rows lack the
+    // columns, node rows hold null in a column added as nullable
+    executeSql(new String[] {
+      "alter table JBPM_JOB drop column PRIORITY_",
+      "alter table JBPM_JOB drop column EXCEPTIONCOUNT_",
+      "alter table JBPM_NODE drop column ASYNCPRIORITY_",
+      "alter table JBPM_NODE add column ASYNCPRIORITY_ integer"
+    });
+
+    List updateSql = Arrays.asList(jbpmSchema.getUpdateSql());
+    assertTrue(updateSql.toString(), containsSql(updateSql,
+      "PRIORITY_ integer default 3 not null"));
+    assertTrue(updateSql.toString(), containsSql(updateSql,
+      "EXCEPTIONCOUNT_ integer default 0 not null"));
+    assertTrue(updateSql.toString(), updateSql.contains("update JBPM_NODE set ASYNCPRIORITY_ = 3 "
+      + "where ASYNCPRIORITY_ is null"));
+    jbpmSchema.updateSchema();
+    assertEquals(0, jbpmSchema.getExceptions().size());
+
+    ProcessDefinition processDefinition = graphSession.findLatestProcessDefinition("upgrade");
+    Node node = processDefinition.getNode("a");
+    assertEquals(Job.PRIORITY_NORMAL, node.getAsyncPriority());
+
+    // jobs that predate priorities stay in the normal lane
+    JobLane urgentLane = new JobLane("Urgent", Integer.MIN_VALUE, Job.PRIORITY_HIGH, 1);
+    JobLane normalLane = new JobLane("Normal", Job.PRIORITY_NORMAL, Job.PRIORITY_NORMAL, 1);
+    assertEquals(0, findAcquirableJobs(urgentLane).size());
+    List jobs = findAcquirableJobs(normalLane);
+    assertEquals(1, jobs.size());
+    Job job = (Job) jobs.get(0);
+    assertEquals(Job.PRIORITY_NORMAL, job.getPriority());
+    assertEquals(0, job.getExceptionCount());
+  }
+
+  private List findAcquirableJobs(JobLane lane) {
+    return jobSession.findAcquirableJobs(10, lane.getMinPriority(), lane.getMaxPriority(), null,
+      0);
+  }
+
+  private void executeSql(String[] script) throws SQLException {
+    Connection connection = jbpmContext.getConnection();
+    Statement statement = connection.createStatement();
+    try {
+      for (int i = 0; i < script.length; i++) {
+        statement.executeUpdate(script[i]);
+      }
+    }
+    finally {
+      statement.close();
+    }
+    newTransaction();
+  }
+
+  private static boolean containsSql(List script, String fragment) {
+    for (int i = 0; i < script.size(); i++) {
+      if (((String) script.get(i)).indexOf(fragment) != -1) return true;
+    }
+    return false;
+  }
+}
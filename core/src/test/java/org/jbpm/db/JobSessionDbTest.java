@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+import org.jbpm.job.Timer;
+import org.jbpm.persistence.db.DbPersistenceService;
+
+public class JobSessionDbTest extends AbstractDbTestCase {
+
+  private ProcessInstance processInstance;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    ProcessDefinition processDefinition = new ProcessDefinition(getName());
+    deployProcessDefinition(processDefinition);
+
+    processInstance = jbpmContext.newProcessInstanceForUpdate(getName());
+  }
+
+  public void testFindAcquirableJobs() {
+    long now = System.currentTimeMillis();
+    Timer second = createTimer("second", new Date(now - 2000));
+    Timer first = createTimer("first", new Date(now - 3000));
+    Timer third = createTimer("third", new Date(now - 1000));
+    createTimer("future", new Date(now + 60000));
+
+    Timer owned = createTimer("owned", new Date(now - 4000));
+    owned.setLockOwner("another executor");
+    Timer suspended = createTimer("suspended", new Date(now - 4000));
+    suspended.setSuspended(true);
+    Timer exhausted = createTimer("exhausted", new Date(now - 4000));
+    exhausted.setRetries(0);
+
+    newTransaction();
+    List jobs = jobSession.findAcquirableJobs(2);
+    assertEquals(2, jobs.size());
+    assertEquals(first.getId(), ((Job) jobs.get(0)).getId());
+    assertEquals(second.getId(), ((Job) jobs.get(1)).getId());
+
+    jobs = jobSession.findAcquirableJobs(10);
+    assertEquals(3, jobs.size());
+    assertEquals(third.getId(), ((Job) jobs.get(2)).getId());
+  }
+
+  public void testFindUnownedJobDueDates() {
+    long now = System.currentTimeMillis();
+    Timer later = createTimer("later", new Date(now + 2000));
+    Timer sooner = createTimer("sooner", new Date(now + 1000));
+    createTimer("beyond", new Date(now + 60000));
+    Timer owned = createTimer("owned", new Date(now + 1000));
+    owned.setLockOwner("another executor");
+
+    newTransaction();
+    List dueDates = jobSession.findUnownedJobDueDates(new Date(now + 30000), 10);
+    assertEquals(2, dueDates.size());
+    Object[] dueDate = (Object[]) dueDates.get(0);
+    assertEquals(new Long(sooner.getId()), dueDate[0]);
+    assertEquals(now + 1000, ((Date) dueDate[1]).getTime());
+    dueDate = (Object[]) dueDates.get(1);
+    assertEquals(new Long(later.getId()), dueDate[0]);
+
+    assertEquals(1, jobSession.findUnownedJobDueDates(new Date(now + 30000), 1).size());
+  }
+
+  public void testFindAcquirableJobsInPartitions() {
+    ProcessInstance otherInstance = jbpmContext.newProcessInstanceForUpdate(getName());
+    newTransaction();
+
+    long now = System.currentTimeMillis();
+    Timer timer = createTimer("timer", new Date(now - 1000));
+    Timer otherTimer = createTimer(otherInstance, "other", new Date(now - 2000));
+    newTransaction();
+
+    // each process instance falls into its own partition
+    Integer partition = new Integer((int) (processInstance.getId() % 2));
+    List jobs = jobSession.findAcquirableJobs(10, Integer.MIN_VALUE, Integer.MAX_VALUE,
+      Collections.singleton(partition), 2);
+    assertEquals(1, jobs.size());
+    assertEquals(timer.getId(), ((Job) jobs.get(0)).getId());
+
+    Integer otherPartition = new Integer((int) (otherInstance.getId() % 2));
+    List dueDates = jobSession.findUnownedJobDueDates(new Date(now), 10, Integer.MIN_VALUE,
+      Integer.MAX_VALUE, Collections.singleton(otherPartition), 2);
+    assertEquals(1, dueDates.size());
+    assertEquals(new Long(otherTimer.getId()), ((Object[]) dueDates.get(0))[0]);
+
+    assertEquals(2, jobSession.findAcquirableJobs(10, Integer.MIN_VALUE, Integer.MAX_VALUE,
+      Arrays.asList(new Integer[] { new Integer(0), new Integer(1) }), 2).size());
+    assertEquals(0, jobSession.findAcquirableJobs(10, Integer.MIN_VALUE, Integer.MAX_VALUE,
+      Collections.EMPTY_SET, 2).size());
+    assertEquals(0, jobSession.findUnownedJobDueDates(new Date(now), 10, Integer.MIN_VALUE,
+      Integer.MAX_VALUE, Collections.EMPTY_SET, 2).size());
+  }
+
+  public void testFindAcquirableJobsByPriority() {
+    long now = System.currentTimeMillis();
+    Timer lowTimer = createTimer("low", new Date(now - 2000));
+    lowTimer.setPriority(Job.PRIORITY_LOW);
+    Timer normalTimer = createTimer("normal", new Date(now - 1000));
+    Timer highTimer = createTimer("high", new Date(now - 500));
+    highTimer.setPriority(Job.PRIORITY_HIGH);
+    newTransaction();
+
+    // more urgent jobs come first, regardless of due date
+    List jobs = jobSession.findAcquirableJobs(10);
+    assertEquals(3, jobs.size());
+    assertEquals(highTimer.getId(), ((Job) jobs.get(0)).getId());
+    assertEquals(normalTimer.getId(), ((Job) jobs.get(1)).getId());
+    assertEquals(lowTimer.getId(), ((Job) jobs.get(2)).getId());
+
+    // priority range bounds acquisition
+    jobs = jobSession.findAcquirableJobs(10, Job.PRIORITY_HIGHEST, Job.PRIORITY_NORMAL, null, 0);
+    assertEquals(2, jobs.size());
+    assertEquals(highTimer.getId(), ((Job) jobs.get(0)).getId());
+
+    List dueDates = jobSession.findUnownedJobDueDates(new Date(now), 10, Job.PRIORITY_LOW,
+      Job.PRIORITY_LOWEST, null, 0);
+    assertEquals(1, dueDates.size());
+    assertEquals(new Long(lowTimer.getId()), ((Object[]) dueDates.get(0))[0]);
+  }
+
+  public void testExcludeJobs() {
+    ProcessDefinition otherDefinition = new ProcessDefinition("other");
+    deployProcessDefinition(otherDefinition);
+    ProcessInstance otherInstance = jbpmContext.newProcessInstanceForUpdate("other");
+    newTransaction();
+
+    long now = System.currentTimeMillis();
+    createTimer("timer", new Date(now - 1000));
+    Timer otherTimer = createTimer(otherInstance, "other", new Date(now - 2000));
+    newTransaction();
+
+    // throttled process definition
+    jobSession.excludeJobs(Collections.singleton(getName()));
+    List jobs = jobSession.findAcquirableJobs(10);
+    assertEquals(1, jobs.size());
+    assertEquals(otherTimer.getId(), ((Job) jobs.get(0)).getId());
+    newTransaction();
+
+    // throttled job class
+    jobSession.excludeJobs(Collections.singleton(Timer.class.getName()));
+    assertEquals(0, jobSession.findAcquirableJobs(10).size());
+  }
+
+  public void testRenewJobLocks() {
+    long now = System.currentTimeMillis();
+    Timer timer = createTimer("timer", new Date(now));
+    timer.setLockOwner("this executor");
+    timer.setLockTime(new Date(now - 60000));
+    Timer stolen = createTimer("stolen", new Date(now));
+    stolen.setLockOwner("other executor");
+    stolen.setLockTime(new Date(now - 60000));
+    newTransaction();
+
+    List jobIds = Arrays.asList(new Long[] { new Long(timer.getId()), new Long(stolen.getId()) });
+    assertEquals(1, jobSession.renewJobLocks(jobIds, Collections.singleton("this executor"),
+      new Date(now)));
+    newTransaction();
+
+    // renewal leaves version untouched
+    Job job = jobSession.getJob(timer.getId());
+    assertEquals(now, job.getLockTime().getTime(), 1000);
+    assertEquals(timer.getVersion(), job.getVersion());
+    job = jobSession.getJob(stolen.getId());
+    assertEquals(now - 60000, job.getLockTime().getTime(), 1000);
+  }
+
+  public void testUnlockOverdueJobs() {
+    long now = System.currentTimeMillis();
+    Timer overdue = createTimer("overdue", new Date(now));
+    overdue.setLockOwner("crashed executor");
+    overdue.setLockTime(new Date(now - 60000));
+    Timer locked = createTimer("locked", new Date(now));
+    locked.setLockOwner("live executor");
+    locked.setLockTime(new Date(now));
+    newTransaction();
+
+    assertEquals(1, jobSession.unlockOverdueJobs(new Date(now - 30000)));
+    newTransaction();
+    assertNull(jobSession.getJob(overdue.getId()).getLockOwner());
+    assertEquals("live executor", jobSession.getJob(locked.getId()).getLockOwner());
+    newTransaction();
+
+    // executor that lost the lock cannot commit
+    jobSession.reattachJob(overdue);
+    jobSession.deleteJob(overdue);
+    try {
+      closeJbpmContext();
+      fail("expected locking exception");
+    }
+    catch (RuntimeException e) {
+      assertTrue(DbPersistenceService.isLockingException(e));
+    }
+    finally {
+      createJbpmContext();
+    }
+  }
+
+  public void testDeleteTimersByName() {
+    long now = System.currentTimeMillis();
+    Timer unlocked = createTimer("escalation", new Date(now));
+    unlocked.setRepeat("1 minute");
+    Timer executing = createTimer("escalation", new Date(now));
+    executing.setRepeat("1 minute");
+    executing.setLockOwner("other executor");
+    Timer attached = createTimer("escalation", new Date(now));
+    attached.setRepeat("1 minute");
+    attached.setLockOwner("this executor");
+    Timer reminder = createTimer("reminder", new Date(now));
+    reminder.setRepeat("1 minute");
+    newTransaction();
+
+    // timer executing in this session cancels itself along with the others
+    attached = (Timer) jobSession.getJob(attached.getId());
+    jobSession.deleteTimersByName("escalation", processInstance.getRootToken());
+    assertNull(attached.getRepeat());
+    newTransaction();
+
+    assertNull(jobSession.getJob(unlocked.getId()));
+    assertNull(((Timer) jobSession.getJob(executing.getId())).getRepeat());
+    assertNull(((Timer) jobSession.getJob(attached.getId())).getRepeat());
+    assertEquals("1 minute", ((Timer) jobSession.getJob(reminder.getId())).getRepeat());
+  }
+
+  public void testDeleteJobsForProcessInstance() {
+    long now = System.currentTimeMillis();
+    Timer unlocked = createTimer("escalation", new Date(now));
+    unlocked.setRepeat("1 minute");
+    Timer executing = createTimer("reminder", new Date(now));
+    executing.setRepeat("1 minute");
+    executing.setLockOwner("other executor");
+    newTransaction();
+
+    // no timer of the process instance is attached to this session
+    jobSession.deleteJobsForProcessInstance(processInstance);
+    newTransaction();
+
+    assertNull(jobSession.getJob(unlocked.getId()));
+    assertNull(((Timer) jobSession.getJob(executing.getId())).getRepeat());
+  }
+
+  private Timer createTimer(String name, Date dueDate) {
+    return createTimer(processInstance, name, dueDate);
+  }
+
+  private Timer createTimer(ProcessInstance processInstance, String name, Date dueDate) {
+    Timer timer = new Timer(processInstance.getRootToken());
+    timer.setName(name);
+    timer.setDueDate(dueDate);
+    jbpmContext.getServices().getSchedulerService().createTimer(timer);
+    return timer;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db.hibernate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.mapping.SimpleValue;
+
+import org.jbpm.AbstractJbpmTestCase;
+import org.jbpm.JbpmException;
+import org.jbpm.graph.def.ProcessDefinition;
+
+public class HibernateHelperTest extends AbstractJbpmTestCase {
+
+  private Configuration configuration;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    configuration = HibernateHelper.createConfiguration(null, null);
+  }
+
+  public void testNativeIdGenerator() {
+    assertEquals("native", getIdentifier("org.jbpm.job.Job").getIdentifierGeneratorStrategy());
+  }
+
+  public void testUnknownIdGenerator() {
+    configuration.setProperty(HibernateHelper.ID_GENERATOR, "uuid");
+    try {
+      HibernateHelper.configureIdGenerators(configuration);
+      fail("expected exception");
+    }
+    catch (JbpmException e) {
+      // expected
+    }
+  }
+
+  public void testPooledIdGenerator() {
+    configuration.setProperty(HibernateHelper.ID_GENERATOR, "pooled");
+    configuration.setProperty(HibernateHelper.ID_INCREMENT_SIZE, "20");
+    HibernateHelper.configureIdGenerators(configuration);
+
+    SimpleValue identifier = getIdentifier("org.jbpm.job.Job");
+    assertEquals(SequenceStyleGenerator.class.getName(),
+      identifier.getIdentifierGeneratorStrategy());
+    assertEquals("20", identifier.getIdentifierGeneratorProperties()
+      .getProperty(SequenceStyleGenerator.INCREMENT_PARAM));
+
+    // all entities share one sequence, or one table where the database lacks sequences
+    assertEquals(1, countSchemaObjects(new HSQLDialect(), "create sequence "));
+    assertEquals(1, countSchemaObjects(new MySQLDialect(), "create table "));
+  }
+
+  public void testPooledIdentifiers() {
+    configuration.setProperty(HibernateHelper.ID_GENERATOR, "pooled");
+    configuration.setProperty(HibernateHelper.ID_INITIAL_VALUE, "1000000");
+    HibernateHelper.configureIdGenerators(configuration);
+
+    // schema update creates the sequence
+    SessionFactory sessionFactory = configuration.buildSessionFactory();
+    try {
+      Session session = sessionFactory.openSession();
+      try {
+        ProcessDefinition processDefinition = new ProcessDefinition("pooled");
+        session.save(processDefinition);
+        assertTrue(processDefinition.getId() >= 1000000);
+        session.delete(processDefinition);
+        session.flush();
+      }
+      finally {
+        session.createSQLQuery("drop sequence " + HibernateHelper.ID_SEQUENCE_NAME)
+          .executeUpdate();
+        session.close();
+      }
+    }
+    finally {
+      sessionFactory.close();
+    }
+  }
+
+  private SimpleValue getIdentifier(String entityName) {
+    return (SimpleValue) configuration.getClassMapping(entityName).getIdentifier();
+  }
+
+  private int countSchemaObjects(Dialect dialect, String prefix) {
+    List script = Arrays.asList(configuration.generateSchemaCreationScript(dialect));
+    int count = 0;
+    for (int i = 0; i < script.size(); i++) {
+      String sql = (String) script.get(i);
+      if (sql.startsWith(prefix) && sql.indexOf(HibernateHelper.ID_SEQUENCE_NAME) != -1) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.db.hibernate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+
+import junit.framework.TestCase;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.MySQL5InnoDBDialect;
+import org.hibernate.dialect.Oracle9Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.dialect.SQLServerDialect;
+
+public class SkipLockedSupportTest extends TestCase {
+
+  public void testPostgreSQL() {
+    Dialect dialect = new PostgreSQLDialect();
+    assertNull(SkipLockedSupport.forDialect(dialect, createMetaData(9, 4)));
+
+    SkipLockedSupport skipLocked = SkipLockedSupport.forDialect(dialect, createMetaData(9, 5));
+    assertEquals("select ID_ from JBPM_JOB where ID_ in (?, ?) for update skip locked",
+      skipLocked.getSelectString("ID_", "JBPM_JOB", "ID_ in (?, ?)"));
+    assertEquals("select ID_ from JBPM_JOB where RETRIES_ > 0 order by PRIORITY_ limit 5 "
+      + "for update skip locked", skipLocked.getLimitedSelectString("ID_", "JBPM_JOB",
+      "RETRIES_ > 0", "PRIORITY_", 5));
+    assertSame(skipLocked, SkipLockedSupport.forDialect(dialect, createMetaData(12, 0)));
+  }
+
+  public void testMySQL() {
+    Dialect dialect = new MySQL5InnoDBDialect();
+    assertNull(SkipLockedSupport.forDialect(dialect, createMetaData(5, 7)));
+    assertSame(SkipLockedSupport.LIMIT_FOR_UPDATE,
+      SkipLockedSupport.forDialect(dialect, createMetaData(8, 0)));
+    // jbpm dialect extends the hibernate dialect
+    assertSame(SkipLockedSupport.LIMIT_FOR_UPDATE,
+      SkipLockedSupport.forDialect(new MySQLDialect(), createMetaData(8, 0)));
+  }
+
+  public void testOracle() {
+    Dialect dialect = new Oracle9Dialect();
+    assertNull(SkipLockedSupport.forDialect(dialect, createMetaData(10, 2)));
+    SkipLockedSupport skipLocked = SkipLockedSupport.forDialect(dialect, createMetaData(11, 2));
+    assertSame(SkipLockedSupport.FOR_UPDATE, skipLocked);
+    // rownum cannot limit rows that skip locked ones
+    assertNull(skipLocked.getLimitedSelectString("ID_", "JBPM_JOB", "RETRIES_ > 0",
+      "PRIORITY_", 5));
+  }
+
+  public void testSQLServer() {
+    SkipLockedSupport skipLocked = SkipLockedSupport.forDialect(new SQLServerDialect(),
+      createMetaData(9, 0));
+    assertEquals("select ID_ from JBPM_JOB with (updlock, rowlock, readpast) where ID_ = ?",
+      skipLocked.getSelectString("ID_", "JBPM_JOB", "ID_ = ?"));
+    assertEquals("select top 5 ID_ from JBPM_JOB with (updlock, rowlock, readpast) "
+      + "where RETRIES_ > 0 order by PRIORITY_", skipLocked.getLimitedSelectString("ID_",
+      "JBPM_JOB", "RETRIES_ > 0", "PRIORITY_", 5));
+  }
+
+  public void testUnsupportedDialect() {
+    assertNull(SkipLockedSupport.forDialect(new HSQLDialect(), createMetaData(1, 8)));
+    assertNull(SkipLockedSupport.forDialect(new SybaseDialect(), createMetaData(15, 0)));
+  }
+
+  private static DatabaseMetaData createMetaData(final int majorVersion,
+    final int minorVersion) {
+    InvocationHandler handler = new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String methodName = method.getName();
+        if ("getDatabaseMajorVersion".equals(methodName)) return new Integer(majorVersion);
+        if ("getDatabaseMinorVersion".equals(methodName)) return new Integer(minorVersion);
+        throw new UnsupportedOperationException(methodName);
+      }
+    };
+    return (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+      new Class[] { DatabaseMetaData.class }, handler);
+  }
+}
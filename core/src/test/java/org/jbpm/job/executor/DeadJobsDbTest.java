@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.Date;
+import java.util.List;
+
+import org.jbpm.JbpmConfiguration.Configs;
+import org.jbpm.command.PurgeDeadJobsCommand;
+import org.jbpm.command.RequeueDeadJobsCommand;
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ActionHandler;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ExecutionContext;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.ExceptionTrace;
+import org.jbpm.job.ExecuteNodeJob;
+import org.jbpm.job.Job;
+
+public class DeadJobsDbTest extends AbstractDbTestCase {
+
+  static volatile boolean failing;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    failing = true;
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='dead jobs'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <node name='a' async='true'>"
+      + "    <action class='"
+      + FailingAction.class.getName()
+      + "' />"
+      + "    <transition to='end' />"
+      + "  </node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setMoveDeadJobs(true);
+    jobExecutor.setRetryPolicy(new ExponentialBackoffRetryPolicy(10, 100, 2));
+  }
+
+  protected void tearDown() throws Exception {
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setMoveDeadJobs(false);
+    jobExecutor.setRetryPolicy(null);
+    super.tearDown();
+  }
+
+  public static class FailingAction implements ActionHandler {
+    private static final long serialVersionUID = 1L;
+
+    public void execute(ExecutionContext executionContext) throws Exception {
+      if (failing) throw new IllegalStateException("a failed");
+      executionContext.leaveNode();
+    }
+  }
+
+  public void testRequeueDeadJobs() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("dead jobs");
+    processInstance.signal();
+    processJobs();
+
+    // job ran out of retries and left the job table
+    assertEquals(0, jobSession.findJobsByToken(processInstance.getRootToken()).size());
+    assertEquals(1, jobSession.countDeadJobs());
+    List deadJobs = jobSession.findDeadJobs("dead jobs", 10);
+    assertEquals(1, deadJobs.size());
+    Job deadJob = (Job) deadJobs.get(0);
+    assertSame(ExecuteNodeJob.class, deadJob.getClass());
+    assertEquals(0, deadJob.getRetries());
+    assertNotNull(deadJob.getException());
+    assertNotNull(deadJob.getLockTime());
+    assertEquals(0, jobSession.findDeadJobs("other process", 10).size());
+
+    // requeued job runs again once the failure cause is gone
+    failing = false;
+    List requeuedJobs = (List) new RequeueDeadJobsCommand("dead jobs").execute(jbpmContext);
+    assertEquals(1, requeuedJobs.size());
+    newTransaction();
+    assertEquals(0, jobSession.countDeadJobs());
+    processJobs();
+
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+  }
+
+  public void testPurgeDeadJobs() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("dead jobs");
+    processInstance.signal();
+    processJobs();
+    assertEquals(1, jobSession.countDeadJobs());
+
+    PurgeDeadJobsCommand command = new PurgeDeadJobsCommand().processDefinitionName("other process");
+    assertEquals(new Integer(0), command.execute(jbpmContext));
+    command = new PurgeDeadJobsCommand(new Date(System.currentTimeMillis() - 60000));
+    assertEquals(new Integer(0), command.execute(jbpmContext));
+    command = new PurgeDeadJobsCommand().processDefinitionName("dead jobs");
+    assertEquals(new Integer(1), command.execute(jbpmContext));
+    assertEquals(0, jobSession.countDeadJobs());
+  }
+
+  public void testCompactException() throws Exception {
+    jbpmConfiguration.getJobExecutor().setStoreExceptionTraces(true);
+    try {
+      ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("dead jobs");
+      processInstance.signal();
+      processJobs();
+    }
+    finally {
+      jbpmConfiguration.getJobExecutor().setStoreExceptionTraces(false);
+    }
+
+    // the job keeps a summary of the exception and counts repeats
+    Job deadJob = (Job) jobSession.findDeadJobs("dead jobs", 10).get(0);
+    assertTrue(deadJob.getException().indexOf("IllegalStateException: a failed") != -1);
+    assertEquals(Configs.getInt("jbpm.job.retries") + 1, deadJob.getExceptionCount());
+
+    // the full trace is stored once
+    ExceptionTrace exceptionTrace = jobSession.loadExceptionTrace(deadJob.getExceptionFingerprint());
+    assertNotNull(exceptionTrace);
+    assertTrue(exceptionTrace.getStackTrace().indexOf(FailingAction.class.getName()) != -1);
+    session.delete(exceptionTrace);
+  }
+
+  public void testExponentialBackoff() {
+    ExponentialBackoffRetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy(1000, 5000, 2);
+    for (int i = 0; i < 10; i++) {
+      long delay = retryPolicy.getRetryDelay(null, 1);
+      assertTrue(delay >= 500 && delay <= 1000);
+      delay = retryPolicy.getRetryDelay(null, 3);
+      assertTrue(delay >= 2000 && delay <= 4000);
+      delay = retryPolicy.getRetryDelay(null, 10);
+      assertTrue(delay >= 2500 && delay <= 5000);
+    }
+  }
+}
@@ -2,10 +2,16 @@ package org.jbpm.job.executor;
 
 
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.hibernate.StaleObjectStateException;
+import org.jbpm.job.ExecuteNodeJob;
+import org.jbpm.persistence.JbpmPersistenceException;
+
 public class DispatcherAndJobExecutorMethodTest extends TestCase {
 
   private DispatcherThread dispatcherThread = null;
@@ -14,7 +20,7 @@ public class DispatcherAndJobExecutorMethodTest extends TestCase {
   
   public void setUp() { 
     jobExecutor = new JobExecutor();
-    dispatcherThread = new DispatcherThread("Test-Dispatcher", jobExecutor);
+    dispatcherThread = new DispatcherThread("Test-Dispatcher", jobExecutor, new JobLane());
     jobExecutorThread = new JobExecutorThread("Test-JobExecutorThread", jobExecutor);
   }
   
@@ -51,5 +57,72 @@ public class DispatcherAndJobExecutorMethodTest extends TestCase {
       9 * 1000 <= waitPeriod && waitPeriod <= 11 * 1000 );
   }
   
-}
+  public void testAdaptiveIdleInterval() {
+    jobExecutor.setIdleInterval(1000);
+    jobExecutor.setMaxIdleInterval(5000);
+    jobExecutor.setCircuitBreakerThreshold(2);
+    assertEquals(1000, dispatcherThread.getCurrentIdleInterval());
+
+    // back off while the queue is empty
+    dispatcherThread.adaptIdleInterval(false, null);
+    assertEquals(2000, dispatcherThread.getCurrentIdleInterval());
+    dispatcherThread.adaptIdleInterval(false, null);
+    dispatcherThread.adaptIdleInterval(false, null);
+    assertEquals(5000, dispatcherThread.getCurrentIdleInterval());
+
+    // tighten again when jobs are found
+    dispatcherThread.adaptIdleInterval(true, null);
+    assertEquals(1000, dispatcherThread.getCurrentIdleInterval());
+
+    // lock conflicts do not open the circuit
+    RuntimeException lockConflict = new StaleObjectStateException("Job", new Long(1));
+    dispatcherThread.adaptIdleInterval(false, lockConflict);
+    dispatcherThread.adaptIdleInterval(false, lockConflict);
+    assertFalse(dispatcherThread.isCircuitOpen());
+
+    // database failures do
+    RuntimeException dbFailure = new JbpmPersistenceException("connection refused");
+    dispatcherThread.adaptIdleInterval(false, dbFailure);
+    assertFalse(dispatcherThread.isCircuitOpen());
+    dispatcherThread.adaptIdleInterval(false, dbFailure);
+    assertTrue(dispatcherThread.isCircuitOpen());
+
+    // a successful probe closes it
+    dispatcherThread.adaptIdleInterval(false, null);
+    assertFalse(dispatcherThread.isCircuitOpen());
+    assertEquals(5000, dispatcherThread.getCurrentIdleInterval());
+  }
+
+  public void testDispatchPermits() {
+    JobLane lane = new JobLane();
+    lane.setNbrOfThreads(2);
+    lane.createDispatchQueue(1);
 
+    // room for two busy threads plus one prefetched job
+    assertEquals(2, lane.acquireDispatchPermits(2));
+    assertEquals(1, lane.acquireDispatchPermits(5));
+
+    // dispatcher blocks until an executor thread is done with a job
+    Thread.currentThread().interrupt();
+    assertEquals(0, lane.acquireDispatchPermits(1));
+
+    lane.jobProcessed(null);
+    assertEquals(1, lane.acquireDispatchPermits(3));
+    lane.releaseDispatchPermits(3);
+    assertEquals(3, lane.acquireDispatchPermits(3));
+  }
+
+  public void testHandOff() {
+    JobLane lane = new JobLane();
+    lane.createDispatchQueue(0);
+
+    List jobs = Collections.singletonList(new ExecuteNodeJob());
+    assertTrue(jobExecutor.submitJobs(jobs, lane));
+    assertSame(jobs, lane.takeJobs());
+
+    // executor thread gives up when interrupted
+    Thread.currentThread().interrupt();
+    assertNull(lane.takeJobs());
+  }
+
+}
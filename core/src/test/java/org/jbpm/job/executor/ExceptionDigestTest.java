@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import junit.framework.TestCase;
+
+public class ExceptionDigestTest extends TestCase {
+
+  public void testFingerprintIgnoresMessage() {
+    String[] fingerprints = new String[2];
+    for (int i = 0; i < fingerprints.length; i++) {
+      fingerprints[i] = ExceptionDigest.getFingerprint(newException("order " + i));
+    }
+    String fingerprint = fingerprints[0];
+    assertEquals(32, fingerprint.length());
+    assertEquals(fingerprint, fingerprints[1]);
+    assertFalse(fingerprint.equals(ExceptionDigest.getFingerprint(new IllegalStateException())));
+  }
+
+  public void testFingerprintUsesRootCause() {
+    RuntimeException rootCause = newException("order 1");
+    RuntimeException exception = new RuntimeException("wrapper", rootCause);
+    assertEquals(ExceptionDigest.getFingerprint(rootCause),
+      ExceptionDigest.getFingerprint(exception));
+    assertSame(rootCause, ExceptionDigest.getRootCause(exception));
+  }
+
+  public void testSummary() {
+    RuntimeException exception = new RuntimeException("wrapper", deepFail(50));
+    String summary = ExceptionDigest.getSummary(exception);
+    assertTrue(summary.startsWith("java.lang.RuntimeException: wrapper\n"
+      + "Caused by: java.lang.IllegalArgumentException: deep\n"));
+    int frameCount = 0;
+    for (int i = summary.indexOf("\tat "); i != -1; i = summary.indexOf("\tat ", i + 1)) {
+      frameCount++;
+    }
+    assertEquals(ExceptionDigest.MAX_FRAMES, frameCount);
+    assertTrue(summary.endsWith(" more"));
+  }
+
+  private static RuntimeException newException(String message) {
+    return new IllegalArgumentException(message);
+  }
+
+  private static RuntimeException deepFail(int depth) {
+    return depth == 0 ? new IllegalArgumentException("deep") : deepFail(depth - 1);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ActionHandler;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ExecutionContext;
+import org.jbpm.graph.exe.ProcessInstance;
+
+public class ExclusiveJobsDbTest extends AbstractDbTestCase {
+
+  static final int BRANCH_COUNT = 4;
+
+  static Set jbpmContexts = Collections.synchronizedSet(new HashSet());
+  static volatile boolean failing;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    jbpmContexts.clear();
+    failing = false;
+  }
+
+  protected void tearDown() throws Exception {
+    jbpmConfiguration.getJobExecutor().setExclusiveJobBatchSize(10);
+    super.tearDown();
+  }
+
+  public static class RecordContext implements ActionHandler {
+    private static final long serialVersionUID = 1L;
+
+    public void execute(ExecutionContext executionContext) throws Exception {
+      jbpmContexts.add(executionContext.getJbpmContext());
+      if (failing && "b2".equals(executionContext.getNode().getName())) {
+        // fail once
+        failing = false;
+        throw new IllegalStateException("b2 failed");
+      }
+      executionContext.leaveNode();
+    }
+  }
+
+  public void testExclusiveJobsInOneTransaction() {
+    jbpmConfiguration.getJobExecutor().setExclusiveJobBatchSize(BRANCH_COUNT);
+    ProcessInstance processInstance = startProcessInstance();
+
+    processJobs();
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+    // all branches ran in the same transaction
+    assertEquals(1, jbpmContexts.size());
+  }
+
+  public void testExclusiveJobsOnePerTransaction() {
+    jbpmConfiguration.getJobExecutor().setExclusiveJobBatchSize(1);
+    ProcessInstance processInstance = startProcessInstance();
+
+    processJobs();
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+    assertEquals(BRANCH_COUNT, jbpmContexts.size());
+  }
+
+  public void testFailedTransaction() {
+    jbpmConfiguration.getJobExecutor().setExclusiveJobBatchSize(BRANCH_COUNT);
+    ProcessInstance processInstance = startProcessInstance();
+    failing = true;
+
+    processJobs();
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+    // after the failed transaction, each branch ran in a transaction of its own
+    assertEquals(1 + BRANCH_COUNT, jbpmContexts.size());
+  }
+
+  private ProcessInstance startProcessInstance() {
+    StringBuffer xml = new StringBuffer("<process-definition name='exclusive branches'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='fork' />"
+      + "  </start-state>"
+      + "  <fork name='fork'>");
+    for (int i = 1; i <= BRANCH_COUNT; i++) {
+      xml.append("    <transition name='b" + i + "' to='b" + i + "' />");
+    }
+    xml.append("  </fork>");
+    for (int i = 1; i <= BRANCH_COUNT; i++) {
+      xml.append("  <node name='b" + i + "' async='exclusive'>")
+        .append("    <action class='" + RecordContext.class.getName() + "' />")
+        .append("    <transition to='join' />")
+        .append("  </node>");
+    }
+    xml.append("  <join name='join'>"
+      + "    <transition to='end' />"
+      + "  </join>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(ProcessDefinition.parseXmlString(xml.toString()));
+
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("exclusive branches");
+    processInstance.signal();
+    return processInstance;
+  }
+}
@@ -1,12 +1,22 @@
 package org.jbpm.job.executor;
 
+import java.lang.management.ManagementFactory;
 import java.text.FieldPosition;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.jbpm.db.AbstractDbTestCase;
 import org.jbpm.graph.def.Action;
@@ -14,6 +24,10 @@ import org.jbpm.graph.def.ActionHandler;
 import org.jbpm.graph.def.ProcessDefinition;
 import org.jbpm.graph.exe.ExecutionContext;
 import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.ExecuteActionJob;
+import org.jbpm.job.ExecuteNodeJob;
+import org.jbpm.job.Job;
+import org.jbpm.job.JobExecutorLease;
 
 public class JobExecutorDbTest extends AbstractDbTestCase {
 
@@ -24,6 +38,8 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
 
   protected void setUp() throws Exception {
     super.setUp();
+    collectedResults.clear();
+    allocatedProcessIds.clear();
     // [JBPM-2115] multiple threads not supported on DB2 < 9.7
     // multiple threads not supported on HSQL
     String dialect = getHibernateDialect();
@@ -33,7 +49,24 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
   }
 
   protected void tearDown() throws Exception {
-    jbpmConfiguration.getJobExecutor().setNbrOfThreads(1);
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setNbrOfThreads(1);
+    jobExecutor.setVirtualThreads(false);
+    jobExecutor.setPartitionCount(0);
+    jobExecutor.setLanes(null);
+    jobExecutor.setJmxName(null);
+    jobExecutor.setHistoryMaxSize(100);
+    jobExecutor.setThrottles(null);
+    jobExecutor.setPrefetchSize(0);
+    ExecutorService executorService = jobExecutor.getExecutorService();
+    if (executorService != null) {
+      executorService.shutdown();
+      jobExecutor.setExecutorService(null);
+    }
+    // remove leases left by partitioned job executor
+    for (Iterator i = jobSession.findJobExecutorLeases().iterator(); i.hasNext();) {
+      jobSession.deleteJobExecutorLease((JobExecutorLease) i.next());
+    }
     super.tearDown();
   }
 
@@ -44,6 +77,128 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
     assertEquals(createExpectedResults(), collectedResults);
   }
 
+  public void testJobExecutorWithExecutorService() {
+    jbpmConfiguration.getJobExecutor().setExecutorService(Executors.newSingleThreadExecutor());
+    testJobExecutor();
+  }
+
+  public void testJobExecutorWithVirtualThreads() {
+    // falls back to executor threads before java 21
+    jbpmConfiguration.getJobExecutor().setVirtualThreads(true);
+    testJobExecutor();
+  }
+
+  public void testJobExecutorWithPartitions() {
+    jbpmConfiguration.getJobExecutor().setPartitionCount(4);
+    testJobExecutor();
+  }
+
+  public void testJobExecutorWithLanes() {
+    // urgent and normal jobs apart from low priority jobs
+    jbpmConfiguration.getJobExecutor().setLanes(Arrays.asList(new JobLane[] {
+      new JobLane("urgent", Job.PRIORITY_HIGHEST, Job.PRIORITY_NORMAL, 1),
+      new JobLane("bulk", Job.PRIORITY_LOW, Job.PRIORITY_LOWEST, 1) }));
+    testJobExecutor();
+  }
+
+  public void testJobExecutorWithThrottles() {
+    JobThrottle processThrottle = new JobThrottle(500, 2);
+    JobThrottle actionThrottle = new JobThrottle(0, 1);
+    Map throttles = new HashMap();
+    throttles.put("bulk messages", processThrottle);
+    throttles.put(ExecuteActionJob.class.getName(), actionThrottle);
+    jbpmConfiguration.getJobExecutor().setThrottles(throttles);
+    testJobExecutor();
+
+    // every acquired job was released
+    assertEquals(0, processThrottle.getInFlight());
+    assertEquals(0, actionThrottle.getInFlight());
+  }
+
+  public void testJobExecutorMetrics() throws Exception {
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setJmxName("org.jbpm.test:service=JobExecutor");
+    jobExecutor.setHistoryMaxSize(10);
+    testJobExecutor();
+
+    JobExecutorMetrics metrics = jobExecutor.getMetrics();
+    int jobCount = INSTANCE_COUNT * nodeNames.length;
+    assertEquals(jobCount, metrics.getExecutedJobCount());
+    assertTrue(metrics.getAcquiredJobCount() >= jobCount);
+    assertTrue(metrics.getAcquisitionTime().getCount() > 0);
+    assertTrue(metrics.getExecutionTime().getCount() >= jobCount);
+    assertEquals(0, metrics.getBusyThreadCount());
+    assertEquals(0, metrics.getQueuedJobCount());
+
+    Map jobClassStatistics = metrics.getJobClassStatistics();
+    JobStatistics statistics = (JobStatistics) jobClassStatistics.get(ExecuteNodeJob.class.getName());
+    assertEquals(INSTANCE_COUNT * 5, statistics.getExecutedCount());
+    statistics = (JobStatistics) jobClassStatistics.get(ExecuteActionJob.class.getName());
+    assertEquals(INSTANCE_COUNT * 3, statistics.getExecutedCount());
+    statistics = (JobStatistics) metrics.getProcessDefinitionStatistics().get("bulk messages");
+    assertEquals(jobCount, statistics.getExecutedCount());
+    assertEquals(10, metrics.getRecentExecutions().size());
+
+    // metrics are registered while the job executor is started
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(jobExecutor.getJmxName());
+    assertFalse(mbeanServer.isRegistered(objectName));
+    startJobExecutor();
+    try {
+      assertEquals(new Long(0), mbeanServer.getAttribute(objectName, "ExecutedJobCount"));
+      assertEquals(new Integer(1), mbeanServer.getAttribute(objectName, "IdleThreadCount"));
+    }
+    finally {
+      stopJobExecutor();
+    }
+    assertFalse(mbeanServer.isRegistered(objectName));
+  }
+
+  public void testDrainAndJoin() throws Exception {
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='slow messages'>"
+      + "  <start-state>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <node name='a' async='true'>"
+      + "    <action class='"
+      + SlowActivity.class.getName()
+      + "' />"
+      + "    <transition to='end' />"
+      + "  </node>"
+      + "  <end-state name='end'/>"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+    for (int i = 0; i < 3; i++) {
+      jbpmContext.newProcessInstanceForUpdate("slow messages").signal();
+    }
+    newTransaction();
+
+    // one job in progress, two prefetched
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setPrefetchSize(2);
+    startJobExecutor();
+    try {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (jobExecutor.getQueuedJobCount() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(2, jobExecutor.getQueuedJobCount());
+    }
+    finally {
+      this.jobExecutor = null;
+    }
+
+    // prefetched jobs are handed back, the job in progress finishes
+    List releasedJobIds = jobExecutor.drainAndJoin();
+    assertEquals(2, releasedJobIds.size());
+    for (Iterator i = releasedJobIds.iterator(); i.hasNext();) {
+      Job job = jobSession.loadJob(((Long) i.next()).longValue());
+      assertNull(job.getLockOwner());
+      assertNull(job.getLockTime());
+    }
+    processJobs();
+  }
+
   void deployProcessDefinition() {
     ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='bulk messages'>"
       + "  <start-state>"
@@ -66,7 +221,7 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
       + "' />"
       + "    <transition to='c' />"
       + "  </node>"
-      + "  <node name='c' async='true'>"
+      + "  <node name='c' async='true' async-priority='low'>"
       + "    <action class='"
       + AutomaticActivity.class.getName()
       + "' />"
@@ -82,7 +237,7 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
       + "' />"
       + "    <transition to='e' />"
       + "    <event type='node-leave'>"
-      + "      <action name='Z' async='true' class='"
+      + "      <action name='Z' async='true' async-priority='highest' class='"
       + AsyncAction.class.getName()
       + "' />"
       + "    </event>"
@@ -157,6 +312,16 @@ public class JobExecutorDbTest extends AbstractDbTestCase {
     }
   }
 
+  public static class SlowActivity implements ActionHandler {
+
+    private static final long serialVersionUID = 1L;
+
+    public void execute(ExecutionContext executionContext) throws Exception {
+      Thread.sleep(1000);
+      executionContext.leaveNode();
+    }
+  }
+
   static synchronized String getProcessIndex(long id) {
     Long identifier = new Long(id);
     if (!allocatedProcessIds.contains(identifier)) allocatedProcessIds.add(identifier);
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import junit.framework.TestCase;
+
+public class JobThrottleTest extends TestCase {
+
+  public void testRate() {
+    JobThrottle throttle = new JobThrottle(2, 0);
+    long now = 1000000;
+
+    // bucket starts full
+    assertTrue(throttle.tryAcquire(now));
+    assertTrue(throttle.tryAcquire(now));
+    assertFalse(throttle.tryAcquire(now));
+    assertTrue(throttle.isExhausted(now));
+    assertEquals(500, throttle.getRefillDelay(now));
+
+    // one token every half second
+    assertFalse(throttle.tryAcquire(now + 499));
+    assertTrue(throttle.tryAcquire(now + 500));
+    assertFalse(throttle.tryAcquire(now + 500));
+
+    // refund gives the token back
+    throttle.refund();
+    assertTrue(throttle.tryAcquire(now + 500));
+  }
+
+  public void testBurst() {
+    JobThrottle throttle = new JobThrottle(1, 0);
+    throttle.setBurst(3);
+    long now = 1000000;
+    for (int i = 0; i < 3; i++) {
+      assertTrue(throttle.tryAcquire(now));
+    }
+    assertFalse(throttle.tryAcquire(now));
+
+    // bucket never holds more than the burst
+    assertFalse(throttle.isExhausted(now + 60000));
+    for (int i = 0; i < 3; i++) {
+      assertTrue(throttle.tryAcquire(now + 60000));
+    }
+    assertFalse(throttle.tryAcquire(now + 60000));
+  }
+
+  public void testMaxInFlight() {
+    JobThrottle throttle = new JobThrottle(0, 2);
+    long now = 1000000;
+    assertTrue(throttle.tryAcquire(now));
+    assertTrue(throttle.tryAcquire(now));
+    assertFalse(throttle.tryAcquire(now));
+    assertTrue(throttle.isExhausted(now));
+    assertEquals(0, throttle.getRefillDelay(now));
+
+    // the first release makes room
+    assertTrue(throttle.release());
+    assertFalse(throttle.isExhausted(now));
+    assertFalse(throttle.release());
+    assertEquals(0, throttle.getInFlight());
+  }
+}
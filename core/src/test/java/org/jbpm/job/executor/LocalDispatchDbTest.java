@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.List;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+
+public class LocalDispatchDbTest extends AbstractDbTestCase {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='local dispatch'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <node name='a' async='true'>"
+      + "    <transition to='b' />"
+      + "  </node>"
+      + "  <node name='b' async='true'>"
+      + "    <transition to='end' />"
+      + "  </node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setLocalDispatch(true);
+    startJobExecutor();
+  }
+
+  protected void tearDown() throws Exception {
+    stopJobExecutor();
+    super.tearDown();
+  }
+
+  public void testLocalDispatch() {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("local dispatch");
+    processInstance.signal();
+
+    // job is locked only after the transaction commits
+    assertNull(getJob(processInstance).getLockOwner());
+
+    closeJbpmContext();
+    try {
+      waitForJobs(20000);
+    }
+    finally {
+      createJbpmContext();
+    }
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+  }
+
+  public void testRollback() {
+    // make room for a single local job
+    JobLane lane = (JobLane) jobExecutor.getActiveLanes().get(0);
+    int capacity = lane.getNbrOfThreads() + jobExecutor.getPrefetchSize();
+    for (int i = 1; i < capacity; i++) {
+      assertTrue(lane.reserveLocalJob());
+    }
+
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("local dispatch");
+    processInstance.signal();
+    // no room left for another local job
+    assertFalse(lane.reserveLocalJob());
+
+    // rollback gives back room
+    jbpmContext.setRollbackOnly();
+    newTransaction();
+    assertTrue(lane.reserveLocalJob());
+
+    for (int i = 0; i < capacity; i++) {
+      lane.cancelLocalJob();
+    }
+  }
+
+  public void testDeleteInSameTransaction() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("local dispatch");
+    processInstance.signal();
+
+    // job stays deletable within its transaction, as when the process instance ends
+    assertEquals(1, jobSession.countDeletableJobsForProcessInstance(processInstance));
+    jobSession.deleteJobsForProcessInstance(processInstance);
+    newTransaction();
+    Thread.sleep(1000);
+
+    assertEquals(0, jobSession.findJobsByToken(processInstance.getRootToken()).size());
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertEquals("a", processInstance.getRootToken().getNode().getName());
+  }
+
+  public void testSuspendInSameTransaction() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("local dispatch");
+    processInstance.signal();
+    getJob(processInstance);
+
+    // dispatcher skips the suspended job
+    processInstance.suspend();
+    newTransaction();
+    Thread.sleep(1000);
+    Job job = getJob(processInstance);
+    assertTrue(job.isSuspended());
+    assertNull(job.getLockOwner());
+
+    processInstance = jbpmContext.loadProcessInstanceForUpdate(processInstance.getId());
+    processInstance.resume();
+    closeJbpmContext();
+    try {
+      synchronized (jobExecutor) {
+        jobExecutor.notifyAll();
+      }
+      waitForJobs(20000);
+    }
+    finally {
+      createJbpmContext();
+    }
+    processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+    assertTrue(processInstance.hasEnded());
+  }
+
+  private Job getJob(ProcessInstance processInstance) {
+    List jobs = jobSession.findJobsByToken(processInstance.getRootToken());
+    assertEquals(1, jobs.size());
+    return (Job) jobs.get(0);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.job.Job;
+import org.jbpm.job.JobExecutorLease;
+import org.jbpm.job.Timer;
+
+public class PartitionLeaseDbTest extends AbstractDbTestCase {
+
+  private static final int PARTITION_COUNT = 4;
+
+  private LockMonitorThread monitorA;
+  private LockMonitorThread monitorB;
+  private JobExecutor jobExecutorA;
+  private JobExecutor jobExecutorB;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    jobExecutorA = createJobExecutor("A");
+    monitorA = new LockMonitorThread(jobExecutorA);
+    jobExecutorB = createJobExecutor("B");
+    monitorB = new LockMonitorThread(jobExecutorB);
+  }
+
+  protected void tearDown() throws Exception {
+    newTransaction();
+    for (Iterator i = jobSession.findJobExecutorLeases().iterator(); i.hasNext();) {
+      jobSession.deleteJobExecutorLease((JobExecutorLease) i.next());
+    }
+    super.tearDown();
+  }
+
+  private JobExecutor createJobExecutor(String name) {
+    JobExecutor jobExecutor = new JobExecutor();
+    jobExecutor.setJbpmConfiguration(getJbpmConfiguration());
+    jobExecutor.setName(name);
+    jobExecutor.setPartitionCount(PARTITION_COUNT);
+    return jobExecutor;
+  }
+
+  public void testSingleMember() {
+    renewPartitionLeases(monitorA);
+    assertEquals(createPartitions(0, 4), jobExecutorA.getOwnedPartitions());
+    assertEquals(createPartitions(0, 4), jobExecutorA.getAcquisitionPartitions());
+
+    // renewal keeps partitions
+    renewPartitionLeases(monitorA);
+    assertEquals(createPartitions(0, 4), jobExecutorA.getOwnedPartitions());
+  }
+
+  public void testRebalance() {
+    renewPartitionLeases(monitorA);
+    // all partitions are held by A
+    renewPartitionLeases(monitorB);
+    assertEquals(Collections.EMPTY_SET, jobExecutorB.getOwnedPartitions());
+
+    // A learns about B and gives up half of the partitions
+    renewPartitionLeases(monitorA);
+    assertEquals(createPartitions(0, 2), jobExecutorA.getOwnedPartitions());
+    renewPartitionLeases(monitorB);
+    assertEquals(createPartitions(2, 4), jobExecutorB.getOwnedPartitions());
+
+    // B leaves, A takes over its partitions
+    releasePartitionLeases(monitorB);
+    assertEquals(Collections.EMPTY_SET, jobExecutorB.getOwnedPartitions());
+    renewPartitionLeases(monitorA);
+    assertEquals(createPartitions(0, 4), jobExecutorA.getOwnedPartitions());
+  }
+
+  public void testExpiredLeases() {
+    jobExecutorB.setPartitionLeaseDuration(1);
+    renewPartitionLeases(monitorB);
+    assertEquals(createPartitions(0, 4), jobExecutorB.getOwnedPartitions());
+
+    // B fails to renew its leases in time
+    sleep(10);
+    renewPartitionLeases(monitorA);
+    assertEquals(createPartitions(0, 4), jobExecutorA.getOwnedPartitions());
+  }
+
+  public void testJobWithoutProcessInstance() {
+    Timer timer = new Timer();
+    timer.setName("orphan");
+    timer.setDueDate(new Date(System.currentTimeMillis() - 1000));
+    jobSession.saveJob(timer);
+
+    renewPartitionLeases(monitorA);
+    renewPartitionLeases(monitorB);
+    renewPartitionLeases(monitorA);
+    renewPartitionLeases(monitorB);
+    // jobs without a process instance belong to partition 0, held by A
+    List jobs = findAcquirableJobs(jobExecutorA);
+    assertEquals(1, jobs.size());
+    assertEquals(0, findAcquirableJobs(jobExecutorB).size());
+    assertEquals(1, jobSession.findUnownedJobDueDates(new Date(), 10, Integer.MIN_VALUE,
+      Integer.MAX_VALUE, jobExecutorA.getAcquisitionPartitions(), PARTITION_COUNT).size());
+
+    jobSession.deleteJob((Job) jobs.get(0));
+  }
+
+  public void testPartitioningDisabled() {
+    jobExecutorA.setPartitionCount(0);
+    assertNull(jobExecutorA.getAcquisitionPartitions());
+  }
+
+  private List findAcquirableJobs(JobExecutor jobExecutor) {
+    return jobSession.findAcquirableJobs(10, Integer.MIN_VALUE, Integer.MAX_VALUE,
+      jobExecutor.getAcquisitionPartitions(), PARTITION_COUNT);
+  }
+
+  private void renewPartitionLeases(LockMonitorThread monitor) {
+    closeJbpmContext();
+    try {
+      monitor.renewPartitionLeases();
+    }
+    finally {
+      createJbpmContext();
+    }
+  }
+
+  private void releasePartitionLeases(LockMonitorThread monitor) {
+    closeJbpmContext();
+    try {
+      monitor.releasePartitionLeases();
+    }
+    finally {
+      createJbpmContext();
+    }
+  }
+
+  private static Set createPartitions(int from, int to) {
+    Integer[] partitions = new Integer[to - from];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Integer(from + i);
+    }
+    return new HashSet(Arrays.asList(partitions));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException e) {
+      fail("sleep interrupted");
+    }
+  }
+}
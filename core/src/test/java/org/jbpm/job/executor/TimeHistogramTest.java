@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import junit.framework.TestCase;
+
+public class TimeHistogramTest extends TestCase {
+
+  public void testEmpty() {
+    TimeHistogram histogram = new TimeHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(0.95));
+  }
+
+  public void testRecord() {
+    TimeHistogram histogram = new TimeHistogram();
+    for (int i = 0; i < 19; i++) {
+      histogram.record(10);
+    }
+    histogram.record(1500);
+
+    assertEquals(20, histogram.getCount());
+    assertEquals(1690, histogram.getTotal());
+    assertEquals(84, histogram.getMean());
+    assertEquals(1500, histogram.getMax());
+    assertEquals(10, histogram.getPercentile(0.5));
+    assertEquals(10, histogram.getPercentile(0.95));
+    // percentile falls in the bucket of the longest duration, bounded by the maximum
+    assertEquals(1500, histogram.getPercentile(0.99));
+  }
+
+  public void testLongDurations() {
+    TimeHistogram histogram = new TimeHistogram();
+    histogram.record(3600000);
+    assertEquals(3600000, histogram.getPercentile(0.5));
+  }
+
+  public void testReset() {
+    TimeHistogram histogram = new TimeHistogram();
+    histogram.record(100);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(1));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.Date;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Timer;
+
+public class TimerLookAheadDbTest extends AbstractDbTestCase {
+
+  private int idleInterval;
+  private int timerLookAhead;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='look ahead'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='wait' />"
+      + "  </start-state>"
+      + "  <state name='wait'>"
+      + "    <transition name='go' to='end' />"
+      + "  </state>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    idleInterval = jobExecutor.getIdleInterval();
+    timerLookAhead = jobExecutor.getTimerLookAhead();
+    jobExecutor.setIdleInterval(500);
+    jobExecutor.setTimerLookAhead(60000);
+  }
+
+  protected void tearDown() throws Exception {
+    JobExecutor jobExecutor = jbpmConfiguration.getJobExecutor();
+    jobExecutor.setIdleInterval(idleInterval);
+    jobExecutor.setTimerLookAhead(timerLookAhead);
+    super.tearDown();
+  }
+
+  public void testJobCreatedElsewhere() throws Exception {
+    // let the dispatcher load an empty window
+    startJobExecutor();
+    try {
+      Thread.sleep(1000);
+
+      ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("look ahead");
+      processInstance.signal();
+      // save the timer without notifying the job executor, as another process would
+      Timer timer = new Timer(processInstance.getRootToken());
+      timer.setName("go");
+      timer.setTransitionName("go");
+      timer.setDueDate(new Date());
+      jobSession.saveJob(timer);
+
+      // timer is found well before the window has passed
+      closeJbpmContext();
+      try {
+        waitForJobs(10000);
+      }
+      finally {
+        createJbpmContext();
+      }
+      processInstance = jbpmContext.loadProcessInstance(processInstance.getId());
+      assertTrue(processInstance.hasEnded());
+    }
+    finally {
+      stopJobExecutor();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.job.executor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TimerWheelTest extends TestCase {
+
+  private static final long START = 1000000;
+
+  private TimerWheel timerWheel = new TimerWheel(10, 8);
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    timerWheel.reset(START, START + 100000);
+  }
+
+  public void testEmptyWheel() {
+    assertEquals(Long.MAX_VALUE, timerWheel.nextExpiration());
+    assertEquals(Collections.EMPTY_LIST, timerWheel.expire(START + 50000));
+    assertEquals(0, timerWheel.size());
+  }
+
+  public void testDueImmediately() {
+    timerWheel.schedule(1, START - 5000);
+    timerWheel.schedule(2, START);
+    assertEquals(START, timerWheel.nextExpiration());
+    assertEquals(Arrays.asList(new Long[] { new Long(1), new Long(2) }),
+      timerWheel.expire(START));
+    assertEquals(0, timerWheel.size());
+  }
+
+  public void testFirstLevel() {
+    timerWheel.schedule(1, START + 35);
+    timerWheel.schedule(2, START + 12);
+    assertEquals(2, timerWheel.size());
+    assertEquals(START + 20, timerWheel.nextExpiration());
+
+    // never due before due date
+    assertEquals(Collections.EMPTY_LIST, timerWheel.expire(START + 11));
+    assertEquals(Collections.singletonList(new Long(2)), timerWheel.expire(START + 20));
+    assertEquals(START + 40, timerWheel.nextExpiration());
+    assertEquals(Collections.singletonList(new Long(1)), timerWheel.expire(START + 40));
+    assertEquals(Long.MAX_VALUE, timerWheel.nextExpiration());
+  }
+
+  public void testCascade() {
+    // beyond the 80 ms span of the first level, within the second and third levels
+    timerWheel.schedule(1, START + 250);
+    timerWheel.schedule(2, START + 4321);
+    timerWheel.schedule(3, START + 170);
+
+    long time = START;
+    List dueJobIds;
+    // advance to the next expiration until each job falls due
+    while ((dueJobIds = timerWheel.expire(time)).isEmpty()) {
+      time = timerWheel.nextExpiration();
+    }
+    assertEquals(Collections.singletonList(new Long(3)), dueJobIds);
+    assertEquals(START + 170, time);
+
+    while ((dueJobIds = timerWheel.expire(time)).isEmpty()) {
+      time = timerWheel.nextExpiration();
+    }
+    assertEquals(Collections.singletonList(new Long(1)), dueJobIds);
+    assertEquals(START + 250, time);
+
+    while ((dueJobIds = timerWheel.expire(time)).isEmpty()) {
+      time = timerWheel.nextExpiration();
+    }
+    assertEquals(Collections.singletonList(new Long(2)), dueJobIds);
+    assertEquals(START + 4330, time);
+    assertEquals(0, timerWheel.size());
+  }
+
+  public void testLateExpiration() {
+    timerWheel.schedule(1, START + 250);
+    timerWheel.schedule(2, START + 4321);
+    // dispatcher wakes up late
+    assertEquals(Arrays.asList(new Long[] { new Long(1), new Long(2) }),
+      timerWheel.expire(START + 60000));
+  }
+
+  public void testHorizon() {
+    timerWheel.schedule(1, START + 100000);
+    assertEquals(0, timerWheel.size());
+    assertEquals(Long.MAX_VALUE, timerWheel.nextExpiration());
+
+    timerWheel.reset(START, START + 200000);
+    timerWheel.schedule(1, START + 100000);
+    assertEquals(1, timerWheel.size());
+  }
+}
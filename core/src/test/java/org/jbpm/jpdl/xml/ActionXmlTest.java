@@ -33,6 +33,7 @@ import org.jbpm.graph.def.ProcessDefinition;
 import org.jbpm.graph.def.Transition;
 import org.jbpm.graph.node.State;
 import org.jbpm.instantiation.Delegation;
+import org.jbpm.job.Job;
 
 public class ActionXmlTest extends AbstractXmlTestCase {
   
@@ -240,6 +241,20 @@ public class ActionXmlTest extends AbstractXmlTestCase {
     assertEquals("burps", burps.getName());
   }
 
+  public void testReadActionAsyncPriority() {
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString( 
+      "<process-definition>" +
+      "  <node name='a'>" +
+      "    <event type='node-enter'>" +
+      "      <action name='burps' async='true' async-priority='lowest' class='org.foo.Burps'/>" +
+      "    </event>" +
+      "  </node>" +
+      "</process-definition>"
+    );
+    Action burps = (Action)processDefinition.getNode("a").getEvent("node-enter").getActions().get(0);
+    assertEquals(Job.PRIORITY_LOWEST, burps.getAsyncPriority());
+  }
+
   public void testWriteNodeActionName() throws Exception {
     ProcessDefinition processDefinition = new ProcessDefinition();
     Node node = processDefinition.addNode( new Node() );
@@ -28,6 +28,7 @@ import org.jbpm.graph.def.Event;
 import org.jbpm.graph.def.Node;
 import org.jbpm.graph.def.ProcessDefinition;
 import org.jbpm.graph.def.Transition;
+import org.jbpm.job.Job;
 
 public class NodeXmlTest extends AbstractXmlTestCase {
 
@@ -55,6 +56,17 @@ public class NodeXmlTest extends AbstractXmlTestCase {
     assertEquals("wash car", processDefinition.getNode("wash car").getName());
   }
 
+  public void testReadNodeAsyncPriority() {
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition>"
+      + "  <node name='a' async='true' async-priority='high' />"
+      + "  <node name='b' async='true' async-priority='5' />"
+      + "  <node name='c' async='true' />"
+      + "</process-definition>");
+    assertEquals(Job.PRIORITY_HIGH, processDefinition.getNode("a").getAsyncPriority());
+    assertEquals(Job.PRIORITY_LOWEST, processDefinition.getNode("b").getAsyncPriority());
+    assertEquals(Job.PRIORITY_NORMAL, processDefinition.getNode("c").getAsyncPriority());
+  }
+
   public void testWriteNodeName() throws Exception {
     ProcessDefinition processDefinition = new ProcessDefinition();
     processDefinition.addNode(new Node("n"));
@@ -24,6 +24,7 @@ package org.jbpm.jpdl.xml;
 import org.jbpm.AbstractJbpmTestCase;
 import org.jbpm.graph.action.Script;
 import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.job.Job;
 import org.jbpm.scheduler.def.CancelTimerAction;
 import org.jbpm.scheduler.def.CreateTimerAction;
 
@@ -81,6 +82,25 @@ public class TimerXmlTest extends AbstractJbpmTestCase {
     assertEquals("the-remainder-action-class-name", createTimerAction.getTimerAction().getActionDelegation().getClassName());
   }
 
+  public void testTimerPriority() {
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString(
+      "<process-definition>" +
+      "  <node name='catch crooks'>" +
+      "    <timer name='reminder' duedate='2 business hours' priority='highest' />" +
+      "  </node>" +
+      "</process-definition>"
+    );
+    
+    CreateTimerAction createTimerAction = 
+        (CreateTimerAction) processDefinition
+          .getNode("catch crooks")
+          .getEvent("node-enter")
+          .getActions()
+          .get(0);
+    
+    assertEquals(Job.PRIORITY_HIGHEST, createTimerAction.getTimerPriority());
+  }
+
   public void testTimerDefaultName() {
     ProcessDefinition processDefinition = ProcessDefinition.parseXmlString(
       "<process-definition>" +
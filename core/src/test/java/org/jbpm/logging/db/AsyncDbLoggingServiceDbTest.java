@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.jbpm.context.log.VariableCreateLog;
+import org.jbpm.context.log.variableinstance.ByteArrayUpdateLog;
+import org.jbpm.context.log.variableinstance.StringUpdateLog;
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.graph.exe.Token;
+import org.jbpm.graph.log.ProcessInstanceCreateLog;
+import org.jbpm.graph.log.SignalLog;
+import org.jbpm.graph.log.TransitionLog;
+import org.jbpm.logging.exe.LoggingInstance;
+import org.jbpm.logging.log.MessageLog;
+
+public class AsyncDbLoggingServiceDbTest extends AbstractDbTestCase {
+
+  private AsyncLogWriter logWriter;
+
+  protected String getJbpmTestConfig() {
+    return "org/jbpm/logging/db/async-log.cfg.xml";
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='async logs'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <state name='a'>"
+      + "    <transition to='end' />"
+      + "  </state>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+
+    // the writer starts along with the first logging service
+    jbpmContext.getServices().getLoggingService();
+    AsyncDbLoggingServiceFactory loggingServiceFactory = (AsyncDbLoggingServiceFactory) jbpmContext.getServiceFactory("logging");
+    logWriter = loggingServiceFactory.getLogWriter();
+  }
+
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    jbpmConfiguration.close();
+  }
+
+  public void testAsyncLogs() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("async logs");
+    processInstance.getContextInstance().setVariable("text", "sunny");
+    processInstance.getContextInstance().setVariable("bytes", "cloudy".getBytes());
+    processInstance.signal();
+
+    newTransaction();
+    assertTrue(logWriter.awaitWritten(10000));
+    List logs = loggingSession.findLogsByToken(processInstance.getRootToken().getId());
+    assertEquals(1, LoggingInstance.getLogs(logs, ProcessInstanceCreateLog.class).size());
+    assertEquals(2, LoggingInstance.getLogs(logs, VariableCreateLog.class).size());
+    // byte array updates cascade to byte arrays and go with the transaction
+    assertEquals(1, LoggingInstance.getLogs(logs, ByteArrayUpdateLog.class).size());
+
+    // composite logs keep their children
+    SignalLog signalLog = (SignalLog) LoggingInstance.getLogs(logs, SignalLog.class).get(0);
+    TransitionLog transitionLog = (TransitionLog) LoggingInstance.getLogs(logs,
+      TransitionLog.class).get(0);
+    assertSame(signalLog, transitionLog.getParent());
+    assertTrue(signalLog.getChildren().contains(transitionLog));
+
+    // logs referring to variable instances loaded in a later transaction
+    processInstance = jbpmContext.loadProcessInstanceForUpdate(processInstance.getId());
+    processInstance.getContextInstance().setVariable("text", "rainy");
+
+    newTransaction();
+    assertTrue(logWriter.awaitWritten(10000));
+    logs = loggingSession.findLogsByToken(processInstance.getRootToken().getId());
+    List updateLogs = LoggingInstance.getLogs(logs, StringUpdateLog.class);
+    assertEquals(2, updateLogs.size());
+    assertEquals("rainy", ((StringUpdateLog) updateLogs.get(1)).getNewValue());
+  }
+
+  public void testRollbackDiscardsLogs() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("async logs");
+    newTransaction();
+
+    processInstance = jbpmContext.loadProcessInstanceForUpdate(processInstance.getId());
+    processInstance.signal();
+    jbpmContext.setRollbackOnly();
+
+    newTransaction();
+    assertTrue(logWriter.awaitWritten(10000));
+    List logs = loggingSession.findLogsByToken(processInstance.getRootToken().getId());
+    assertEquals(0, LoggingInstance.getLogs(logs, SignalLog.class).size());
+  }
+
+  public void testReplaySpilledLogs() throws Exception {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("async logs");
+    Token token = processInstance.getRootToken();
+    MessageLog messageLog = new MessageLog("spilled");
+    messageLog.setToken(token);
+    messageLog.setIndex(token.nextLogIndex());
+
+    newTransaction();
+    ProcessLogRecord[] records = logWriter.getProcessLogWriter().createRecords(
+      Collections.singletonList(messageLog));
+    // the same logs spilled twice, as when a replay did not complete
+    logWriter.spill(records);
+    logWriter.spill(records);
+
+    File spillFile = new File("target/async-log.spill");
+    File replayFile = new File("target/async-log.spill.replay");
+    for (int i = 0; i < 100 && (spillFile.exists() || replayFile.exists()); i++) {
+      Thread.sleep(100);
+    }
+    assertFalse(spillFile.exists());
+    assertFalse(replayFile.exists());
+
+    List logs = loggingSession.findLogsByToken(token.getId());
+    List messageLogs = LoggingInstance.getLogs(logs, MessageLog.class);
+    assertEquals(1, messageLogs.size());
+    assertEquals("spilled", ((MessageLog) messageLogs.get(0)).getMessage());
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.db;
+
+import java.util.List;
+
+import org.jbpm.context.log.VariableCreateLog;
+import org.jbpm.context.log.variableinstance.ByteArrayUpdateLog;
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.graph.log.NodeLog;
+import org.jbpm.graph.log.ProcessInstanceCreateLog;
+import org.jbpm.graph.log.SignalLog;
+import org.jbpm.graph.log.TransitionLog;
+import org.jbpm.logging.exe.LoggingInstance;
+
+public class BatchDbLoggingServiceDbTest extends AbstractDbTestCase {
+
+  protected String getJbpmTestConfig() {
+    return "org/jbpm/logging/db/batch-log.cfg.xml";
+  }
+
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    jbpmConfiguration.close();
+  }
+
+  public void testBatchLogs() {
+    ProcessDefinition processDefinition = ProcessDefinition.parseXmlString("<process-definition name='batch logs'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <state name='a'>"
+      + "    <transition to='b' />"
+      + "  </state>"
+      + "  <state name='b'>"
+      + "    <transition to='end' />"
+      + "  </state>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+    deployProcessDefinition(processDefinition);
+
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("batch logs");
+    processInstance.getContextInstance().setVariable("text", "sunny");
+    processInstance.getContextInstance().setVariable("bytes", "cloudy".getBytes());
+    processInstance.signal();
+
+    newTransaction();
+    List logs = loggingSession.findLogsByToken(processInstance.getRootToken().getId());
+    assertEquals(1, LoggingInstance.getLogs(logs, ProcessInstanceCreateLog.class).size());
+    assertEquals(2, LoggingInstance.getLogs(logs, VariableCreateLog.class).size());
+    // byte array updates cascade to byte arrays and go through the regular session
+    assertEquals(1, LoggingInstance.getLogs(logs, ByteArrayUpdateLog.class).size());
+
+    // composite logs keep their children
+    SignalLog signalLog = (SignalLog) LoggingInstance.getLogs(logs, SignalLog.class).get(0);
+    TransitionLog transitionLog = (TransitionLog) LoggingInstance.getLogs(logs,
+      TransitionLog.class).get(0);
+    assertSame(signalLog, transitionLog.getParent());
+    assertTrue(signalLog.getChildren().contains(transitionLog));
+
+    // logs refer to reloaded execution data in later transactions
+    processInstance = jbpmContext.loadProcessInstanceForUpdate(processInstance.getId());
+    processInstance.signal();
+
+    newTransaction();
+    logs = loggingSession.findLogsByToken(processInstance.getRootToken().getId());
+    assertEquals(2, LoggingInstance.getLogs(logs, SignalLog.class).size());
+    List nodeLogs = LoggingInstance.getLogs(logs, NodeLog.class);
+    assertEquals(1, nodeLogs.size());
+    assertEquals("a", ((NodeLog) nodeLogs.get(0)).getNode().getName());
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.exe;
+
+import org.jbpm.context.exe.ContextInstance;
+import org.jbpm.context.log.VariableDeleteLog;
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+
+public class LogFilterDbTest extends AbstractDbTestCase {
+
+  protected String getJbpmTestConfig() {
+    return "org/jbpm/logging/exe/log-filter.cfg.xml";
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    deployProcessDefinition(ProcessDefinition.parseXmlString("<process-definition name='filtered'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='wait' />"
+      + "  </start-state>"
+      + "  <state name='wait' />"
+      + "</process-definition>"));
+  }
+
+  public void testDeleteVariableWithoutLog() {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("filtered");
+    processInstance.getContextInstance().setVariable("a", "value");
+    processInstance = saveAndReload(processInstance);
+    assertFalse(processInstance.getRootToken().isLogged(VariableDeleteLog.class));
+
+    ContextInstance contextInstance = processInstance.getContextInstance();
+    contextInstance.deleteVariable("a");
+    newTransaction();
+
+    // no delete log refers to the variable instance, so it goes right away
+    Long variableInstanceCount = (Long) session.createQuery("select count(*) "
+      + "from org.jbpm.context.exe.VariableInstance").uniqueResult();
+    assertEquals(0, variableInstanceCount.intValue());
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.logging.exe;
+
+import org.jbpm.AbstractJbpmTestCase;
+import org.jbpm.JbpmConfiguration;
+import org.jbpm.JbpmContext;
+import org.jbpm.JbpmException;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.graph.log.ActionLog;
+import org.jbpm.graph.log.NodeLog;
+import org.jbpm.graph.log.ProcessInstanceCreateLog;
+import org.jbpm.graph.log.ProcessInstanceEndLog;
+import org.jbpm.graph.log.SignalLog;
+import org.jbpm.graph.log.TransitionLog;
+import org.jbpm.logging.log.MessageLog;
+import org.jbpm.logging.log.ProcessLog;
+import org.jbpm.taskmgmt.log.TaskCreateLog;
+import org.jbpm.taskmgmt.log.TaskEndLog;
+
+public class LogFilterTest extends AbstractJbpmTestCase {
+
+  private JbpmContext jbpmContext;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    JbpmConfiguration jbpmConfiguration = JbpmConfiguration.parseXmlString("<jbpm-configuration>"
+      + "  <jbpm-context />"
+      + "  <string name='jbpm.log.types' value='"
+      + ProcessInstanceCreateLog.class.getName()
+      + ", "
+      + ProcessInstanceEndLog.class.getName()
+      + " org.jbpm.taskmgmt.log.TaskLog' />"
+      + "  <string name='jbpm.log.types.verbose' value='"
+      + ProcessLog.class.getName()
+      + "' />"
+      + "  <string name='jbpm.log.types.actions' value='"
+      + ActionLog.class.getName()
+      + ' '
+      + MessageLog.class.getName()
+      + "' />"
+      + "  <string name='jbpm.log.types.unknown' value='org.example.NoSuchLog' />"
+      + "</jbpm-configuration>");
+    jbpmContext = jbpmConfiguration.createJbpmContext();
+  }
+
+  protected void tearDown() throws Exception {
+    jbpmContext.close();
+    jbpmContext.getJbpmConfiguration().close();
+    super.tearDown();
+  }
+
+  private static ProcessDefinition createProcessDefinition(String name) {
+    return ProcessDefinition.parseXmlString("<process-definition name='" + name + "'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='t' />"
+      + "  </start-state>"
+      + "  <task-node name='t'>"
+      + "    <task name='approve' />"
+      + "    <transition to='end' />"
+      + "  </task-node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>");
+  }
+
+  public void testGlobalFilter() {
+    ProcessInstance processInstance = new ProcessInstance(createProcessDefinition("quiet"));
+    processInstance.signal();
+    processInstance.getTaskMgmtInstance().endAll();
+
+    LoggingInstance loggingInstance = processInstance.getLoggingInstance();
+    assertEquals(1, loggingInstance.getLogs(ProcessInstanceCreateLog.class).size());
+    assertEquals(1, loggingInstance.getLogs(ProcessInstanceEndLog.class).size());
+    // listing a type keeps its subtypes
+    assertEquals(1, loggingInstance.getLogs(TaskCreateLog.class).size());
+    assertEquals(1, loggingInstance.getLogs(TaskEndLog.class).size());
+    assertEquals(0, loggingInstance.getLogs(NodeLog.class).size());
+    assertEquals(0, loggingInstance.getLogs(SignalLog.class).size());
+    assertEquals(0, loggingInstance.getLogs(TransitionLog.class).size());
+
+    assertFalse(processInstance.getRootToken().isLogged(NodeLog.class));
+  }
+
+  public void testProcessDefinitionFilter() {
+    ProcessInstance processInstance = new ProcessInstance(createProcessDefinition("verbose"));
+    processInstance.signal();
+
+    LoggingInstance loggingInstance = processInstance.getLoggingInstance();
+    assertEquals(1, loggingInstance.getLogs(SignalLog.class).size());
+    assertEquals(1, loggingInstance.getLogs(TransitionLog.class).size());
+    assertTrue(processInstance.getRootToken().isLogged(NodeLog.class));
+  }
+
+  public void testFilteredCompositeLog() {
+    ProcessInstance processInstance = new ProcessInstance(createProcessDefinition("actions"));
+    LoggingInstance loggingInstance = processInstance.getLoggingInstance();
+
+    ActionLog actionLog = new ActionLog();
+    loggingInstance.startCompositeLog(actionLog);
+    loggingInstance.startCompositeLog(new SignalLog());
+    MessageLog messageLog = new MessageLog("inside");
+    loggingInstance.addLog(messageLog);
+    loggingInstance.endCompositeLog();
+    loggingInstance.endCompositeLog();
+
+    // children of the filtered signal log go to the action log
+    assertEquals(2, loggingInstance.getLogs().size());
+    assertSame(actionLog, messageLog.getParent());
+    assertEquals(0, loggingInstance.getCompositeLogStack().size());
+  }
+
+  public void testUnknownLogType() {
+    try {
+      new ProcessInstance(createProcessDefinition("unknown"));
+      fail("expected exception");
+    }
+    catch (JbpmException e) {
+      assertTrue(e.getMessage().indexOf("org.example.NoSuchLog") != -1);
+    }
+  }
+}
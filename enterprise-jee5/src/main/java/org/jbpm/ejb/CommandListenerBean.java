@@ -141,6 +141,13 @@ public class CommandListenerBean implements MessageListener {
     }
   }
 
+  /**
+   * Tells the factory that provides JMS connections, if one was injected.
+   */
+  protected ConnectionFactory getConnectionFactory() {
+    return jmsConnectionFactory;
+  }
+
   /**
    * Retrieves a {@link Command} instance from the given message, which is assumed to be an
    * {@link ObjectMessage}.
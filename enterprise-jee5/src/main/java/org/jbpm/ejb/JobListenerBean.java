@@ -1,12 +1,19 @@
 package org.jbpm.ejb;
 
+import javax.annotation.Resource;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jbpm.command.Command;
 import org.jbpm.jms.ExecuteJobCommand;
+import org.jbpm.jms.ExecuteJobsCommand;
 
 /**
  * Message-driven bean that listens for {@link Message messages} containing a reference to a
@@ -15,16 +22,44 @@ import org.jbpm.jms.ExecuteJobCommand;
  * The message must have a <code>long</code> property called <code>jobId</code> which identifies
  * a job in the database. The message body, if any, is ignored.
  * </p>
+ * <p>
+ * To save transactions, this bean can receive further job messages from the same queue and
+ * execute all the jobs in the current transaction. Messages of exclusive jobs are left to their
+ * own transaction, as are redelivered messages, so that the jobs of a failed batch are retried
+ * one by one. Receiving further messages requires an XA-capable connection factory, which makes
+ * the received messages part of the current transaction.
+ * </p>
  * <h3>Environment</h3>
  * <p>
  * This bean inherits its environment entries and resources available for customization from
- * {@link CommandListenerBean}.
+ * {@link CommandListenerBean}. In addition, it takes the entry below.
  * </p>
+ * <table border="1">
+ * <tr>
+ * <th>Name</th>
+ * <th>Type</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td><code>JobBatchSize</code></td>
+ * <td>Environment Entry</td>
+ * <td>The maximum number of jobs executed in one transaction. Optional, defaults to 1, which
+ * executes each job in a transaction of its own.</td>
+ * </tr>
+ * </table>
  * 
  * @author Alejandro Guizar
  */
 public class JobListenerBean extends CommandListenerBean {
 
+  @Resource(name = "JobBatchSize")
+  private Integer jobBatchSize;
+
+  /** job messages that may join a batch: those of non-exclusive jobs */
+  private static final String BATCH_SELECTOR = "jobId IS NOT NULL AND JMSXGroupID IS NULL";
+  /** time to wait for each further message of a batch */
+  private static final long BATCH_RECEIVE_TIMEOUT = 10;
+
   private static final long serialVersionUID = 1L;
   private static final Log log = LogFactory.getLog(JobListenerBean.class);
 
@@ -33,6 +68,13 @@ public class JobListenerBean extends CommandListenerBean {
     // check for jobId property
     if (message.propertyExists("jobId")) {
       long jobId = message.getLongProperty("jobId");
+
+      // jobs of a failed batch come back one at a time
+      if (jobBatchSize != null && jobBatchSize.intValue() > 1 && !message.getJMSRedelivered()
+        && !message.propertyExists("JMSXGroupID")) {
+        long[] jobIds = receiveJobIds(jobId, message.getJMSDestination());
+        if (jobIds.length > 1) return new ExecuteJobsCommand(jobIds);
+      }
       return new ExecuteJobCommand(jobId);
     }
     else {
@@ -47,4 +89,51 @@ public class JobListenerBean extends CommandListenerBean {
     }
     return null;
   }
+
+  /**
+   * Receives further job messages from the given destination, up to the job batch size.
+   * 
+   * @return the identifier of the given job followed by the identifiers of the received jobs
+   */
+  private long[] receiveJobIds(long jobId, Destination destination) throws JMSException {
+    ConnectionFactory connectionFactory = getConnectionFactory();
+    if (connectionFactory == null || destination == null) return new long[] { jobId };
+
+    long[] jobIds = new long[jobBatchSize.intValue()];
+    jobIds[0] = jobId;
+    int jobCount = 1;
+
+    Connection jmsConnection = connectionFactory.createConnection();
+    try {
+      /*
+       * if the connection supports xa, the session will be transacted and the received
+       * messages will be acknowledged along with the current transaction - see ejb 2.1 - 17.3.5
+       */
+      Session jmsSession = jmsConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+      MessageConsumer consumer = jmsSession.createConsumer(destination, BATCH_SELECTOR);
+      jmsConnection.start();
+
+      for (Message message; jobCount < jobIds.length
+        && (message = consumer.receive(BATCH_RECEIVE_TIMEOUT)) != null;) {
+        jobIds[jobCount++] = message.getLongProperty("jobId");
+      }
+    }
+    finally {
+      // there is no need to close the sessions and consumers of a closed connection
+      try {
+        jmsConnection.close();
+      }
+      catch (JMSException e) {
+        log.warn("failed to close jms connection", e);
+      }
+    }
+
+    if (jobCount < jobIds.length) {
+      long[] receivedJobIds = new long[jobCount];
+      System.arraycopy(jobIds, 0, receivedJobIds, 0, jobCount);
+      jobIds = receivedJobIds;
+    }
+    if (log.isDebugEnabled()) log.debug("received " + (jobCount - 1) + " further job messages");
+    return jobIds;
+  }
 }
@@ -52,7 +52,7 @@ public class ExecuteJobCommand implements Command {
     return job;
   }
 
-  private static Job acquireJob(long jobId, JbpmContext jbpmContext) {
+  static Job acquireJob(long jobId, JbpmContext jbpmContext) {
     boolean debug = log.isDebugEnabled();
     if (debug) log.debug("acquiring job: " + jobId);
     Job job = jbpmContext.getJobSession().getJob(jobId);
@@ -81,7 +81,7 @@ public class ExecuteJobCommand implements Command {
     return job;
   }
 
-  private static void executeJob(Job job, JbpmContext jbpmContext) throws Exception {
+  static void executeJob(Job job, JbpmContext jbpmContext) throws Exception {
     if (log.isDebugEnabled()) log.debug("executing " + job);
     if (job.execute(jbpmContext)) {
       // clear job
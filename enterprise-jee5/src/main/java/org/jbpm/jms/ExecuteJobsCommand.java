@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jbpm.JbpmContext;
+import org.jbpm.command.Command;
+import org.jbpm.job.Job;
+
+/**
+ * Processes several jobs in a single jBPM context, and hence in a single transaction. If any
+ * job fails, none of the jobs takes effect.
+ * 
+ * @see ExecuteJobCommand
+ */
+public class ExecuteJobsCommand implements Command {
+
+  private final long[] jobIds;
+
+  private static final long serialVersionUID = 1L;
+
+  public ExecuteJobsCommand(long[] jobIds) {
+    this.jobIds = jobIds;
+  }
+
+  /**
+   * @return the processed jobs; jobs deleted in the meantime are left out
+   */
+  public Object execute(JbpmContext jbpmContext) throws Exception {
+    List jobs = new ArrayList(jobIds.length);
+    for (int i = 0; i < jobIds.length; i++) {
+      Job job = ExecuteJobCommand.acquireJob(jobIds[i], jbpmContext);
+      if (job != null) {
+        ExecuteJobCommand.executeJob(job, jbpmContext);
+        jobs.add(job);
+      }
+    }
+    return jobs;
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer text = new StringBuffer("ExecuteJobsCommand(");
+    for (int i = 0; i < jobIds.length; i++) {
+      if (i > 0) text.append(',');
+      text.append(jobIds[i]);
+    }
+    return text.append(')').toString();
+  }
+}
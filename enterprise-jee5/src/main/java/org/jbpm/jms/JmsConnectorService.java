@@ -21,7 +21,10 @@
  */
 package org.jbpm.jms;
 
-import javax.jms.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageProducer;
@@ -30,19 +33,26 @@ import javax.jms.Session;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.jbpm.JbpmContext;
 import org.jbpm.JbpmException;
 import org.jbpm.db.JobSession;
 import org.jbpm.graph.exe.ProcessInstance;
 import org.jbpm.graph.exe.Token;
+import org.jbpm.jms.JmsConnectorServiceFactory.ProducerSession;
 import org.jbpm.job.Job;
 import org.jbpm.job.Timer;
 import org.jbpm.msg.MessageService;
 import org.jbpm.scheduler.SchedulerService;
 
+/**
+ * Message and scheduler service that delivers job messages over JMS. Jobs sent in a jBPM
+ * context are delivered together when the context closes, in a single session.
+ */
 public class JmsConnectorService implements MessageService, SchedulerService {
 
   private final JmsConnectorServiceFactory serviceFactory;
-  private final Connection connection;
+  /** jobs sent in this context, delivered on close */
+  private final List jobs = new ArrayList();
 
   private static final String SCHEDULED_DELIVERY_PROP = "JMS_JBOSS_SCHEDULED_DELIVERY";
   private static final String GROUP_ID_PROP = "JMSXGroupID";
@@ -51,37 +61,48 @@ public class JmsConnectorService implements MessageService, SchedulerService {
 
   private static final Log log = LogFactory.getLog(JmsConnectorService.class);
 
-  JmsConnectorService(JmsConnectorServiceFactory serviceFactory) throws JMSException {
-    connection = serviceFactory.getConnectionFactory().createConnection();
+  JmsConnectorService(JmsConnectorServiceFactory serviceFactory) {
     this.serviceFactory = serviceFactory;
   }
 
+  private JbpmContext getJbpmContext() {
+    return serviceFactory.getJbpmConfiguration().getCurrentJbpmContext();
+  }
+
   private JobSession getJobSession() {
-    return serviceFactory.getJbpmConfiguration().getCurrentJbpmContext().getJobSession();
+    return getJbpmContext().getJobSession();
   }
 
   public void send(Job job) {
     getJobSession().saveJob(job);
-    try {
-      sendMessage(job);
-    }
-    catch (JMSException e) {
-      throw new JbpmException("failed to send job message", e);
-    }
+    sendMessage(job);
   }
 
-  final void sendMessage(Job job) throws JMSException {
-    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-    try {
-      Message message = session.createMessage();
-      populateMessage(message, job);
+  /**
+   * Queues a message for the given job, which must be persistent already. Messages go out
+   * when this service closes.
+   */
+  final void sendMessage(Job job) {
+    jobs.add(job);
+  }
 
-      MessageProducer messageProducer = session.createProducer(serviceFactory.getDestination());
-      messageProducer.send(message);
+  private void sendMessages(List jobs) throws JMSException {
+    ProducerSession producerSession = serviceFactory.openSession();
+    boolean sent = false;
+    try {
+      Session session = producerSession.getSession();
+      MessageProducer messageProducer = producerSession.getProducer();
+      for (Iterator i = jobs.iterator(); i.hasNext();) {
+        Message message = session.createMessage();
+        populateMessage(message, (Job) i.next());
+        messageProducer.send(message);
+      }
+      if (serviceFactory.isCommitEnabled()) session.commit();
+      sent = true;
     }
     finally {
-      // there is no need to close the producers of a closed session
-      session.close();
+      // closing a transacted session rolls back the messages not committed
+      serviceFactory.closeSession(producerSession, sent);
     }
   }
 
@@ -110,6 +131,7 @@ public class JmsConnectorService implements MessageService, SchedulerService {
 
   public void deleteTimer(Timer timer) {
     getJobSession().deleteJob(timer);
+    jobs.remove(timer);
   }
 
   public void deleteTimersByName(String timerName, Token token) {
@@ -121,11 +143,21 @@ public class JmsConnectorService implements MessageService, SchedulerService {
   }
 
   public void close() {
+    if (jobs.isEmpty()) return;
     try {
-      connection.close();
+      // jobs of a transaction that rolls back must not be delivered
+      JbpmContext jbpmContext = getJbpmContext();
+      if (jbpmContext != null && jbpmContext.getServices().getTxService().isRollbackOnly()) {
+        if (log.isDebugEnabled()) log.debug("discarding messages for " + jobs);
+        return;
+      }
+      sendMessages(jobs);
     }
     catch (JMSException e) {
-      throw new JbpmException("failed to close jms connection", e);
+      throw new JbpmException("failed to send job messages", e);
+    }
+    finally {
+      jobs.clear();
     }
   }
 }
@@ -21,9 +21,18 @@
  */
 package org.jbpm.jms;
 
+import java.util.LinkedList;
+
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.jbpm.JbpmConfiguration;
 import org.jbpm.JbpmContext;
@@ -45,6 +54,7 @@ import org.jbpm.util.JndiUtil;
  * <li><code>connectionFactoryJndiName</code></li>
  * <li><code>destinationJndiName</code></li>
  * <li><code>isCommitEnabled</code></li>
+ * <li><code>sessionPoolSize</code></li>
  * </ul>
  * 
  * Refer to the jBPM manual for details.
@@ -58,6 +68,8 @@ public class JmsConnectorServiceFactory implements ServiceFactory {
 
   private String connectionFactoryJndiName = "java:comp/env/jms/JbpmConnectionFactory";
   private String destinationJndiName = "java:comp/env/jms/JobQueue";
+  private boolean isCommitEnabled;
+  private int sessionPoolSize;
 
   public void setConnectionFactoryJndiName(String connectionFactoryJndiName) {
 	this.connectionFactoryJndiName = connectionFactoryJndiName;
@@ -66,12 +78,47 @@ public class JmsConnectorServiceFactory implements ServiceFactory {
   public void setDestinationJndiName(String destinationJndiName) {
 	this.destinationJndiName = destinationJndiName;
   }
+
+  public boolean isCommitEnabled() {
+    return isCommitEnabled;
+  }
+
+  /**
+   * Makes the service commit the JMS session once it sent the messages of a jBPM context. Only
+   * required when the connection factory is not XA-capable.
+   */
+  public void setCommitEnabled(boolean isCommitEnabled) {
+    this.isCommitEnabled = isCommitEnabled;
+  }
+
+  public int getSessionPoolSize() {
+    return sessionPoolSize;
+  }
+
+  /**
+   * Sets the number of idle JMS sessions kept open, along with their producers, over a single
+   * shared connection. The default value of 0 opens a connection and session per jBPM context,
+   * which suits connection factories pooled by the application server, such as
+   * <code>java:JmsXA</code>. Sessions of such factories must not outlive the transaction they
+   * were enlisted in, hence pooling takes effect only if {@linkplain #setCommitEnabled(boolean)
+   * commit is enabled}.
+   */
+  public void setSessionPoolSize(int sessionPoolSize) {
+    this.sessionPoolSize = sessionPoolSize;
+  }
   
   private JbpmConfiguration jbpmConfiguration;
 
   private ConnectionFactory connectionFactory;
   private Destination destination;
 
+  /** connection shared by pooled sessions */
+  private transient Connection connection;
+  /** idle sessions, most recently used last */
+  private transient LinkedList sessionPool;
+
+  private static final Log log = LogFactory.getLog(JmsConnectorServiceFactory.class);
+
   public synchronized ConnectionFactory getConnectionFactory() {
     if (connectionFactory == null) {
       connectionFactory = (ConnectionFactory) JndiUtil.lookup(connectionFactoryJndiName, ConnectionFactory.class);
@@ -97,17 +144,144 @@ public class JmsConnectorServiceFactory implements ServiceFactory {
   }
 
   public Service openService() {
+    return new JmsConnectorService(this);
+  }
+
+  /**
+   * Takes an idle session from the pool, or opens a new one. Sessions are transacted so that
+   * messages are never received before the current transaction commits.
+   */
+  ProducerSession openSession() throws JMSException {
+    Connection connection;
+    synchronized (this) {
+      if (sessionPool != null && !sessionPool.isEmpty()) {
+        return (ProducerSession) sessionPool.removeLast();
+      }
+      connection = isPoolingEnabled() ? getSharedConnection() : null;
+    }
+
+    boolean sharedConnection = connection != null;
+    if (!sharedConnection) connection = getConnectionFactory().createConnection();
+    try {
+      Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+      MessageProducer producer = session.createProducer(getDestination());
+      return new ProducerSession(connection, sharedConnection, session, producer);
+    }
+    catch (JMSException e) {
+      if (!sharedConnection) connection.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gives the given session back to the pool, or closes it if the pool is full, pooling is
+   * disabled or the session is no longer usable.
+   * 
+   * @param reusable whether the session completed its work normally
+   */
+  void closeSession(ProducerSession producerSession, boolean reusable) {
+    if (reusable && producerSession.isSharedConnection()) {
+      synchronized (this) {
+        // sessions of a discarded connection are not reusable
+        if (producerSession.getConnection() == connection
+          && sessionPool.size() < sessionPoolSize) {
+          sessionPool.addLast(producerSession);
+          return;
+        }
+      }
+    }
+    producerSession.close();
+  }
+
+  private boolean isPoolingEnabled() {
+    return sessionPoolSize > 0 && isCommitEnabled;
+  }
+
+  private Connection getSharedConnection() throws JMSException {
+    if (connection == null) {
+      Connection connection = getConnectionFactory().createConnection();
+      connection.setExceptionListener(new ExceptionListener() {
+        public void onException(JMSException exception) {
+          log.warn("jms connection failed, discarding pooled sessions", exception);
+          discardConnection();
+        }
+      });
+      this.connection = connection;
+      sessionPool = new LinkedList();
+    }
+    return connection;
+  }
+
+  /**
+   * Closes the shared connection along with the idle sessions. Sessions in use are closed as
+   * they come back.
+   */
+  synchronized void discardConnection() {
+    if (connection == null) return;
     try {
-      return new JmsConnectorService(this);
+      // closing the connection closes its sessions and producers
+      connection.close();
     }
     catch (JMSException e) {
-      throw new JbpmException("could not open message service", e);
+      log.debug("could not close jms connection", e);
     }
+    connection = null;
+    sessionPool = null;
   }
 
   public void close() {
+    discardConnection();
     connectionFactory = null;
     destination = null;
   }
 
+  /**
+   * JMS session along with a producer for the job destination.
+   */
+  static class ProducerSession {
+
+    private final Connection connection;
+    /** tells whether the connection is shared with other sessions */
+    private final boolean sharedConnection;
+    private final Session session;
+    private final MessageProducer producer;
+
+    ProducerSession(Connection connection, boolean sharedConnection, Session session,
+      MessageProducer producer) {
+      this.connection = connection;
+      this.sharedConnection = sharedConnection;
+      this.session = session;
+      this.producer = producer;
+    }
+
+    Connection getConnection() {
+      return connection;
+    }
+
+    boolean isSharedConnection() {
+      return sharedConnection;
+    }
+
+    Session getSession() {
+      return session;
+    }
+
+    MessageProducer getProducer() {
+      return producer;
+    }
+
+    void close() {
+      try {
+        if (sharedConnection) {
+          session.close();
+        }
+        else {
+          connection.close();
+        }
+      }
+      catch (JMSException e) {
+        log.debug("could not close jms session", e);
+      }
+    }
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.ejb;
+
+import java.lang.reflect.Field;
+
+import javax.jms.Message;
+
+import junit.framework.TestCase;
+
+import org.jbpm.command.Command;
+import org.jbpm.jms.MockJms;
+
+public class JobListenerBeanTest extends TestCase {
+
+  private MockJms connectionFactory;
+  private JobListenerBean jobListenerBean;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    connectionFactory = MockJms.createConnectionFactory();
+    jobListenerBean = new JobListenerBean();
+    setField(CommandListenerBean.class, "jmsConnectionFactory", connectionFactory.getProxy());
+  }
+
+  public void testBatch() throws Exception {
+    setJobBatchSize(new Integer(3));
+    for (long jobId = 2; jobId <= 4; jobId++) {
+      connectionFactory.addMessage(connectionFactory.createJobMessage(jobId));
+    }
+
+    Command command = jobListenerBean.extractCommand(connectionFactory.createJobMessage(1));
+    assertEquals("ExecuteJobsCommand(1,2,3)", command.toString());
+    // messages beyond the batch size stay in the queue
+    assertEquals(1, connectionFactory.getQueuedMessages().size());
+    // connection used to receive further messages is closed
+    MockJms connection = connectionFactory.getChild(0);
+    assertEquals(1, connection.countCalls("start"));
+    assertTrue(connection.isClosed());
+  }
+
+  public void testPartialBatch() throws Exception {
+    setJobBatchSize(new Integer(5));
+    connectionFactory.addMessage(connectionFactory.createJobMessage(2));
+
+    Command command = jobListenerBean.extractCommand(connectionFactory.createJobMessage(1));
+    assertEquals("ExecuteJobsCommand(1,2)", command.toString());
+  }
+
+  public void testNoFurtherMessages() throws Exception {
+    setJobBatchSize(new Integer(3));
+    Command command = jobListenerBean.extractCommand(connectionFactory.createJobMessage(1));
+    assertEquals("ExecuteJobCommand(1)", command.toString());
+  }
+
+  public void testBatchSizeUnset() throws Exception {
+    connectionFactory.addMessage(connectionFactory.createJobMessage(2));
+    Command command = jobListenerBean.extractCommand(connectionFactory.createJobMessage(1));
+    assertEquals("ExecuteJobCommand(1)", command.toString());
+    assertEquals(0, connectionFactory.countCalls("createConnection"));
+  }
+
+  public void testRedeliveredMessage() throws Exception {
+    setJobBatchSize(new Integer(3));
+    connectionFactory.addMessage(connectionFactory.createJobMessage(2));
+
+    // jobs of a failed batch are retried one by one
+    Message message = connectionFactory.createJobMessage(1);
+    MockJms.getMock(message).setRedelivered(true);
+    Command command = jobListenerBean.extractCommand(message);
+    assertEquals("ExecuteJobCommand(1)", command.toString());
+    assertEquals(1, connectionFactory.getQueuedMessages().size());
+  }
+
+  public void testExclusiveJob() throws Exception {
+    setJobBatchSize(new Integer(3));
+    connectionFactory.addMessage(connectionFactory.createJobMessage(2));
+
+    Message message = connectionFactory.createJobMessage(1);
+    MockJms.getMock(message).setProperty("JMSXGroupID", "jBPMPID1");
+    Command command = jobListenerBean.extractCommand(message);
+    assertEquals("ExecuteJobCommand(1)", command.toString());
+    assertEquals(1, connectionFactory.getQueuedMessages().size());
+  }
+
+  private void setJobBatchSize(Integer jobBatchSize) throws Exception {
+    setField(JobListenerBean.class, "jobBatchSize", jobBatchSize);
+  }
+
+  private void setField(Class beanClass, String name, Object value) throws Exception {
+    Field field = beanClass.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(jobListenerBean, value);
+  }
+}
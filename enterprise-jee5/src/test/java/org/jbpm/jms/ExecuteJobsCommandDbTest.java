@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.jms;
+
+import java.util.List;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.graph.def.ProcessDefinition;
+import org.jbpm.graph.exe.ProcessInstance;
+import org.jbpm.job.Job;
+
+public class ExecuteJobsCommandDbTest extends AbstractDbTestCase {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    deployProcessDefinition(ProcessDefinition.parseXmlString("<process-definition name='batch'>"
+      + "  <start-state name='start'>"
+      + "    <transition to='a' />"
+      + "  </start-state>"
+      + "  <node name='a' async='true'>"
+      + "    <transition to='end' />"
+      + "  </node>"
+      + "  <end-state name='end' />"
+      + "</process-definition>"));
+  }
+
+  public void testExecuteJobs() throws Exception {
+    ProcessInstance processInstance = startProcessInstance();
+    ProcessInstance otherInstance = startProcessInstance();
+    newTransaction();
+
+    List jobs = jobSession.findJobsByToken(processInstance.getRootToken());
+    assertEquals(1, jobs.size());
+    Job job = (Job) jobs.get(0);
+    jobs = jobSession.findJobsByToken(otherInstance.getRootToken());
+    assertEquals(1, jobs.size());
+    Job otherJob = (Job) jobs.get(0);
+
+    // jobs deleted in the meantime are left out
+    ExecuteJobsCommand command = new ExecuteJobsCommand(new long[] { job.getId(), -1,
+      otherJob.getId() });
+    assertEquals("ExecuteJobsCommand(" + job.getId() + ",-1," + otherJob.getId() + ")",
+      command.toString());
+    jobs = (List) command.execute(jbpmContext);
+    assertEquals(2, jobs.size());
+    newTransaction();
+
+    // all jobs took effect in the same transaction
+    assertTrue(graphSession.loadProcessInstance(processInstance.getId()).hasEnded());
+    assertTrue(graphSession.loadProcessInstance(otherInstance.getId()).hasEnded());
+    assertNull(jobSession.getJob(job.getId()));
+    assertNull(jobSession.getJob(otherJob.getId()));
+  }
+
+  private ProcessInstance startProcessInstance() {
+    ProcessInstance processInstance = jbpmContext.newProcessInstanceForUpdate("batch");
+    processInstance.signal();
+    return processInstance;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.jms;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.List;
+
+import javax.jms.Message;
+
+import org.jbpm.db.AbstractDbTestCase;
+import org.jbpm.job.ExecuteNodeJob;
+import org.jbpm.job.Job;
+import org.jbpm.job.Timer;
+
+public class JmsConnectorServiceDbTest extends AbstractDbTestCase {
+
+  private MockJms connectionFactory;
+  private JmsConnectorServiceFactory serviceFactory;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    connectionFactory = MockJms.createConnectionFactory();
+    serviceFactory = new JmsConnectorServiceFactory();
+    setField("connectionFactory", connectionFactory.getProxy());
+    setField("destination", connectionFactory.getQueue());
+    serviceFactory.setCommitEnabled(true);
+  }
+
+  protected void tearDown() throws Exception {
+    serviceFactory.close();
+    super.tearDown();
+  }
+
+  public void testSendJobsInOneSession() {
+    JmsConnectorService service = (JmsConnectorService) serviceFactory.openService();
+    Job job = new ExecuteNodeJob();
+    service.send(job);
+    Job otherJob = new ExecuteNodeJob();
+    service.send(otherJob);
+    // messages wait for the service to close
+    assertEquals(0, connectionFactory.getSentMessages().size());
+    service.close();
+
+    List sentMessages = connectionFactory.getSentMessages();
+    assertEquals(2, sentMessages.size());
+    assertEquals(new Long(job.getId()), getJobId(sentMessages.get(0)));
+    assertEquals(new Long(otherJob.getId()), getJobId(sentMessages.get(1)));
+    // both messages went out in a single session and commit
+    assertEquals(1, connectionFactory.countCalls("createConnection"));
+    MockJms connection = connectionFactory.getChild(0);
+    assertEquals(1, connection.countCalls("createSession"));
+    assertEquals(1, connection.getChild(0).countCalls("commit"));
+
+    jobSession.deleteJob(job);
+    jobSession.deleteJob(otherJob);
+  }
+
+  public void testDeleteTimerBeforeClose() {
+    JmsConnectorService service = (JmsConnectorService) serviceFactory.openService();
+    Timer timer = new Timer();
+    timer.setDueDate(new Date());
+    service.createTimer(timer);
+    service.deleteTimer(timer);
+    service.close();
+
+    // deleted timers are not delivered
+    assertEquals(0, connectionFactory.getSentMessages().size());
+    assertEquals(0, connectionFactory.countCalls("createConnection"));
+  }
+
+  public void testRollbackDiscardsMessages() {
+    JmsConnectorService service = (JmsConnectorService) serviceFactory.openService();
+    service.send(new ExecuteNodeJob());
+    jbpmContext.setRollbackOnly();
+    service.close();
+
+    assertEquals(0, connectionFactory.getSentMessages().size());
+    assertEquals(0, connectionFactory.countCalls("createConnection"));
+  }
+
+  private static Object getJobId(Object message) {
+    return MockJms.getMock((Message) message).getProperty("jobId");
+  }
+
+  private void setField(String name, Object value) throws Exception {
+    Field field = JmsConnectorServiceFactory.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(serviceFactory, value);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.jms;
+
+import java.lang.reflect.Field;
+
+import junit.framework.TestCase;
+
+import org.jbpm.jms.JmsConnectorServiceFactory.ProducerSession;
+
+public class JmsConnectorServiceFactoryTest extends TestCase {
+
+  private MockJms connectionFactory;
+  private JmsConnectorServiceFactory serviceFactory;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    connectionFactory = MockJms.createConnectionFactory();
+    serviceFactory = new JmsConnectorServiceFactory();
+    setField("connectionFactory", connectionFactory.getProxy());
+    setField("destination", connectionFactory.getQueue());
+  }
+
+  protected void tearDown() throws Exception {
+    serviceFactory.close();
+    super.tearDown();
+  }
+
+  public void testPoolingDisabled() throws Exception {
+    ProducerSession producerSession = serviceFactory.openSession();
+    serviceFactory.closeSession(producerSession, true);
+    // each session comes with a connection of its own, closed along with the session
+    assertFalse(producerSession.isSharedConnection());
+    assertTrue(MockJms.getMock(producerSession.getConnection()).isClosed());
+
+    serviceFactory.openSession();
+    assertEquals(2, connectionFactory.countCalls("createConnection"));
+  }
+
+  public void testPooledSession() throws Exception {
+    serviceFactory.setCommitEnabled(true);
+    serviceFactory.setSessionPoolSize(1);
+
+    ProducerSession producerSession = serviceFactory.openSession();
+    assertTrue(producerSession.isSharedConnection());
+    serviceFactory.closeSession(producerSession, true);
+    assertFalse(MockJms.getMock(producerSession.getSession()).isClosed());
+
+    // idle session is reused
+    assertSame(producerSession, serviceFactory.openSession());
+    // pool is empty, new session shares the connection
+    ProducerSession otherSession = serviceFactory.openSession();
+    assertNotSame(producerSession, otherSession);
+    assertSame(producerSession.getConnection(), otherSession.getConnection());
+    assertEquals(1, connectionFactory.countCalls("createConnection"));
+
+    // sessions beyond the pool size are closed, the connection stays open
+    serviceFactory.closeSession(producerSession, true);
+    serviceFactory.closeSession(otherSession, true);
+    assertFalse(MockJms.getMock(producerSession.getSession()).isClosed());
+    assertTrue(MockJms.getMock(otherSession.getSession()).isClosed());
+    assertFalse(MockJms.getMock(otherSession.getConnection()).isClosed());
+
+    serviceFactory.close();
+    assertTrue(MockJms.getMock(producerSession.getConnection()).isClosed());
+    assertTrue(MockJms.getMock(producerSession.getSession()).isClosed());
+  }
+
+  public void testPoolingRequiresCommit() throws Exception {
+    // sessions of container managed factories must not outlive their transaction
+    serviceFactory.setSessionPoolSize(1);
+
+    ProducerSession producerSession = serviceFactory.openSession();
+    assertFalse(producerSession.isSharedConnection());
+    serviceFactory.closeSession(producerSession, true);
+    assertTrue(MockJms.getMock(producerSession.getConnection()).isClosed());
+  }
+
+  public void testFailedSessionNotPooled() throws Exception {
+    serviceFactory.setCommitEnabled(true);
+    serviceFactory.setSessionPoolSize(1);
+
+    ProducerSession producerSession = serviceFactory.openSession();
+    serviceFactory.closeSession(producerSession, false);
+    assertTrue(MockJms.getMock(producerSession.getSession()).isClosed());
+    assertFalse(MockJms.getMock(producerSession.getConnection()).isClosed());
+    assertNotSame(producerSession, serviceFactory.openSession());
+  }
+
+  public void testConnectionFailure() throws Exception {
+    serviceFactory.setCommitEnabled(true);
+    serviceFactory.setSessionPoolSize(2);
+
+    ProducerSession idleSession = serviceFactory.openSession();
+    ProducerSession busySession = serviceFactory.openSession();
+    serviceFactory.closeSession(idleSession, true);
+
+    MockJms connection = MockJms.getMock(idleSession.getConnection());
+    connection.fail();
+    // idle sessions go away with the connection
+    assertTrue(connection.isClosed());
+    assertTrue(MockJms.getMock(idleSession.getSession()).isClosed());
+
+    // sessions of the failed connection do not come back to the pool
+    serviceFactory.closeSession(busySession, true);
+    ProducerSession producerSession = serviceFactory.openSession();
+    assertNotSame(idleSession, producerSession);
+    assertNotSame(busySession, producerSession);
+    assertNotSame(idleSession.getConnection(), producerSession.getConnection());
+    assertEquals(2, connectionFactory.countCalls("createConnection"));
+  }
+
+  private void setField(String name, Object value) throws Exception {
+    Field field = JmsConnectorServiceFactory.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(serviceFactory, value);
+  }
+}
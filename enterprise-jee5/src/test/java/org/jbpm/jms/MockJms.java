@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jbpm.jms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+/**
+ * In-memory stand-in for the JMS objects of a single queue. Every object records the methods
+ * called on it; messages sent through any producer are kept in {@link #getSentMessages()}, and
+ * consumers receive the messages {@linkplain #addMessage(Message) added} to the queue.
+ */
+public class MockJms implements InvocationHandler {
+
+  private final Class type;
+  private final MockJms root;
+  private final Object proxy;
+
+  private final List calls = new ArrayList();
+  private final List children = new ArrayList();
+  private final Map properties = new HashMap();
+  private boolean closed;
+  private boolean redelivered;
+  private ExceptionListener exceptionListener;
+
+  /** state shared by all objects, held by the connection factory */
+  private List sentMessages;
+  private LinkedList queuedMessages;
+  private Queue queue;
+
+  private MockJms(Class type, MockJms root) {
+    this.type = type;
+    this.root = root != null ? root : this;
+    proxy = Proxy.newProxyInstance(MockJms.class.getClassLoader(), new Class[] { type }, this);
+  }
+
+  public static MockJms createConnectionFactory() {
+    MockJms connectionFactory = new MockJms(ConnectionFactory.class, null);
+    connectionFactory.sentMessages = new ArrayList();
+    connectionFactory.queuedMessages = new LinkedList();
+    connectionFactory.queue = (Queue) new MockJms(Queue.class, connectionFactory).proxy;
+    return connectionFactory;
+  }
+
+  public Object getProxy() {
+    return proxy;
+  }
+
+  public Queue getQueue() {
+    return root.queue;
+  }
+
+  /**
+   * Creates a message that carries the given job identifier, without sending it.
+   */
+  public Message createJobMessage(long jobId) {
+    MockJms message = new MockJms(Message.class, root);
+    message.properties.put("jobId", new Long(jobId));
+    return (Message) message.proxy;
+  }
+
+  public static MockJms getMock(Object proxy) {
+    return (MockJms) Proxy.getInvocationHandler(proxy);
+  }
+
+  /** makes the message look like a redelivery */
+  public void setRedelivered(boolean redelivered) {
+    this.redelivered = redelivered;
+  }
+
+  public void setProperty(String name, Object value) {
+    properties.put(name, value);
+  }
+
+  public Object getProperty(String name) {
+    return properties.get(name);
+  }
+
+  public void addMessage(Message message) {
+    root.queuedMessages.addLast(message);
+  }
+
+  public List getQueuedMessages() {
+    return root.queuedMessages;
+  }
+
+  public List getSentMessages() {
+    return root.sentMessages;
+  }
+
+  /** objects created by this object, in creation order */
+  public List getChildren() {
+    return children;
+  }
+
+  public MockJms getChild(int index) {
+    return (MockJms) children.get(index);
+  }
+
+  public int countCalls(String methodName) {
+    int count = 0;
+    for (Iterator i = calls.iterator(); i.hasNext();) {
+      if (methodName.equals(i.next())) count++;
+    }
+    return count;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /** reports a failure of this connection to its exception listener */
+  public void fail() {
+    exceptionListener.onException(new JMSException("connection lost"));
+  }
+
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    if ("equals".equals(methodName)) return Boolean.valueOf(proxy == args[0]);
+    if ("hashCode".equals(methodName)) return new Integer(System.identityHashCode(proxy));
+    if ("toString".equals(methodName)) return "Mock" + type.getName().substring(10);
+
+    calls.add(methodName);
+    if ("close".equals(methodName)) {
+      close();
+      return null;
+    }
+    if (closed) throw new JMSException(type.getName() + " is closed");
+
+    if ("createConnection".equals(methodName)) return createChild(Connection.class);
+    if ("createSession".equals(methodName)) return createChild(Session.class);
+    if ("createProducer".equals(methodName)) return createChild(MessageProducer.class);
+    if ("createConsumer".equals(methodName)) return createChild(MessageConsumer.class);
+    if ("createMessage".equals(methodName)) return createChild(Message.class);
+    if ("setExceptionListener".equals(methodName)) {
+      exceptionListener = (ExceptionListener) args[0];
+      return null;
+    }
+    if ("send".equals(methodName)) {
+      root.sentMessages.add(args[0]);
+      return null;
+    }
+    if (methodName.startsWith("receive")) {
+      return root.queuedMessages.isEmpty() ? null : root.queuedMessages.removeFirst();
+    }
+    if (methodName.startsWith("set") && methodName.endsWith("Property")) {
+      properties.put(args[0], args[1]);
+      return null;
+    }
+    if ("propertyExists".equals(methodName)) {
+      return Boolean.valueOf(properties.containsKey(args[0]));
+    }
+    if ("getLongProperty".equals(methodName)) {
+      Object value = properties.get(args[0]);
+      if (value == null) throw new NumberFormatException("property not found: " + args[0]);
+      return value;
+    }
+    if ("getJMSRedelivered".equals(methodName)) return Boolean.valueOf(redelivered);
+    if ("getJMSDestination".equals(methodName)) return root.queue;
+
+    // commit, rollback, start and other methods without interesting results
+    Class returnType = method.getReturnType();
+    if (returnType == boolean.class) return Boolean.FALSE;
+    if (returnType == int.class) return new Integer(0);
+    if (returnType == long.class) return new Long(0);
+    return null;
+  }
+
+  private Object createChild(Class childType) {
+    MockJms child = new MockJms(childType, root);
+    children.add(child);
+    return child.proxy;
+  }
+
+  private void close() {
+    closed = true;
+    // closing a connection closes its sessions, which close their producers and consumers
+    for (Iterator i = children.iterator(); i.hasNext();) {
+      MockJms child = (MockJms) i.next();
+      if (child.type != Message.class) child.close();
+    }
+  }
+}